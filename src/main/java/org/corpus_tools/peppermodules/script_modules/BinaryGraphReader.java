@@ -0,0 +1,239 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.corpus_tools.pepper.exceptions.PepperException;
+import org.corpus_tools.salt.SALT_TYPE;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.core.SNode;
+import org.corpus_tools.salt.core.SRelation;
+import org.corpus_tools.salt.graph.IdentifiableElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads document graphs from the compact binary exchange format written by
+ * {@link BinaryGraphWriter}.
+ */
+public class BinaryGraphReader {
+
+	private final static Logger log = LoggerFactory.getLogger(BinaryGraphReader.class);
+
+	private final DataInputStream in;
+	private final List<String> strings = new ArrayList<>();
+	private final List<SDocument> documents = new LinkedList<>();
+	private final Map<String, SDocument> documentsByGraphID = new LinkedHashMap<>();
+
+	protected BinaryGraphReader(InputStream in) {
+		this.in = new DataInputStream(new BufferedInputStream(in));
+	}
+
+	private void map() throws IOException {
+		byte[] magic = new byte[BinaryGraphWriter.MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, BinaryGraphWriter.MAGIC)) {
+			throw new IOException("Input is not in the binary exchange format");
+		}
+		int version = in.read();
+		if (version != BinaryGraphWriter.VERSION) {
+			throw new IOException("Unsupported version " + version + " of the binary exchange format");
+		}
+
+		int record;
+		while ((record = in.read()) >= 0 && record != BinaryGraphWriter.RECORD_END) {
+			switch (record) {
+			case BinaryGraphWriter.RECORD_STRINGS:
+				long count = readVarint();
+				for (long i = 0; i < count; i++) {
+					byte[] utf8 = new byte[(int) readVarint()];
+					in.readFully(utf8);
+					strings.add(new String(utf8, StandardCharsets.UTF_8));
+				}
+				break;
+			case BinaryGraphWriter.RECORD_GRAPH:
+				// the length is only needed by readers that skip graphs
+				readVarint();
+				mapDocument();
+				break;
+			default:
+				throw new IOException("Unknown record type " + record + " in binary exchange format");
+			}
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void mapDocument() throws IOException {
+		SDocument doc = SaltFactory.createSDocument();
+		SDocumentGraph g = doc.createDocumentGraph();
+
+		String graphID = Long.toString(readVarint());
+		// the document labels are not part of the result
+		long labelCount = readVarint();
+		for (long i = 0; i < labelCount; i++) {
+			readString();
+			readValue();
+		}
+
+		Map<Long, SNode> id2node = new HashMap<>();
+		long nodeCount = readVarint();
+		for (long i = 0; i < nodeCount; i++) {
+			long id = readVarint();
+			SNode obj = createObject(readString(), true);
+			readLabels(obj);
+			if (obj != null) {
+				g.addNode(obj);
+				id2node.put(id, obj);
+			}
+		}
+
+		long edgeCount = readVarint();
+		for (long i = 0; i < edgeCount; i++) {
+			readVarint();
+			SNode source = id2node.get(readVarint());
+			SNode target = id2node.get(readVarint());
+			SRelation obj = createObject(readString(), false);
+			readLabels(obj);
+			if (obj != null && source != null && target != null) {
+				obj.setSource(source);
+				obj.setTarget(target);
+				g.addRelation(obj);
+			}
+		}
+
+		documents.add(doc);
+		documentsByGraphID.putIfAbsent(graphID, doc);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T createObject(String typeName, boolean node) {
+		SALT_TYPE type;
+		try {
+			type = SALT_TYPE.valueOf(typeName);
+		} catch (IllegalArgumentException ex) {
+			log.warn("Can't create Salt object from type {}", typeName);
+			return null;
+		}
+		Object obj = node ? GraphMLReader.createNode(type) : GraphMLReader.createRelation(type);
+		if (obj == null) {
+			log.warn("Can't create Salt object from type {}", typeName);
+		}
+		return (T) obj;
+	}
+
+	/**
+	 * Reads the labels and adds them to the object. If the object is null, the
+	 * labels are skipped.
+	 */
+	private void readLabels(IdentifiableElement obj) throws IOException {
+		long labelCount = readVarint();
+		for (long i = 0; i < labelCount; i++) {
+			String qname = readString();
+			Object value = readValue();
+			if (obj != null) {
+				GraphMLReader.addLabel(obj, qname, value);
+			}
+		}
+	}
+
+	private Object readValue() throws IOException {
+		int type = in.read();
+		switch (type) {
+		case BinaryGraphWriter.VALUE_STRING:
+			return readString();
+		case BinaryGraphWriter.VALUE_BOOLEAN:
+			return in.read() != 0;
+		case BinaryGraphWriter.VALUE_INT:
+			return (int) unZigZag(readVarint());
+		case BinaryGraphWriter.VALUE_LONG:
+			return unZigZag(readVarint());
+		case BinaryGraphWriter.VALUE_FLOAT:
+			return in.readFloat();
+		case BinaryGraphWriter.VALUE_DOUBLE:
+			return in.readDouble();
+		default:
+			throw new IOException("Unknown value type " + type + " in binary exchange format");
+		}
+	}
+
+	private String readString() throws IOException {
+		long idx = readVarint();
+		if (idx >= strings.size()) {
+			throw new IOException("Reference to undefined string " + idx + " in binary exchange format");
+		}
+		return strings.get((int) idx);
+	}
+
+	private static long unZigZag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private long readVarint() throws IOException {
+		long result = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.read();
+			if (b < 0) {
+				throw new EOFException("Unexpected end of binary exchange format");
+			}
+			result |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return result;
+	}
+
+	public static List<SDocument> convertToSalt(InputStream in) {
+		return read(in).documents;
+	}
+
+	/**
+	 * Reads all graphs of the stream.
+	 *
+	 * @return the documents by the ID of the graph record they were read from,
+	 *         in the order of the input
+	 */
+	public static Map<String, SDocument> convertToSaltByGraphID(InputStream in) {
+		return read(in).documentsByGraphID;
+	}
+
+	private static BinaryGraphReader read(InputStream in) {
+		try {
+			BinaryGraphReader reader = new BinaryGraphReader(in);
+			reader.map();
+			return reader;
+		} catch (IOException ex) {
+			throw new PepperException("Binary exchange format reading exception", ex);
+		}
+	}
+}
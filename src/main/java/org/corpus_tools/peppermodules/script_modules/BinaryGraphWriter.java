@@ -0,0 +1,285 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.corpus_tools.salt.SALT_TYPE;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.core.SNode;
+import org.corpus_tools.salt.core.SRelation;
+import org.corpus_tools.salt.graph.Label;
+import org.corpus_tools.salt.graph.Relation;
+
+/**
+ * Writes document graphs in the compact binary exchange format described in
+ * the README. The stream consists of records, each starting with a record type
+ * byte. Strings are only written once into a string table and are referenced by
+ * their varint index afterwards. Graph records are prefixed by their length so
+ * readers can skip them.
+ */
+public class BinaryGraphWriter {
+
+	public final static byte[] MAGIC = { 'P', 'E', 'P', 'B' };
+	public final static int VERSION = 1;
+
+	final static int RECORD_END = 0;
+	final static int RECORD_STRINGS = 1;
+	final static int RECORD_GRAPH = 2;
+
+	final static int VALUE_STRING = 0;
+	final static int VALUE_BOOLEAN = 1;
+	final static int VALUE_INT = 2;
+	final static int VALUE_LONG = 3;
+	final static int VALUE_FLOAT = 4;
+	final static int VALUE_DOUBLE = 5;
+
+	private final OutputStream out;
+	private final Map<String, Integer> strings = new HashMap<>();
+	private final List<String> newStrings = new ArrayList<>();
+	private final Map<Object, Long> nodeIDs = new IdentityHashMap<>();
+	private long nextID = 0;
+	private final Map<String, Object> elementsByID;
+	private final GraphProjection projection;
+
+	protected BinaryGraphWriter(OutputStream out, Map<String, Object> elementsByID, GraphProjection projection) {
+		this.out = out;
+		this.elementsByID = elementsByID;
+		this.projection = projection;
+	}
+
+	public static void convertFromSalt(OutputStream out, SDocument... docs) throws IOException {
+		writeDocuments(out, Arrays.asList(docs));
+	}
+
+	/**
+	 * Writes all documents as separate graph records into a single stream.
+	 *
+	 * @return the written documents by the ID of the graph record they were
+	 *         written to, in the order of the output. Documents without nodes
+	 *         are not written and thus not part of this map.
+	 */
+	public static Map<String, SDocument> writeDocuments(OutputStream out, List<SDocument> docs) throws IOException {
+		return writeDocuments(out, docs, null);
+	}
+
+	/**
+	 * Writes all documents as separate graph records into a single stream.
+	 *
+	 * @param elementsByID
+	 *            if not null, receives the written graphs, nodes and relations
+	 *            by the ID they were written with
+	 * @return the written documents by the ID of the graph record they were
+	 *         written to, in the order of the output. Documents without nodes
+	 *         are not written and thus not part of this map.
+	 */
+	public static Map<String, SDocument> writeDocuments(OutputStream out, List<SDocument> docs,
+			Map<String, Object> elementsByID) throws IOException {
+		return writeDocuments(out, docs, elementsByID, GraphProjection.ALL);
+	}
+
+	/**
+	 * Writes the projection of all documents as separate graph records into a
+	 * single stream.
+	 *
+	 * @param elementsByID
+	 *            if not null, receives the written graphs, nodes and relations
+	 *            by the ID they were written with
+	 * @param projection
+	 *            selects the nodes, relations and labels that are written
+	 * @return the written documents by the ID of the graph record they were
+	 *         written to, in the order of the output. Documents without nodes
+	 *         are not written and thus not part of this map.
+	 */
+	public static Map<String, SDocument> writeDocuments(OutputStream out, List<SDocument> docs,
+			Map<String, Object> elementsByID, GraphProjection projection) throws IOException {
+		Map<String, SDocument> graphIDs = new LinkedHashMap<>();
+		BinaryGraphWriter writer = new BinaryGraphWriter(out, elementsByID, projection);
+		out.write(MAGIC);
+		out.write(VERSION);
+		if (docs != null) {
+			for (SDocument d : docs) {
+				String graphID = writer.writeGraph(d.getDocumentGraph());
+				if (graphID != null) {
+					graphIDs.put(graphID, d);
+				}
+			}
+		}
+		out.write(RECORD_END);
+		out.flush();
+		return graphIDs;
+	}
+
+	private String writeGraph(SDocumentGraph g) throws IOException {
+		if (g == null) {
+			return null;
+		}
+		List<SNode> nodes = GraphMLWriter.getNodes(g, projection);
+		if (nodes == null || nodes.isEmpty()) {
+			// graphs without nodes are not allowed
+			return null;
+		}
+		long graphID = nextID++;
+		register(graphID, g);
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(buffer);
+		writeVarint(body, graphID);
+		if (g.getDocument() != null) {
+			writeLabels(body, g.getDocument().getLabels(), GraphProjection.ALL);
+		} else {
+			writeVarint(body, 0);
+		}
+
+		writeVarint(body, nodes.size());
+		for (SNode n : nodes) {
+			writeVarint(body, getNodeID(n));
+			writeString(body, getTypeName(n));
+			writeLabels(body, n.getLabels(), projection);
+		}
+
+		List<SRelation<SNode, SNode>> relations = GraphMLWriter.getRelations(g, projection);
+		writeVarint(body, relations == null ? 0 : relations.size());
+		if (relations != null) {
+			for (Relation<?, ?> r : relations) {
+				long id = nextID++;
+				register(id, r);
+				writeVarint(body, id);
+				writeVarint(body, getNodeID(r.getSource()));
+				writeVarint(body, getNodeID(r.getTarget()));
+				writeString(body, getTypeName(r));
+				writeLabels(body, r.getLabels(), projection);
+			}
+		}
+		body.flush();
+		nodeIDs.clear();
+
+		// the strings must be known before the graph that references them
+		if (!newStrings.isEmpty()) {
+			out.write(RECORD_STRINGS);
+			writeVarint(out, newStrings.size());
+			for (String s : newStrings) {
+				byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+				writeVarint(out, utf8.length);
+				out.write(utf8);
+			}
+			newStrings.clear();
+		}
+		out.write(RECORD_GRAPH);
+		writeVarint(out, buffer.size());
+		buffer.writeTo(out);
+
+		return Long.toString(graphID);
+	}
+
+	private long getNodeID(Object n) {
+		Long id = nodeIDs.get(n);
+		if (id == null) {
+			id = nextID++;
+			nodeIDs.put(n, id);
+			register(id, n);
+		}
+		return id;
+	}
+
+	private void register(long id, Object element) {
+		if (elementsByID != null) {
+			elementsByID.put(Long.toString(id), element);
+		}
+	}
+
+	private static String getTypeName(Object o) {
+		SALT_TYPE type = GraphMLWriter.getSaltType(o.getClass());
+		return type == null ? "" : type.name();
+	}
+
+	private void writeLabels(DataOutputStream body, Collection<Label> labels, GraphProjection projection)
+			throws IOException {
+		List<Label> supported = new ArrayList<>();
+		if (labels != null) {
+			for (Label l : labels) {
+				if (GraphMLWriter.getType(l.getValue()) != null && projection.includes(l)) {
+					supported.add(l);
+				}
+			}
+		}
+		writeVarint(body, supported.size());
+		for (Label l : supported) {
+			writeString(body, l.getQName());
+			Object v = l.getValue();
+			if (v instanceof Boolean) {
+				body.write(VALUE_BOOLEAN);
+				body.write((Boolean) v ? 1 : 0);
+			} else if (v instanceof Integer) {
+				body.write(VALUE_INT);
+				writeVarint(body, zigZag((Integer) v));
+			} else if (v instanceof Long) {
+				body.write(VALUE_LONG);
+				writeVarint(body, zigZag((Long) v));
+			} else if (v instanceof Float) {
+				body.write(VALUE_FLOAT);
+				body.writeFloat((Float) v);
+			} else if (v instanceof Double) {
+				body.write(VALUE_DOUBLE);
+				body.writeDouble((Double) v);
+			} else {
+				// strings and URIs
+				body.write(VALUE_STRING);
+				writeString(body, v.toString());
+			}
+		}
+	}
+
+	private void writeString(OutputStream o, String s) throws IOException {
+		Integer idx = strings.get(s);
+		if (idx == null) {
+			idx = strings.size();
+			strings.put(s, idx);
+			newStrings.add(s);
+		}
+		writeVarint(o, idx);
+	}
+
+	private static long zigZag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	/**
+	 * Writes an unsigned LEB128 encoded integer.
+	 */
+	static void writeVarint(OutputStream o, long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			o.write((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		o.write((int) v);
+	}
+}
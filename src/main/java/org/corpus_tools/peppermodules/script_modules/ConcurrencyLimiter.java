@@ -0,0 +1,116 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of concurrently running script invocations. Mappers that
+ * exceed the limit are blocked in first-come-first-served order. The number of
+ * waiting mappers and their waiting times are recorded to help choosing the
+ * limit.
+ */
+class ConcurrencyLimiter {
+
+	private final int limit;
+	private final Semaphore permits;
+
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+	private final AtomicLong acquisitions = new AtomicLong();
+	private final AtomicLong waitedAcquisitions = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	public ConcurrencyLimiter(int limit) {
+		this.limit = Math.max(1, limit);
+		this.permits = new Semaphore(this.limit, true);
+	}
+
+	/**
+	 * Blocks until a script invocation may be started.
+	 */
+	public void acquire() throws InterruptedException {
+		acquisitions.incrementAndGet();
+		// unlike tryAcquire(), a timed attempt does not take a permit before
+		// the mappers that are already waiting
+		if (permits.tryAcquire(0, TimeUnit.SECONDS)) {
+			return;
+		}
+		int depth = queueDepth.incrementAndGet();
+		maxQueueDepth.accumulateAndGet(depth, Math::max);
+		long start = System.nanoTime();
+		try {
+			permits.acquire();
+		} finally {
+			queueDepth.decrementAndGet();
+			long waited = System.nanoTime() - start;
+			waitedAcquisitions.incrementAndGet();
+			totalWaitNanos.addAndGet(waited);
+			maxWaitNanos.accumulateAndGet(waited, Math::max);
+		}
+	}
+
+	public void release() {
+		permits.release();
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return the number of mappers currently waiting for a script invocation
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	public long getAcquisitions() {
+		return acquisitions.get();
+	}
+
+	/**
+	 * @return the number of invocations that had to wait for a free slot
+	 */
+	public long getWaitedAcquisitions() {
+		return waitedAcquisitions.get();
+	}
+
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+	}
+
+	public long getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+	}
+
+	@Override
+	public String toString() {
+		return "limit=" + limit + ", invocations=" + getAcquisitions() + ", waited=" + getWaitedAcquisitions()
+				+ ", max queue depth=" + getMaxQueueDepth() + ", total wait=" + getTotalWaitMillis()
+				+ " ms, max wait=" + getMaxWaitMillis() + " ms";
+	}
+}
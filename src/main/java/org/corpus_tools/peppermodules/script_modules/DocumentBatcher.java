@@ -0,0 +1,141 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.salt.common.SDocument;
+
+/**
+ * Collects the documents of concurrently running mappers into batches, so
+ * that a whole batch can be handed to a single script invocation.
+ *
+ * There is no extra thread: the mapper that completes a batch, or whose
+ * document waited longer than the configured time, processes the pending
+ * batch on behalf of all other mappers in it.
+ */
+class DocumentBatcher {
+
+	/**
+	 * Manipulates all documents of a batch in place.
+	 */
+	@FunctionalInterface
+	public interface BatchProcessor {
+		void process(List<SDocument> batch) throws Exception;
+	}
+
+	private static class Entry {
+		final SDocument document;
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Entry(SDocument document) {
+			this.document = document;
+		}
+	}
+
+	private final int batchSize;
+	private final long maxWaitMillis;
+	private List<Entry> pending = new ArrayList<>();
+
+	/**
+	 * @param batchSize
+	 *            the maximal number of documents in a batch
+	 * @param maxWaitMillis
+	 *            the time a document waits for the batch to fill up, before
+	 *            the incomplete batch is processed
+	 */
+	public DocumentBatcher(int batchSize, long maxWaitMillis) {
+		this.batchSize = batchSize;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * Adds the document to the current batch and blocks until the batch it
+	 * belongs to has been processed, either by the given processor or by the
+	 * one of another mapper.
+	 */
+	public void submit(SDocument document, BatchProcessor processor) throws InterruptedException {
+		Entry entry = new Entry(document);
+		List<Entry> batch = null;
+		synchronized (this) {
+			pending.add(entry);
+			if (pending.size() >= batchSize) {
+				batch = takePending();
+			}
+		}
+		if (batch != null) {
+			process(batch, processor);
+		}
+
+		try {
+			try {
+				entry.done.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException ex) {
+				synchronized (this) {
+					batch = pending.contains(entry) ? takePending() : null;
+				}
+				if (batch != null) {
+					process(batch, processor);
+				}
+				entry.done.get();
+			}
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof PepperModuleException) {
+				throw (PepperModuleException) ex.getCause();
+			}
+			throw new PepperModuleException("Could not process the batch of document " + document.getName(),
+					ex.getCause());
+		}
+	}
+
+	/**
+	 * @return the number of documents that wait for their batch to be filled
+	 */
+	synchronized int getPending() {
+		return pending.size();
+	}
+
+	private List<Entry> takePending() {
+		List<Entry> batch = pending;
+		pending = new ArrayList<>();
+		return batch;
+	}
+
+	private void process(List<Entry> batch, BatchProcessor processor) {
+		List<SDocument> documents = new ArrayList<>(batch.size());
+		for (Entry e : batch) {
+			documents.add(e.document);
+		}
+		try {
+			processor.process(documents);
+			for (Entry e : batch) {
+				e.done.complete(null);
+			}
+		} catch (Throwable ex) {
+			for (Entry e : batch) {
+				e.done.completeExceptionally(ex);
+			}
+		}
+	}
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.corpus_tools.pepper.exceptions.PepperException;
+import org.corpus_tools.salt.SALT_TYPE;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SMedialDS;
+import org.corpus_tools.salt.common.SSpan;
+import org.corpus_tools.salt.common.SStructure;
+import org.corpus_tools.salt.common.SStructuredNode;
+import org.corpus_tools.salt.common.STextualDS;
+import org.corpus_tools.salt.common.STimeline;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.core.SGraph;
+import org.corpus_tools.salt.core.SNode;
+import org.corpus_tools.salt.core.SRelation;
+import org.corpus_tools.salt.graph.IdentifiableElement;
+
+/**
+ * The changes a script returns instead of the complete graph. Each line of the
+ * delta format is one tab separated change that refers to graphs, nodes and
+ * relations by the ID they were written with. Nodes and relations added by an
+ * earlier line can be referenced by their new ID. The format is described in
+ * the README.
+ */
+public class GraphDelta {
+
+	private static class Change {
+		final int line;
+		final String[] fields;
+
+		Change(int line, String[] fields) {
+			this.line = line;
+			this.fields = fields;
+		}
+	}
+
+	private final List<Change> changes = new ArrayList<>();
+
+	protected GraphDelta() {
+	}
+
+	/**
+	 * Parses the changes without applying them.
+	 */
+	public static GraphDelta read(InputStream in) throws IOException {
+		GraphDelta delta = new GraphDelta();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split("\t", -1);
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = unescape(fields[i]);
+			}
+			delta.changes.add(new Change(lineNumber, fields));
+		}
+		return delta;
+	}
+
+	/**
+	 * @return the number of changes
+	 */
+	public int size() {
+		return changes.size();
+	}
+
+	/**
+	 * Applies all changes in place. All changes are resolved and checked
+	 * before the first one is applied, so an invalid change leaves the graphs
+	 * untouched.
+	 *
+	 * @param elementsByID
+	 *            the graphs, nodes and relations by the ID they were written
+	 *            with. Added nodes and relations are put into this map.
+	 */
+	public void apply(Map<String, Object> elementsByID) {
+		Resolver resolver = new Resolver(elementsByID);
+		List<Runnable> operations = new ArrayList<>(changes.size());
+		for (Change c : changes) {
+			operations.add(resolver.resolve(c));
+		}
+		for (Runnable operation : operations) {
+			operation.run();
+		}
+		elementsByID.putAll(resolver.added);
+	}
+
+	/**
+	 * Turns the changes into operations on the resolved elements, while it
+	 * keeps track of the elements the previous changes will add and remove.
+	 */
+	private static class Resolver {
+		final Map<String, Object> elementsByID;
+		/** the nodes and relations added by the changes, by their new ID */
+		final Map<String, Object> added = new LinkedHashMap<>();
+		/** the graph of the added and removed nodes after the changes */
+		final Map<SNode, SGraph> graphs = new IdentityHashMap<>();
+
+		Resolver(Map<String, Object> elementsByID) {
+			this.elementsByID = elementsByID;
+		}
+
+		Runnable resolve(Change c) {
+			String[] f = c.fields;
+			switch (f[0]) {
+			case "ADD_NODE":
+				checkFields(c, 4);
+				return addNode(c, f[1], get(c, f[2], SDocumentGraph.class), f[3]);
+			case "ADD_RELATION":
+				checkFields(c, 5);
+				return addRelation(c, f[1], get(c, f[2], SNode.class), get(c, f[3], SNode.class), f[4]);
+			case "REMOVE_NODE":
+				checkFields(c, 2);
+				SNode node = get(c, f[1], SNode.class);
+				graphs.put(node, null);
+				return () -> {
+					if (node.getGraph() != null) {
+						node.getGraph().removeNode(node);
+					}
+				};
+			case "REMOVE_RELATION":
+				checkFields(c, 2);
+				SRelation<?, ?> rel = get(c, f[1], SRelation.class);
+				return () -> {
+					if (rel.getGraph() != null) {
+						rel.getGraph().removeRelation(rel);
+					}
+				};
+			case "SET_LABEL":
+				checkFields(c, 5);
+				IdentifiableElement element = getNodeOrRelation(c, f[1]);
+				Object value;
+				try {
+					value = GraphMLReader.parseValue(f[3], f[4]);
+				} catch (NumberFormatException ex) {
+					throw invalid(c, "\"" + f[4] + "\" is not a valid " + f[3] + " value");
+				}
+				if (value == null) {
+					throw invalid(c, "unknown value type " + f[3]);
+				}
+				if ("salt::id".equals(f[2])) {
+					throw invalid(c, "the Salt ID can not be changed");
+				}
+				return () -> {
+					if (element.getLabel(f[2]) != null) {
+						element.removeLabel(f[2]);
+					}
+					GraphMLReader.addLabel(element, f[2], value);
+				};
+			case "REMOVE_LABEL":
+				checkFields(c, 3);
+				IdentifiableElement labeled = getNodeOrRelation(c, f[1]);
+				return () -> labeled.removeLabel(f[2]);
+			default:
+				throw invalid(c, "unknown change " + f[0]);
+			}
+		}
+
+		private Runnable addNode(Change c, String id, SDocumentGraph g, String type) {
+			checkNewID(c, id);
+			SNode node = GraphMLReader.createNode(getSaltType(c, type));
+			if (node == null) {
+				throw invalid(c, "can't create node of type " + type);
+			}
+			added.put(id, node);
+			graphs.put(node, g);
+			return () -> g.addNode(node);
+		}
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		private Runnable addRelation(Change c, String id, SNode source, SNode target, String type) {
+			checkNewID(c, id);
+			SGraph g = getGraph(source);
+			if (g == null || g != getGraph(target)) {
+				throw invalid(c, "source and target must be nodes of the same graph");
+			}
+			SALT_TYPE saltType = getSaltType(c, type);
+			SRelation rel = GraphMLReader.createRelation(saltType);
+			if (rel == null) {
+				throw invalid(c, "can't create relation of type " + type);
+			}
+			// Salt does not check the types of the source and the target
+			Class<?>[] endpoints = getEndpointTypes(saltType);
+			if (!endpoints[0].isInstance(source) || !endpoints[1].isInstance(target)) {
+				throw invalid(c, type + " needs a source of type " + endpoints[0].getSimpleName()
+						+ " and a target of type " + endpoints[1].getSimpleName());
+			}
+			added.put(id, rel);
+			return () -> {
+				rel.setSource(source);
+				rel.setTarget(target);
+				g.addRelation(rel);
+			};
+		}
+
+		private void checkNewID(Change c, String id) {
+			if (elementsByID.containsKey(id) || added.containsKey(id)) {
+				throw invalid(c, "ID " + id + " is already used");
+			}
+		}
+
+		/**
+		 * @return the graph the node belongs to after the previous changes
+		 */
+		private SGraph getGraph(SNode node) {
+			return graphs.containsKey(node) ? graphs.get(node) : node.getGraph();
+		}
+
+		private Object getElement(String id) {
+			Object element = added.get(id);
+			return element != null ? element : elementsByID.get(id);
+		}
+
+		private IdentifiableElement getNodeOrRelation(Change c, String id) {
+			Object element = getElement(id);
+			if (element instanceof SNode || element instanceof SRelation) {
+				return (IdentifiableElement) element;
+			}
+			throw invalid(c, "no node or relation with ID " + id);
+		}
+
+		private <T> T get(Change c, String id, Class<T> type) {
+			Object element = getElement(id);
+			if (!type.isInstance(element)) {
+				throw invalid(c, "no " + type.getSimpleName() + " with ID " + id);
+			}
+			return type.cast(element);
+		}
+	}
+
+	private static SALT_TYPE getSaltType(Change c, String type) {
+		try {
+			return SALT_TYPE.valueOf(type);
+		} catch (IllegalArgumentException ex) {
+			throw invalid(c, "unknown Salt type " + type);
+		}
+	}
+
+	/**
+	 * @return the types of the source and the target of the relations of the
+	 *         given type, which the {@link GraphMLReader} can create
+	 */
+	private static Class<?>[] getEndpointTypes(SALT_TYPE type) {
+		switch (type) {
+		case SDOMINANCE_RELATION:
+			return new Class<?>[] { SStructure.class, SStructuredNode.class };
+		case SMEDIAL_RELATION:
+			return new Class<?>[] { SToken.class, SMedialDS.class };
+		case SSPANNING_RELATION:
+			return new Class<?>[] { SSpan.class, SToken.class };
+		case STEXTUAL_RELATION:
+			return new Class<?>[] { SToken.class, STextualDS.class };
+		case STIMELINE_RELATION:
+			return new Class<?>[] { SToken.class, STimeline.class };
+		default:
+			// order and pointing relations
+			return new Class<?>[] { SStructuredNode.class, SStructuredNode.class };
+		}
+	}
+
+	private static void checkFields(Change c, int expected) {
+		if (c.fields.length != expected) {
+			throw invalid(c, c.fields[0] + " needs " + (expected - 1) + " arguments");
+		}
+	}
+
+	private static PepperException invalid(Change c, String message) {
+		return new PepperException("Invalid change in line " + c.line + " of the delta: " + message);
+	}
+
+	/**
+	 * Replaces the escape sequences \t, \n, \r and \\.
+	 */
+	static String unescape(String s) {
+		if (s.indexOf('\\') < 0) {
+			return s;
+		}
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch == '\\' && i + 1 < s.length()) {
+				char next = s.charAt(++i);
+				switch (next) {
+				case 't':
+					sb.append('\t');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				default:
+					sb.append(next);
+				}
+			} else {
+				sb.append(ch);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.IOException;
+
+/**
+ * Writes the elements the {@link GraphMLWriter} uses. An emitter either
+ * writes a whole document or a fragment of it, e.g. a single graph or a chunk
+ * of nodes, which is copied into the document later.
+ *
+ * The element IDs are given as numbers, which are written with a leading "_".
+ */
+interface GraphMLEmitter {
+
+	/**
+	 * Writes the XML declaration and the start of the graphml element.
+	 */
+	void startDocument() throws IOException;
+
+	/**
+	 * Closes the graphml element.
+	 */
+	void endDocument() throws IOException;
+
+	void key(String id, String name, String type) throws IOException;
+
+	void startGraph(long id) throws IOException;
+
+	void endGraph() throws IOException;
+
+	void startNode(long id) throws IOException;
+
+	void endNode() throws IOException;
+
+	void startEdge(long id, long source, long target) throws IOException;
+
+	void endEdge() throws IOException;
+
+	/**
+	 * Writes a data element with the value of a label, which must be of one
+	 * of the types {@link GraphMLWriter#getType(Object)} supports.
+	 */
+	void data(String key, Object value) throws IOException;
+
+	/**
+	 * Completes the start tag of the current element without writing
+	 * anything else, so the content can be written by another emitter.
+	 */
+	void closeStartTag() throws IOException;
+
+	/**
+	 * Writes everything that is buffered to the output stream.
+	 */
+	void flush() throws IOException;
+}
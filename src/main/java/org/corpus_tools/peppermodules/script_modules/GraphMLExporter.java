@@ -0,0 +1,162 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.corpus_tools.pepper.common.DOCUMENT_STATUS;
+import org.corpus_tools.pepper.common.PepperConfiguration;
+import org.corpus_tools.pepper.impl.PepperExporterImpl;
+import org.corpus_tools.pepper.impl.PepperMapperImpl;
+import org.corpus_tools.pepper.modules.PepperMapper;
+import org.corpus_tools.pepper.modules.PepperModuleProperties;
+import org.corpus_tools.pepper.modules.PepperModuleProperty;
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.peppermodules.script_modules.GraphMLWriter.Serializer;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.graph.Identifier;
+import org.eclipse.emf.common.util.URI;
+import org.osgi.service.component.annotations.Component;
+
+/**
+ * Exports each document into its own GraphML file in the same format the
+ * {@link ScriptManipulator} gives to its scripts.
+ *
+ * Every mapper writes its document with its own key schema and emitter into
+ * the file, so the documents are written in parallel by the mapper threads of
+ * Pepper without any shared state. Compressed files are
+ * compressed in blocks on the common fork-join pool.
+ */
+@Component(name = "GraphMLExporterComponent", factory = "PepperExporterComponentFactory")
+public class GraphMLExporter extends PepperExporterImpl {
+
+	public static final String FORMAT_NAME = "GraphML";
+	public static final String FORMAT_VERSION = "1.0";
+	public static final String FILE_ENDING = "graphml";
+	public static final String COMPRESSED_FILE_ENDING = "graphml.gz";
+
+	/** the size of the buffer in front of the file channel */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	public GraphMLExporter() {
+		super("GraphMLExporter");
+		setSupplierContact(URI.createURI(PepperConfiguration.EMAIL));
+		setSupplierHomepage(URI.createURI("https://github.com/korpling/pepperModules-ModuleBox"));
+		setDesc("Exports each document graph into a GraphML file in the format of the ScriptManipulator");
+		addSupportedFormat(FORMAT_NAME, FORMAT_VERSION, null);
+		setExportMode(EXPORT_MODE.DOCUMENTS_IN_FILES);
+		setDocumentEnding(FILE_ENDING);
+		setProperties(new GraphMLExporterProperties());
+	}
+
+	public static class GraphMLExporterProperties extends PepperModuleProperties {
+		private static final long serialVersionUID = -3265937150402846419L;
+		private final static String PROP_SERIALIZER = "serializer";
+		private final static String PROP_COMPRESS = "compress";
+
+		public GraphMLExporterProperties() {
+			this.addProperty(new PepperModuleProperty<>(PROP_SERIALIZER, String.class,
+					"How the GraphML is serialized, either \"direct\" for writing the UTF-8 bytes directly or "
+							+ "\"stax\" for using the StAX implementation of the platform.",
+					"direct", false));
+			this.addProperty(new PepperModuleProperty<>(PROP_COMPRESS, Boolean.class,
+					"If true, the files are compressed with gzip and get the ending \"graphml.gz\".", false, false));
+		}
+
+		public Serializer getSerializer() {
+			String serializer = (String) getProperty(PROP_SERIALIZER).getValue();
+			return "stax".equalsIgnoreCase(serializer) ? Serializer.STAX : Serializer.DIRECT;
+		}
+
+		public boolean isCompress() {
+			return (Boolean) getProperty(PROP_COMPRESS).getValue();
+		}
+	}
+
+	private GraphMLExporterProperties getProps() {
+		return (GraphMLExporterProperties) getProperties();
+	}
+
+	@Override
+	public String getDocumentEnding() {
+		return getProps() != null && getProps().isCompress() ? COMPRESSED_FILE_ENDING : FILE_ENDING;
+	}
+
+	@Override
+	public PepperMapper createPepperMapper(Identifier id) {
+		GraphMLMapper mapper = new GraphMLMapper(getProps().getSerializer(), getProps().isCompress());
+		mapper.setResourceURI(getIdentifier2ResourceTable().get(id));
+		return mapper;
+	}
+
+	static class GraphMLMapper extends PepperMapperImpl {
+
+		private final Serializer serializer;
+		private final boolean compress;
+
+		GraphMLMapper(Serializer serializer, boolean compress) {
+			this.serializer = serializer;
+			this.compress = compress;
+		}
+
+		private OutputStream open(FileChannel channel) {
+			OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+			return compress ? GraphMLWriter.compress(out, ForkJoinPool.commonPool()) : out;
+		}
+
+		@Override
+		public DOCUMENT_STATUS mapSDocument() {
+			SDocument doc = getDocument();
+			URI resource = getResourceURI();
+			if (doc == null || doc.getDocumentGraph() == null || resource == null) {
+				return DOCUMENT_STATUS.COMPLETED;
+			}
+			Path path = new File(resource.toFileString()).toPath();
+			try {
+				if (path.getParent() != null) {
+					Files.createDirectories(path.getParent());
+				}
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+						OutputStream out = open(channel)) {
+					GraphMLWriter.write(out, Collections.singletonList(doc), null, GraphProjection.ALL,
+							new GraphMLKeySchema(), null, serializer, new HashMap<>());
+				}
+			} catch (IOException ex) {
+				throw new PepperModuleException(this, "Could not write the document " + doc.getName() + " to " + path,
+						ex);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new PepperModuleException(this, "Interrupted while writing the document " + doc.getName(),
+						ex);
+			}
+			return DOCUMENT_STATUS.COMPLETED;
+		}
+	}
+}
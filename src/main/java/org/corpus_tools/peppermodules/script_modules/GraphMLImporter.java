@@ -0,0 +1,285 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.corpus_tools.pepper.common.DOCUMENT_STATUS;
+import org.corpus_tools.pepper.common.PepperConfiguration;
+import org.corpus_tools.pepper.impl.CorpusPathResolver;
+import org.corpus_tools.pepper.impl.PepperImporterImpl;
+import org.corpus_tools.pepper.impl.PepperMapperImpl;
+import org.corpus_tools.pepper.modules.PepperMapper;
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.salt.SALT_TYPE;
+import org.corpus_tools.salt.common.SCorpus;
+import org.corpus_tools.salt.common.SCorpusGraph;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.graph.Identifier;
+import org.eclipse.emf.common.util.URI;
+import org.osgi.service.component.annotations.Component;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Imports GraphML files in the format the {@link ScriptManipulator} gives to
+ * its scripts and the {@link GraphMLExporter} writes.
+ *
+ * Each graph of a file becomes a document of its own. The files are scanned
+ * for their graphs when the corpus structure is imported, so the graphs of a
+ * single large file are read in parallel by the mapper threads of Pepper.
+ * The first graph of a file gets the document named after the file, the
+ * following ones get the file name with their position, e.g. "doc_2".
+ *
+ * Files with the ending "graphml.gz" are decompressed into a temporary file
+ * first, which is scanned and read like an uncompressed one. Their documents
+ * are named after the file without both endings, other compressed files are
+ * ignored.
+ */
+@Component(name = "GraphMLImporterComponent", factory = "PepperImporterComponentFactory")
+public class GraphMLImporter extends PepperImporterImpl {
+
+	/** the number of decompressed bytes sampled from compressed files */
+	private static final int SAMPLE_SIZE = 4096;
+
+	/** the graphs by the ID of the document they are read into */
+	private final Map<String, Graph> graphs = new ConcurrentHashMap<>();
+	/** the decompressed copies of compressed files */
+	private final List<File> temporaryFiles = new ArrayList<>();
+
+	public GraphMLImporter() {
+		super("GraphMLImporter");
+		setSupplierContact(URI.createURI(PepperConfiguration.EMAIL));
+		setSupplierHomepage(URI.createURI("https://github.com/korpling/pepperModules-ModuleBox"));
+		setDesc("Imports each graph of a GraphML file in the format of the ScriptManipulator as document");
+		addSupportedFormat(GraphMLExporter.FORMAT_NAME, GraphMLExporter.FORMAT_VERSION, null);
+		getDocumentEndings().add(GraphMLExporter.FILE_ENDING);
+		// the ending of the URI, compressed files are only accepted with the
+		// complete ending, see setTypeOfResource
+		getDocumentEndings().add("gz");
+	}
+
+	private static class Graph {
+		final GraphMLSplitter splitter;
+		final int number;
+
+		Graph(GraphMLSplitter splitter, int number) {
+			this.splitter = splitter;
+			this.number = number;
+		}
+	}
+
+	/**
+	 * @return true if the file name has the ending of compressed GraphML
+	 */
+	private static boolean isCompressed(String name) {
+		return name != null && name.endsWith("." + GraphMLExporter.COMPRESSED_FILE_ENDING);
+	}
+
+	@Override
+	public Double isImportable(URI corpusPath) {
+		List<String> samples = new ArrayList<>(sampleFileContent(corpusPath, GraphMLExporter.FILE_ENDING));
+		samples.addAll(sampleCompressedFileContent(corpusPath));
+		if (samples.isEmpty()) {
+			return null;
+		}
+		for (String sample : samples) {
+			if (!sample.contains("<graphml")) {
+				return 0.0;
+			}
+		}
+		return 1.0;
+	}
+
+	/**
+	 * @return the beginning of the decompressed content of some of the
+	 *         compressed GraphML files below the corpus path
+	 */
+	private static List<String> sampleCompressedFileContent(URI corpusPath) {
+		List<String> samples = new ArrayList<>();
+		if (corpusPath == null) {
+			return samples;
+		}
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(new File(corpusPath.toFileString()).toPath())) {
+			files = paths.filter(path -> isCompressed(path.getFileName().toString()) && Files.isRegularFile(path))
+					.limit(CorpusPathResolver.NUMBER_OF_SAMPLED_FILES).collect(Collectors.toList());
+		} catch (IOException | UncheckedIOException ex) {
+			return samples;
+		}
+		for (Path file : files) {
+			byte[] sample = new byte[SAMPLE_SIZE];
+			int length;
+			try (InputStream in = GraphMLReader.decompress(Files.newInputStream(file))) {
+				length = ByteStreams.read(in, sample, 0, sample.length);
+			} catch (IOException ex) {
+				length = 0;
+			}
+			samples.add(new String(sample, 0, length, StandardCharsets.UTF_8));
+		}
+		return samples;
+	}
+
+	@Override
+	public SALT_TYPE setTypeOfResource(URI resource) {
+		File file = new File(resource.toFileString());
+		if ("gz".equals(resource.fileExtension()) && !isCompressed(file.getName()) && !file.isDirectory()) {
+			return null;
+		}
+		return super.setTypeOfResource(resource);
+	}
+
+	@Override
+	protected Boolean importCorpusStructureRec(URI currURI, SCorpus parent) {
+		String name = currURI.lastSegment();
+		if (!isCompressed(name) || getIgnoreEndings().contains(name)
+				|| new File(currURI.toFileString()).isDirectory()) {
+			return super.importCorpusStructureRec(currURI, parent);
+		}
+		// the document is named without the ending of the compressed file,
+		// which is also stripped from the corpus that is created if the file
+		// is the corpus path itself
+		if (getCorpusGraph().getName() == null || getCorpusGraph().getName().isEmpty()) {
+			getCorpusGraph().setName(name);
+		}
+		name = name.substring(0, name.length() - GraphMLExporter.COMPRESSED_FILE_ENDING.length() - 1);
+		SCorpus corpus = parent;
+		if (corpus == null) {
+			corpus = getCorpusGraph().createCorpus(null, name);
+			getIdentifier2ResourceTable().put(corpus.getIdentifier(), currURI);
+		}
+		SDocument doc = getCorpusGraph().createDocument(corpus, name);
+		getIdentifier2ResourceTable().put(doc.getIdentifier(), currURI);
+		return true;
+	}
+
+	@Override
+	public void importCorpusStructure(SCorpusGraph corpusGraph) throws PepperModuleException {
+		super.importCorpusStructure(corpusGraph);
+
+		List<Map.Entry<Identifier, URI>> resources = new ArrayList<>(getIdentifier2ResourceTable().entrySet());
+		for (Map.Entry<Identifier, URI> resource : resources) {
+			if (resource.getKey().getIdentifiableElement() instanceof SDocument) {
+				SDocument doc = (SDocument) resource.getKey().getIdentifiableElement();
+				File file = new File(resource.getValue().toFileString());
+				GraphMLSplitter splitter;
+				try {
+					splitter = GraphMLSplitter.scan(isCompressed(file.getName()) ? decompress(file) : file);
+				} catch (IOException ex) {
+					throw new PepperModuleException(this, "Could not scan the GraphML file " + file, ex);
+				}
+				graphs.put(doc.getId(), new Graph(splitter, 0));
+
+				SCorpus corpus = corpusGraph.getCorpus(doc);
+				for (int i = 1; i < splitter.size(); i++) {
+					SDocument next = corpusGraph.createDocument(corpus, doc.getName() + "_" + (i + 1));
+					getIdentifier2ResourceTable().put(next.getIdentifier(), resource.getValue());
+					graphs.put(next.getId(), new Graph(splitter, i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a temporary file with the decompressed content of the file
+	 */
+	private File decompress(File file) throws IOException {
+		File decompressed = File.createTempFile("pepper-graphml-", "." + GraphMLExporter.FILE_ENDING);
+		synchronized (temporaryFiles) {
+			temporaryFiles.add(decompressed);
+		}
+		try (InputStream in = GraphMLReader.decompress(Files.newInputStream(file.toPath()))) {
+			Files.copy(in, decompressed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return decompressed;
+	}
+
+	@Override
+	public void end() throws PepperModuleException {
+		try {
+			super.end();
+		} finally {
+			synchronized (temporaryFiles) {
+				for (File file : temporaryFiles) {
+					if (!file.delete()) {
+						file.deleteOnExit();
+					}
+				}
+				temporaryFiles.clear();
+			}
+		}
+	}
+
+	@Override
+	public PepperMapper createPepperMapper(Identifier id) {
+		Graph graph = graphs.get(id.getId());
+		return graph == null ? new GraphMLMapper(null, 0) : new GraphMLMapper(graph.splitter, graph.number);
+	}
+
+	static class GraphMLMapper extends PepperMapperImpl {
+
+		private final GraphMLSplitter splitter;
+		private final int graph;
+
+		/**
+		 * @param splitter
+		 *            the scanned file or null if the whole resource is read
+		 * @param graph
+		 *            the number of the graph in the file
+		 */
+		GraphMLMapper(GraphMLSplitter splitter, int graph) {
+			this.splitter = splitter;
+			this.graph = graph;
+		}
+
+		@Override
+		public DOCUMENT_STATUS mapSDocument() {
+			SDocument doc = getDocument();
+			try {
+				GraphMLSplitter file = splitter != null ? splitter
+						: GraphMLSplitter.scan(new File(getResourceURI().toFileString()));
+				List<SDocument> result;
+				try (InputStream in = file.open(graph)) {
+					result = GraphMLReader.convertToSalt(in);
+				}
+				if (result.isEmpty()) {
+					doc.createDocumentGraph();
+				} else {
+					doc.setDocumentGraph(result.get(0).getDocumentGraph());
+				}
+			} catch (IOException ex) {
+				throw new PepperModuleException(this, "Could not read the GraphML of the document " + doc.getName(),
+						ex);
+			}
+			return DOCUMENT_STATUS.COMPLETED;
+		}
+	}
+}
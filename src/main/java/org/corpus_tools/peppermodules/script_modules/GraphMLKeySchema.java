@@ -0,0 +1,183 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.graph.Label;
+import org.corpus_tools.salt.graph.LabelableElement;
+
+/**
+ * The GraphML keys, i.e. the label names and value types, used by the
+ * {@link GraphMLWriter}. Each key gets a number in the order in which it was
+ * declared, the first one is always "salt::type".
+ *
+ * A schema can grow while the documents are written, in which case the writer
+ * buffers the graphs until all their keys are declared, or be collected from
+ * the documents before they are written, which costs a second traversal of
+ * the documents. It is thread-safe. A collected schema is complete until a key
+ * is declared that none of the collected documents uses.
+ */
+public class GraphMLKeySchema {
+
+	public static final String SALT_TYPE = "salt::type";
+
+	/** the key numbers by label name and type, so looking up a key allocates nothing */
+	private final Map<String, Map<String, Integer>> keys = new ConcurrentHashMap<>();
+	/**
+	 * the declared keys by their number, which is replaced when it grows, so
+	 * known keys can be read without locking
+	 */
+	private volatile Signature[] signatures = new Signature[16];
+	private volatile int size = 0;
+	private volatile boolean complete = false;
+
+	/**
+	 * Creates a schema that only contains the "salt::type" key.
+	 */
+	public GraphMLKeySchema() {
+		getKey(SALT_TYPE, "string");
+	}
+
+	/**
+	 * Creates a schema with the keys of the labels of all given documents,
+	 * which are included in the projection.
+	 */
+	public static GraphMLKeySchema collect(Iterable<SDocument> docs, GraphProjection projection) {
+		GraphMLKeySchema schema = new GraphMLKeySchema();
+		for (SDocument doc : docs) {
+			schema.addKeys(doc, projection);
+		}
+		schema.complete = true;
+		return schema;
+	}
+
+	/**
+	 * Declares the keys of the labels of the document and of its graph that
+	 * are included in the projection.
+	 */
+	public void addKeys(SDocument doc, GraphProjection projection) {
+		addLabelKeys(doc.getLabels(), GraphProjection.ALL);
+		SDocumentGraph g = doc.getDocumentGraph();
+		if (g != null) {
+			addKeys(GraphMLWriter.getNodes(g, projection), projection);
+			addKeys(GraphMLWriter.getRelations(g, projection), projection);
+		}
+	}
+
+	private void addKeys(Collection<? extends LabelableElement> elements, GraphProjection projection) {
+		if (elements != null) {
+			for (LabelableElement e : elements) {
+				addLabelKeys(e.getLabels(), projection);
+			}
+		}
+	}
+
+	void addLabelKeys(Collection<Label> labels, GraphProjection projection) {
+		if (labels != null) {
+			for (Label l : labels) {
+				String type = GraphMLWriter.getType(l.getValue());
+				if (type != null && projection.includes(l)) {
+					getKey(l.getQName(), type);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of the key, which is declared if it is not part of
+	 *         the schema yet
+	 */
+	public int getKey(String qname, String type) {
+		Map<String, Integer> byType = keys.get(qname);
+		Integer key = byType == null ? null : byType.get(type);
+		return key == null ? declare(qname, type) : key;
+	}
+
+	private synchronized int declare(String qname, String type) {
+		Map<String, Integer> byType = keys.computeIfAbsent(qname, k -> new ConcurrentHashMap<>(4));
+		Integer key = byType.get(type);
+		if (key == null) {
+			key = size;
+			Signature[] s = signatures;
+			if (key == s.length) {
+				s = Arrays.copyOf(s, s.length * 2);
+			}
+			s[key] = new Signature(qname, type, "k" + key);
+			// the signature is published before its number
+			signatures = s;
+			size = key + 1;
+			byType.put(type, key);
+			complete = false;
+		}
+		return key;
+	}
+
+	/**
+	 * @return true if the schema was collected from the documents and declares
+	 *         every key they use, so it does not grow while they are written
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return the number of declared keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the label name of the key with the given number
+	 */
+	public String getName(int key) {
+		return signatures[key].qname;
+	}
+
+	/**
+	 * @return the GraphML attribute type of the key with the given number
+	 */
+	public String getType(int key) {
+		return signatures[key].type;
+	}
+
+	/**
+	 * @return the ID of the key element with the given number
+	 */
+	public String getID(int key) {
+		return signatures[key].id;
+	}
+
+	private static class Signature {
+		final String qname;
+		final String type;
+		final String id;
+
+		Signature(String qname, String type, String id) {
+			this.qname = qname;
+			this.type = type;
+			this.id = id;
+		}
+	}
+}
@@ -17,14 +17,19 @@
  */
 package org.corpus_tools.peppermodules.script_modules;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLInputFactory;
@@ -37,13 +42,14 @@ import org.corpus_tools.pepper.exceptions.PepperException;
 import org.corpus_tools.salt.SALT_TYPE;
 import org.corpus_tools.salt.SaltFactory;
 import org.corpus_tools.salt.common.SDocument;
-import org.corpus_tools.salt.common.SDocumentGraph;
 import org.corpus_tools.salt.common.SDocumentGraphObject;
 import org.corpus_tools.salt.common.SMedialDS;
 import org.corpus_tools.salt.common.STimeline;
 import org.corpus_tools.salt.core.SNode;
+import org.corpus_tools.salt.core.SNamedElement;
 import org.corpus_tools.salt.core.SRelation;
 import org.corpus_tools.salt.core.impl.SFeatureImpl;
+import org.corpus_tools.salt.graph.IdentifiableElement;
 import org.corpus_tools.salt.graph.Label;
 import org.corpus_tools.salt.graph.impl.LabelImpl;
 import org.corpus_tools.salt.util.SaltUtil;
@@ -60,49 +66,197 @@ public class GraphMLReader {
 
     private final static XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
 
-    private final Map<String, GMLKey> keys = new LinkedHashMap<>();
-    private final Map<String, GMLNode> nodes = new LinkedHashMap<>();
-    private final Map<String, GMLEdge> edges = new LinkedHashMap<>();
+    /** the number of label values each reader keeps for reuse */
+    static final int VALUE_CACHE_SIZE = 4096;
+    /** the length of the longest label values that are reused */
+    static final int MAX_CACHED_VALUE_LENGTH = 64;
+
+    // the keys by their number and the numbers by the key ID, so the data of
+    // an element only needs one lookup for its key
+    private GMLKey[] keys = new GMLKey[16];
+    private int keyCount = 0;
+    private final Map<String, Integer> keyNumbers = new HashMap<>();
     private final XMLStreamReader xml;
     private final List<SDocument> documents = new LinkedList<>();
+    private final Map<String, SDocument> documentsByGraphID = new LinkedHashMap<>();
+
+    // state of the graph that is currently read
+    private SDocument currentDocument;
+    private String currentGraphID;
+    private final Map<String, SNode> id2node = new HashMap<>();
+    private final Set<String> edgeIDs = new HashSet<>();
+    private final List<GMLEdge> pendingEdges = new LinkedList<>();
+    // the data of the node or edge that is currently read
+    private final GMLData data = new GMLData();
+
+    // the recently read short label values by their hash, so repeated values
+    // like part-of-speech tags share a single string
+    private final String[] valueCache;
 
     protected GraphMLReader(XMLStreamReader xml) {
+        this(xml, true);
+    }
+
+    /**
+     * @param deduplicate
+     *            if true, repeated short string values of labels are read into
+     *            the same string
+     */
+    protected GraphMLReader(XMLStreamReader xml, boolean deduplicate) {
         this.xml = xml;
+        this.valueCache = deduplicate ? new String[VALUE_CACHE_SIZE] : null;
+    }
 
+    /**
+     * What the data of a key is used for, which is resolved when the key is
+     * declared.
+     */
+    private static enum GMLRole {
+        TYPE, NAME, ID, TIMELINE_DATA, MEDIA_REFERENCE, LABEL;
+
+        static GMLRole of(String qname) {
+            switch (qname) {
+            case "salt::type":
+                return TYPE;
+            case "salt::SNAME":
+                return NAME;
+            case "salt::id":
+                return ID;
+            case "salt::SDATA":
+                return TIMELINE_DATA;
+            case "salt::SAUDIO_REFERENCE":
+                return MEDIA_REFERENCE;
+            default:
+                return LABEL;
+            }
+        }
     }
 
-    private static enum GMLKeyFor {
-        all, node, edge
+    /**
+     * Parses the values of a GraphML attribute type.
+     */
+    private static enum GMLValueType {
+        BOOLEAN {
+            @Override
+            Object decode(String value) {
+                return Boolean.parseBoolean(value);
+            }
+        },
+        INT {
+            @Override
+            Object decode(String value) {
+                return Integer.parseInt(value);
+            }
+        },
+        LONG {
+            @Override
+            Object decode(String value) {
+                return Long.parseLong(value);
+            }
+        },
+        FLOAT {
+            @Override
+            Object decode(String value) {
+                return Float.parseFloat(value);
+            }
+        },
+        DOUBLE {
+            @Override
+            Object decode(String value) {
+                return Double.parseDouble(value);
+            }
+        },
+        STRING {
+            @Override
+            Object decode(String value) {
+                return value;
+            }
+        },
+        UNKNOWN {
+            @Override
+            Object decode(String value) {
+                return null;
+            }
+        };
+
+        abstract Object decode(String value);
+
+        static GMLValueType of(String type) {
+            switch (type.toLowerCase()) {
+            case "boolean":
+                return BOOLEAN;
+            case "int":
+                return INT;
+            case "long":
+                return LONG;
+            case "float":
+                return FLOAT;
+            case "double":
+                return DOUBLE;
+            case "string":
+                return STRING;
+            default:
+                return UNKNOWN;
+            }
+        }
     }
 
+    /**
+     * A declared key with everything that is needed to handle its data.
+     */
     private static class GMLKey {
 
-        final GMLKeyFor forObj;
-        final String qname;
-        final String type;
-
-        protected GMLKey(GMLKeyFor forObj, String qname, String type) {
-            this.forObj = forObj;
-            this.qname = qname;
-            this.type = type;
+        final boolean forNodes;
+        final boolean forEdges;
+        final GMLRole role;
+        final String namespace;
+        final String name;
+        /** true for labels in the "salt" namespace, which become features */
+        final boolean feature;
+        final GMLValueType valueType;
+
+        protected GMLKey(String forObj, String qname, String type) {
+            this.forNodes = !"edge".equals(forObj);
+            this.forEdges = !"node".equals(forObj);
+            this.role = GMLRole.of(qname);
+            Pair<String, String> splittedQName = SaltUtil.splitQName(qname);
+            this.namespace = splittedQName.getLeft();
+            this.name = splittedQName.getRight();
+            this.feature = "salt".equals(namespace);
+            this.valueType = GMLValueType.of(type);
         }
     }
 
+    /**
+     * The data of a node or edge as the numbers of their keys and their
+     * values.
+     */
     private static class GMLData {
-        final String key;
-        final String value;
-
-        protected GMLData(String key, String value) {
-            this.key = key;
-            this.value = value;
+        int[] keys = new int[8];
+        String[] values = new String[8];
+        int size = 0;
+
+        void add(int key, String value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
         }
-    }
 
-    private static class GMLNode {
-        final List<GMLData> data;
+        void clear() {
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+        }
 
-        protected GMLNode(List<GMLData> data) {
-            this.data = data;
+        GMLData copy() {
+            GMLData copy = new GMLData();
+            copy.keys = Arrays.copyOf(keys, size);
+            copy.values = Arrays.copyOf(values, size);
+            copy.size = size;
+            return copy;
         }
     }
 
@@ -110,9 +264,9 @@ public class GraphMLReader {
 
         final String source;
         final String target;
-        final List<GMLData> data;
+        final GMLData data;
 
-        protected GMLEdge(String source, String target, List<GMLData> data) {
+        protected GMLEdge(String source, String target, GMLData data) {
             this.source = source;
             this.target = target;
             this.data = data;
@@ -120,9 +274,9 @@ public class GraphMLReader {
     }
 
     private void map() throws XMLStreamException {
-        // read all elements and store the result in intermediate maps
-        Optional<String> currentGraphID = Optional.empty();
-
+        // the Salt objects are created as soon as their element was read, only
+        // edges whose source or target is not known yet are kept until the end
+        // of the graph
         while (xml.hasNext()) {
             switch (xml.getEventType()) {
             case XMLStreamConstants.START_ELEMENT:
@@ -132,67 +286,160 @@ public class GraphMLReader {
                         addKey();
                     } else if ("graph".equals(xml.getLocalName())) {
 
-                        if (currentGraphID.isPresent()) {
+                        if (currentDocument != null) {
                             // map the previous document
-                            mapDocument();
+                            finishDocument();
                         }
-
-                        currentGraphID = Optional.ofNullable(xml.getAttributeValue(null, "id"));
+                        startDocument(xml.getAttributeValue(null, "id"));
                         if (!"directed".equals(xml.getAttributeValue(null, "edgedefault"))) {
                             log.warn("GraphML edges are not directed for graph {} (but will be interpreted as such)",
-                                    currentGraphID.toString());
+                                    currentGraphID);
                         }
 
-                    } else if ("node".equals(xml.getLocalName())) {
+                    } else if ("node".equals(xml.getLocalName()) && currentDocument != null) {
                         mapNode();
-                    } else if ("edge".equals(xml.getLocalName())) {
+                    } else if ("edge".equals(xml.getLocalName()) && currentDocument != null) {
                         mapEdge();
                     }
                 }
                 break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (NS.equals(xml.getNamespaceURI()) && "graph".equals(xml.getLocalName())
+                        && currentDocument != null) {
+                    finishDocument();
+                }
+                break;
             }
 
             xml.next();
         }
 
-        if (currentGraphID.isPresent()) {
+        if (currentDocument != null) {
             // map the last document
-            mapDocument();
+            finishDocument();
         }
     }
 
-    private List<GMLData> parseData(String parentName) throws XMLStreamException {
+    /**
+     * Reads the "data" sub-elements of the current element into {@link #data}.
+     */
+    private void parseData(String parentName) throws XMLStreamException {
 
-        List<GMLData> result = new LinkedList<>();
+        data.clear();
 
         while (xml.hasNext()) {
             switch (xml.getEventType()) {
             case XMLStreamConstants.END_ELEMENT:
                 if (parentName.equals(xml.getLocalName())) {
-                    return result;
+                    return;
                 }
                 break;
             case XMLStreamConstants.START_ELEMENT:
                 if ("data".equals(xml.getLocalName())) {
-                    String key = xml.getAttributeValue(null, "key");
-                    String value = xml.getElementText();
-                    result.add(new GMLData(key, value));
+                    Integer key = keyNumbers.get(xml.getAttributeValue(null, "key"));
+                    if (key != null) {
+                        GMLKey k = keys[key];
+                        boolean deduplicate = valueCache != null && k.role == GMLRole.LABEL
+                                && k.valueType == GMLValueType.STRING;
+                        data.add(key, deduplicate ? readCachedText() : xml.getElementText());
+                    } else {
+                        xml.getElementText();
+                    }
                 }
                 break;
             }
             xml.next();
         }
-        return result;
+    }
+
+    /**
+     * Reads the text of the current element like
+     * {@link XMLStreamReader#getElementText()}, but returns the cached string
+     * if the same short text was read before. A cached text is found without
+     * creating a string.
+     */
+    private String readCachedText() throws XMLStreamException {
+        String text = "";
+        StringBuilder longText = null;
+        int event = xml.next();
+        while (event != XMLStreamConstants.END_ELEMENT) {
+            switch (event) {
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                if (longText != null) {
+                    longText.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                } else if (text.isEmpty()) {
+                    // the characters are only valid until the next event
+                    text = getCached(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                } else {
+                    // the text is split into several events
+                    longText = new StringBuilder(text);
+                    longText.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                }
+                break;
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                if (longText == null) {
+                    longText = new StringBuilder(text);
+                }
+                longText.append(xml.getText());
+                break;
+            case XMLStreamConstants.COMMENT:
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                break;
+            default:
+                throw new XMLStreamException("Unexpected event in the text of a data element", xml.getLocation());
+            }
+            event = xml.next();
+        }
+        if (longText != null) {
+            String value = longText.toString();
+            return getCached(value.toCharArray(), 0, value.length());
+        }
+        return text;
+    }
+
+    /**
+     * @return the cached string with the given characters, which is created
+     *         and cached if it is not known yet
+     */
+    private String getCached(char[] chars, int start, int length) {
+        if (length > MAX_CACHED_VALUE_LENGTH) {
+            return new String(chars, start, length);
+        }
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (valueCache.length - 1);
+        String cached = valueCache[slot];
+        if (cached != null && cached.length() == length) {
+            boolean same = true;
+            for (int i = 0; i < length && same; i++) {
+                same = cached.charAt(i) == chars[start + i];
+            }
+            if (same) {
+                return cached;
+            }
+        }
+        // a different value in the slot is replaced
+        String value = new String(chars, start, length);
+        valueCache[slot] = value;
+        return value;
     }
 
     private void mapNode() throws XMLStreamException {
         String id = xml.getAttributeValue(null, "id");
         if (id != null) {
             // get all possible "data" sub-elements
-            List<GMLData> data = parseData("node");
-            GMLNode node = new GMLNode(data);
-            this.nodes.putIfAbsent(id, node);
-
+            parseData("node");
+            if (!id2node.containsKey(id)) {
+                SNode obj = createNode(data);
+                if (obj != null) {
+                    currentDocument.getDocumentGraph().addNode(obj);
+                    id2node.put(id, obj);
+                }
+            }
         }
     }
 
@@ -202,159 +449,198 @@ public class GraphMLReader {
         String target = xml.getAttributeValue(null, "target");
         if (id != null && source != null && target != null) {
             // get all possible "data" sub-elements
-            List<GMLData> data = parseData("edge");
-
-            // find the type data element
-            GMLEdge node = new GMLEdge(source, target, data);
-            this.edges.putIfAbsent(id, node);
+            parseData("edge");
+            if (edgeIDs.add(id)) {
+                if (id2node.containsKey(source) && id2node.containsKey(target)) {
+                    addRelation(source, target, data);
+                } else {
+                    // the nodes might follow later in the graph
+                    pendingEdges.add(new GMLEdge(source, target, data.copy()));
+                }
+            }
         }
     }
 
-    private Optional<String> getType(List<GMLData> data) {
-        // iterate over all items and the the "salt::type" entry
-        for (GMLData d : data) {
-            GMLKey k = keys.get(d.key);
-            if (k != null && "salt::type".equals(k.qname)) {
-                return Optional.ofNullable(d.value);
+    /**
+     * @return the value of the "salt::type" data or null if there is none
+     */
+    private String getType(GMLData data) {
+        for (int i = 0; i < data.size; i++) {
+            if (keys[data.keys[i]].role == GMLRole.TYPE) {
+                return data.values[i];
             }
         }
-        return Optional.empty();
+        return null;
+    }
+
+    private void startDocument(String graphID) {
+        currentDocument = SaltFactory.createSDocument();
+        currentDocument.createDocumentGraph();
+        currentGraphID = graphID;
+    }
+
+    private void finishDocument() {
+        for (GMLEdge edge : pendingEdges) {
+            addRelation(edge.source, edge.target, edge.data);
+        }
+
+        documents.add(currentDocument);
+        if (currentGraphID != null) {
+            documentsByGraphID.putIfAbsent(currentGraphID, currentDocument);
+        }
+
+        currentDocument = null;
+        currentGraphID = null;
+        id2node.clear();
+        edgeIDs.clear();
+        pendingEdges.clear();
     }
 
-    private void mapDocument() {
-        SDocument doc = SaltFactory.createSDocument();
-        SDocumentGraph g = doc.createDocumentGraph();
-
-        Map<String, SNode> id2node = new HashMap<>();
-        for (Map.Entry<String, GMLNode> nodeEntry : this.nodes.entrySet()) {
-            GMLNode node = nodeEntry.getValue();
-            Optional<String> typeRaw = getType(node.data);
-            if (typeRaw.isPresent()) {
-                SALT_TYPE type = SALT_TYPE.valueOf(typeRaw.get());
-                SNode obj;
-                switch (type) {
-                case SMEDIAL_DS:
-                    obj = SaltFactory.createSMedialDS();
+    private SNode createNode(GMLData data) {
+        String typeName = getType(data);
+        if (typeName == null) {
+            return null;
+        }
+        SALT_TYPE type = SALT_TYPE.valueOf(typeName);
+        SNode obj = createNode(type);
+        if (obj == null) {
+            log.warn("Can't create Salt object from type {}", type.toString());
+            return null;
+        }
+        for (int i = 0; i < data.size; i++) {
+            // the key tells how the value is used and parsed
+            GMLKey key = keys[data.keys[i]];
+            if (key.forNodes) {
+                String value = data.values[i];
+                switch (key.role) {
+                case NAME:
+                    obj.setName(value);
                     break;
-                case STIMELINE:
-                    obj = SaltFactory.createSTimeline();
-                case STEXTUAL_DS:
-                    obj = SaltFactory.createSTextualDS();
+                case ID:
+                    obj.setId(value);
                     break;
-                case SSPAN:
-                    obj = SaltFactory.createSSpan();
+                case TYPE:
+                    // ignore
                     break;
-                case SSTRUCTURE:
-                    obj = SaltFactory.createSStructure();
+                case TIMELINE_DATA:
+                    if (obj instanceof STimeline) {
+                        // directly set the timeline end
+                        ((STimeline) obj).increasePointOfTime(Integer.parseInt(value));
+                    } else {
+                        obj.addLabel(createLabel(key, value));
+                    }
                     break;
-                case STOKEN:
-                    obj = SaltFactory.createSToken();
+                case MEDIA_REFERENCE:
+                    if (obj instanceof SMedialDS) {
+                        ((SMedialDS) obj).setMediaReference(URI.createURI(value));
+                    } else {
+                        obj.addLabel(createLabel(key, value));
+                    }
                     break;
                 default:
-                    obj = null;
-                }
-                if (obj == null) {
-                    log.warn("Can't create Salt object from type {}", type.toString());
-                } else {
-                    for (GMLData data : node.data) {
-                        // get the corresponding key entry and parse the value according to the type of
-                        // the key
-                        GMLKey key = this.keys.get(data.key);
-                        if (key != null && (key.forObj == GMLKeyFor.all || key.forObj == GMLKeyFor.node)) {
-                            if ("salt::SNAME".equals(key.qname)) {
-                                obj.setName(data.value);
-                            } else if ("salt::id".equals(key.qname)) {
-                                obj.setId(data.value);
-                            } else if("salt::type".equals(key.qname)) {
-                                // ignore
-                            } else if ("salt::SDATA".equals(key.qname) && obj instanceof STimeline) {
-                                // directly set the timeline end
-                                ((STimeline) obj).increasePointOfTime(Integer.parseInt(data.value));
-                            } else if("salt::SAUDIO_REFERENCE".equals(key.qname) && obj instanceof SMedialDS) {
-                                ((SMedialDS) obj).setMediaReference(URI.createURI(data.value));
-                            } else {
-                                Label lbl = createLabel(key, data.value);
-                                obj.addLabel(lbl);
-                            }
-                        }
-                    }
-                    g.addNode(obj);
-                    id2node.put(nodeEntry.getKey(), obj);
+                    obj.addLabel(createLabel(key, value));
                 }
             }
         }
-        for (Map.Entry<String, GMLEdge> edgeEntry : this.edges.entrySet()) {
-            GMLEdge edge = edgeEntry.getValue();
-            Optional<String> typeRaw = getType(edge.data);
-            if(typeRaw.isPresent()) {
-                SALT_TYPE type = SALT_TYPE.valueOf(typeRaw.get());
-                SRelation obj;
-                switch (type) {
-                case SDOMINANCE_RELATION:
-                    obj = SaltFactory.createSDominanceRelation();
-                    break;
-                case SMEDIAL_RELATION:
-                    obj = SaltFactory.createSMedialRelation();
-                    break;
-                case SORDER_RELATION:
-                    obj = SaltFactory.createSOrderRelation();
-                    break;
-                case SPOINTING_RELATION:
-                    obj = SaltFactory.createSPointingRelation();
-                    break;
-                case SSPANNING_RELATION:
-                    obj = SaltFactory.createSSpanningRelation();
-                    break;
-                case STEXTUAL_RELATION:
-                    obj = SaltFactory.createSTextualRelation();
-                    break;
-                case STIMELINE_RELATION:
-                    obj = SaltFactory.createSTimelineRelation();
-                    break;
-                default:
-                    obj = null;
-                }
-                if (obj == null) {
-                    log.warn("Can't create Salt object from type {}", type.toString());
-                } else {
-                    SNode source = id2node.get(edge.source);
-                    SNode target = id2node.get(edge.target);
-                    if (source != null && target != null) {
-                        obj.setSource(source);
-                        obj.setTarget(target);
-
-                        for (GMLData data : edge.data) {
-                            // get the corresponding key entry and parse the value according to the type of
-                            // the key
-                            GMLKey key = this.keys.get(data.key);
-                            if (key != null && (key.forObj == GMLKeyFor.all || key.forObj == GMLKeyFor.edge)) {
-                                if ("salt::SNAME".equals(key.qname)) {
-                                    obj.setName(data.value);
-                                } else if ("salt::id".equals(key.qname)) {
-                                    obj.setId(data.value);
-                                } else if("salt::type".equals(key.qname)) {
-                                    // ignore
-                                } else {
-                                    Label lbl = createLabel(key, data.value);
-                                    obj.addLabel(lbl);
-                                }
+        return obj;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void addRelation(String sourceID, String targetID, GMLData data) {
+        String typeName = getType(data);
+        if (typeName != null) {
+            SALT_TYPE type = SALT_TYPE.valueOf(typeName);
+            SRelation obj = createRelation(type);
+            if (obj == null) {
+                log.warn("Can't create Salt object from type {}", type.toString());
+            } else {
+                SNode source = id2node.get(sourceID);
+                SNode target = id2node.get(targetID);
+                if (source != null && target != null) {
+                    obj.setSource(source);
+                    obj.setTarget(target);
+
+                    for (int i = 0; i < data.size; i++) {
+                        // the key tells how the value is used and parsed
+                        GMLKey key = keys[data.keys[i]];
+                        if (key.forEdges) {
+                            String value = data.values[i];
+                            switch (key.role) {
+                            case NAME:
+                                obj.setName(value);
+                                break;
+                            case ID:
+                                obj.setId(value);
+                                break;
+                            case TYPE:
+                                // ignore
+                                break;
+                            default:
+                                obj.addLabel(createLabel(key, value));
                             }
                         }
-                        g.addRelation(obj);
                     }
+                    currentDocument.getDocumentGraph().addRelation(obj);
                 }
             }
         }
+    }
 
-        this.nodes.clear();
-        this.edges.clear();
-
-        documents.add(doc);
+    /**
+     * @return a new node of the given type or null if no nodes of this type can be
+     *         created
+     */
+    static SNode createNode(SALT_TYPE type) {
+        switch (type) {
+        case SMEDIAL_DS:
+            return SaltFactory.createSMedialDS();
+        case STIMELINE:
+            return SaltFactory.createSTimeline();
+        case STEXTUAL_DS:
+            return SaltFactory.createSTextualDS();
+        case SSPAN:
+            return SaltFactory.createSSpan();
+        case SSTRUCTURE:
+            return SaltFactory.createSStructure();
+        case STOKEN:
+            return SaltFactory.createSToken();
+        default:
+            return null;
+        }
     }
 
-    private Label createLabel(GMLKey key, String value) {
+    /**
+     * @return a new relation of the given type or null if no relations of this
+     *         type can be created
+     */
+    @SuppressWarnings("rawtypes")
+    static SRelation createRelation(SALT_TYPE type) {
+        switch (type) {
+        case SDOMINANCE_RELATION:
+            return SaltFactory.createSDominanceRelation();
+        case SMEDIAL_RELATION:
+            return SaltFactory.createSMedialRelation();
+        case SORDER_RELATION:
+            return SaltFactory.createSOrderRelation();
+        case SPOINTING_RELATION:
+            return SaltFactory.createSPointingRelation();
+        case SSPANNING_RELATION:
+            return SaltFactory.createSSpanningRelation();
+        case STEXTUAL_RELATION:
+            return SaltFactory.createSTextualRelation();
+        case STIMELINE_RELATION:
+            return SaltFactory.createSTimelineRelation();
+        default:
+            return null;
+        }
+    }
 
-        Pair<String, String> splittedQName = SaltUtil.splitQName(key.qname);
+    /**
+     * Creates a feature for labels in the "salt" namespace and an annotation for
+     * all other labels.
+     */
+    static Label createLabel(String qname, Object value) {
+        Pair<String, String> splittedQName = SaltUtil.splitQName(qname);
         Label result;
         if("salt".equals(splittedQName.getLeft())) {
             // salt labels are in general features
@@ -362,31 +648,50 @@ public class GraphMLReader {
         } else {
             result = SaltFactory.createSAnnotation();
         }
-        Object labelVal = null;
-        switch (key.type.toLowerCase()) {
-        case "boolean":
-            labelVal = Boolean.parseBoolean(value);
-            break;
-        case "int":
-            labelVal = Integer.parseInt(value);
-            break;
-        case "long":
-            labelVal = Long.parseLong(value);
-            break;
-        case "float":
-            labelVal = Float.parseFloat(value);
-            break;
-        case "double":
-            labelVal = Double.parseDouble(value);
-            break;
-        case "string":
-            labelVal = value;
-            break;
-
-        }
-
-        result.setQName(key.qname);
-        result.setValue(labelVal);
+        result.setQName(qname);
+        result.setValue(value);
+        return result;
+    }
+
+    /**
+     * Adds a label to a node or relation. Labels in the "salt" namespace that
+     * represent properties of the object are set directly.
+     */
+    static void addLabel(IdentifiableElement obj, String qname, Object value) {
+        if ("salt::SNAME".equals(qname) && obj instanceof SNamedElement) {
+            ((SNamedElement) obj).setName(String.valueOf(value));
+        } else if ("salt::id".equals(qname)) {
+            obj.setId(String.valueOf(value));
+        } else if ("salt::type".equals(qname)) {
+            // ignore
+        } else if ("salt::SDATA".equals(qname) && obj instanceof STimeline && value instanceof Integer) {
+            // directly set the timeline end
+            ((STimeline) obj).increasePointOfTime((Integer) value);
+        } else if ("salt::SAUDIO_REFERENCE".equals(qname) && obj instanceof SMedialDS) {
+            ((SMedialDS) obj).setMediaReference(URI.createURI(String.valueOf(value)));
+        } else {
+            obj.addLabel(createLabel(qname, value));
+        }
+    }
+
+    /**
+     * Parses a label value according to its GraphML attribute type.
+     * 
+     * @return the value or null if the type is unknown
+     */
+    static Object parseValue(String type, String value) {
+        return GMLValueType.of(type).decode(value);
+    }
+
+    /**
+     * Creates the label with the namespace and name the key was split into
+     * when it was declared.
+     */
+    private static Label createLabel(GMLKey key, String value) {
+        Label result = key.feature ? SaltFactory.createSFeature() : SaltFactory.createSAnnotation();
+        result.setNamespace(key.namespace);
+        result.setName(key.name);
+        result.setValue(key.valueType.decode(value));
         return result;
     }
 
@@ -396,35 +701,85 @@ public class GraphMLReader {
         String attFor = xml.getAttributeValue(null, "for");
         String attrType = xml.getAttributeValue(null, "attr.type");
 
-        if (id != null && attrName != null && attrType != null) {
-            GMLKeyFor keyType = GMLKeyFor.all;
-            if ("node".equals(attFor)) {
-                keyType = GMLKeyFor.node;
-            } else if ("edge".equals(attFor)) {
-                keyType = GMLKeyFor.edge;
+        if (id != null && attrName != null && attrType != null && !keyNumbers.containsKey(id)) {
+            if (keyCount == keys.length) {
+                keys = Arrays.copyOf(keys, keyCount * 2);
             }
+            keys[keyCount] = new GMLKey(attFor, attrName, attrType);
+            keyNumbers.put(id, keyCount);
+            keyCount++;
+        }
+    }
+
+    public static List<SDocument> convertToSalt(InputStream in) {
+        return read(in, true).documents;
+    }
 
-            GMLKey key = new GMLKey(keyType, attrName, attrType);
-            keys.putIfAbsent(id, key);
+    /**
+     * Reads all graphs of the GraphML stream.
+     * 
+     * @param deduplicate
+     *            if false, every label value is read into a string of its own
+     */
+    static List<SDocument> convertToSalt(InputStream in, boolean deduplicate) {
+        return read(in, deduplicate).documents;
+    }
+
+    /**
+     * Reads all graphs of the GraphML stream.
+     * 
+     * @return the documents by the ID of the graph element they were read from,
+     *         in the order of the input
+     */
+    public static Map<String, SDocument> convertToSaltByGraphID(InputStream in) {
+        return read(in, true).documentsByGraphID;
+    }
 
+    /**
+     * Decompresses the stream if it starts with the gzip magic bytes. The data
+     * is decompressed on a thread of its own ahead of the parser.
+     * 
+     * @return the decompressed stream or the given one if it is not compressed
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in, 64 * 1024);
+        }
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if (first == 0x1f && second == 0x8b) {
+            return new ReadAheadInputStream(new GZIPInputStream(in, 64 * 1024));
         }
+        return in;
     }
 
-    public static List<SDocument> convertToSalt(InputStream in) {
+    private static GraphMLReader read(InputStream in, boolean deduplicate) {
 
+        InputStream input = null;
         try {
-            // create some helper collections to store the parsed XML content
+            input = decompress(in);
 
             // create the XML reader
-            XMLStreamReader xml = xmlFactory.createXMLStreamReader(in);
+            XMLStreamReader xml = xmlFactory.createXMLStreamReader(input);
 
-            GraphMLReader reader = new GraphMLReader(xml);
+            GraphMLReader reader = new GraphMLReader(xml, deduplicate);
             reader.map();
 
-            return reader.documents;
+            return reader;
 
-        } catch (XMLStreamException ex) {
+        } catch (XMLStreamException | IOException ex) {
             throw new PepperException("GraphML reading excpetion", ex);
+        } finally {
+            if (input instanceof ReadAheadInputStream) {
+                // stop reading ahead
+                try {
+                    input.close();
+                } catch (IOException ex) {
+                    log.warn("Could not close the compressed GraphML stream", ex);
+                }
+            }
         }
     }
 
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the top-level graph elements of a GraphML file by scanning its bytes
+ * through a memory mapping, so each graph can be read on its own and in
+ * parallel to the others.
+ *
+ * A graph is read with everything that precedes the first graph, i.e. the
+ * XML declaration, the start of the graphml element and the keys, and with
+ * the keys that are declared between the graphs before it. The scan only
+ * knows graph elements without a namespace prefix, files without such
+ * elements are read as a whole.
+ */
+class GraphMLSplitter {
+
+	/** the size of the mapped segments, which must be a power of two */
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	private static final byte[] GRAPH_START = ascii("<graph");
+	private static final byte[] GRAPH_END = ascii("</graph");
+	private static final byte[] COMMENT_START = ascii("<!--");
+	private static final byte[] COMMENT_END = ascii("-->");
+	private static final byte[] CDATA_START = ascii("<![CDATA[");
+	private static final byte[] CDATA_END = ascii("]]>");
+	private static final byte[] PI_START = ascii("<?");
+	private static final byte[] PI_END = ascii("?>");
+	private static final byte[] GRAPHML_END = ascii("</graphml>");
+
+	private final File file;
+	/** the mapping of the file, which is only kept while it is scanned */
+	private MappedByteBuffer[] segments;
+	private final long size;
+
+	/** the start and end offset of each graph element */
+	private long[] starts = new long[16];
+	private long[] ends = new long[16];
+	private int graphs = 0;
+
+	/** everything before the first graph */
+	private byte[] prologue = new byte[0];
+	/** the elements between two graphs, e.g. additional keys */
+	private final List<byte[]> declarations = new ArrayList<>();
+	/** the number of declarations that precede each graph */
+	private int[] declarationsBefore = new int[16];
+
+	private GraphMLSplitter(File file) throws IOException {
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			this.size = channel.size();
+			this.segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+			for (int i = 0; i < segments.length; i++) {
+				long position = (long) i * SEGMENT_SIZE;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(SEGMENT_SIZE, size - position));
+			}
+		}
+	}
+
+	private static byte[] ascii(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Scans the file for its graphs.
+	 */
+	public static GraphMLSplitter scan(File file) throws IOException {
+		GraphMLSplitter splitter = new GraphMLSplitter(file);
+		splitter.scan();
+		splitter.segments = null;
+		return splitter;
+	}
+
+	/**
+	 * @return the number of graphs, which is 1 for files that are read as a
+	 *         whole
+	 */
+	public int size() {
+		return Math.max(graphs, 1);
+	}
+
+	/**
+	 * @return a GraphML document that only contains the graph with the given
+	 *         number
+	 */
+	public InputStream open(int graph) throws IOException {
+		if (graphs == 0) {
+			return MappedFileInputStream.open(file);
+		}
+		List<InputStream> parts = new ArrayList<>();
+		parts.add(new ByteArrayInputStream(prologue));
+		for (int i = 0; i < declarationsBefore[graph]; i++) {
+			parts.add(new ByteArrayInputStream(declarations.get(i)));
+		}
+		parts.add(MappedFileInputStream.open(file, starts[graph], ends[graph] - starts[graph]));
+		parts.add(new ByteArrayInputStream(GRAPHML_END));
+		return new SequenceInputStream(Collections.enumeration(parts));
+	}
+
+	private byte byteAt(long pos) {
+		return segments[(int) (pos / SEGMENT_SIZE)].get((int) (pos % SEGMENT_SIZE));
+	}
+
+	private boolean startsWith(long pos, byte[] prefix) {
+		if (pos + prefix.length > size) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (byteAt(pos + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the position after the next occurrence of the bytes or the end
+	 *         of the file
+	 */
+	private long skipPast(long pos, byte[] bytes) {
+		while (pos < size) {
+			if (byteAt(pos) == bytes[0] && startsWith(pos, bytes)) {
+				return pos + bytes.length;
+			}
+			pos++;
+		}
+		return size;
+	}
+
+	/**
+	 * @return the position after the end of the tag that starts at the given
+	 *         position, ignoring any ">" in quoted attribute values
+	 */
+	private long skipTag(long pos) {
+		byte quote = 0;
+		for (pos++; pos < size; pos++) {
+			byte b = byteAt(pos);
+			if (quote != 0) {
+				if (b == quote) {
+					quote = 0;
+				}
+			} else if (b == '"' || b == '\'') {
+				quote = b;
+			} else if (b == '>') {
+				return pos + 1;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return true if the byte ends an element name
+	 */
+	private boolean isNameEnd(long pos) {
+		if (pos >= size) {
+			return false;
+		}
+		byte b = byteAt(pos);
+		return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	private byte[] copy(long from, long to) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int) (to - from));
+		for (long pos = from; pos < to; pos++) {
+			out.write(byteAt(pos));
+		}
+		return out.toByteArray();
+	}
+
+	private void scan() {
+		// text and attribute values can not contain "<", so only comments,
+		// CDATA sections and processing instructions must be skipped
+		int depth = 0;
+		long start = 0;
+		long previousEnd = -1;
+		long pos = 0;
+		while (pos < size) {
+			if (byteAt(pos) != '<') {
+				pos++;
+			} else if (startsWith(pos, COMMENT_START)) {
+				pos = skipPast(pos + COMMENT_START.length, COMMENT_END);
+			} else if (startsWith(pos, CDATA_START)) {
+				pos = skipPast(pos + CDATA_START.length, CDATA_END);
+			} else if (startsWith(pos, PI_START)) {
+				pos = skipPast(pos + PI_START.length, PI_END);
+			} else if (startsWith(pos, GRAPH_START) && isNameEnd(pos + GRAPH_START.length)) {
+				long tagEnd = skipTag(pos);
+				boolean empty = byteAt(tagEnd - 2) == '/';
+				if (depth == 0) {
+					start = pos;
+					addDeclarations(previousEnd, start);
+				}
+				if (empty && depth == 0) {
+					addGraph(start, tagEnd);
+					previousEnd = tagEnd;
+				} else if (!empty) {
+					depth++;
+				}
+				pos = tagEnd;
+			} else if (startsWith(pos, GRAPH_END) && isNameEnd(pos + GRAPH_END.length)) {
+				pos = skipTag(pos);
+				if (depth > 0 && --depth == 0) {
+					addGraph(start, pos);
+					previousEnd = pos;
+				}
+			} else {
+				pos++;
+			}
+		}
+	}
+
+	/**
+	 * Keeps what is between the previous graph and the next one, which starts
+	 * at the given position, if it contains any elements.
+	 */
+	private void addDeclarations(long previousEnd, long start) {
+		if (previousEnd < 0) {
+			prologue = copy(0, start);
+			return;
+		}
+		for (long pos = previousEnd; pos < start; pos++) {
+			if (byteAt(pos) == '<') {
+				declarations.add(copy(previousEnd, start));
+				return;
+			}
+		}
+	}
+
+	private void addGraph(long start, long end) {
+		if (graphs == starts.length) {
+			starts = Arrays.copyOf(starts, graphs * 2);
+			ends = Arrays.copyOf(ends, graphs * 2);
+			declarationsBefore = Arrays.copyOf(declarationsBefore, graphs * 2);
+		}
+		starts[graphs] = start;
+		ends[graphs] = end;
+		declarationsBefore[graphs] = declarations.size();
+		graphs++;
+	}
+}
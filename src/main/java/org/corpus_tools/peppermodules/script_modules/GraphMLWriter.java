@@ -17,33 +17,34 @@
  */
 package org.corpus_tools.peppermodules.script_modules;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 
 import javax.management.Attribute;
 import javax.xml.stream.XMLOutputFactory;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamWriter;
 
 import org.corpus_tools.salt.SALT_TYPE;
 import org.corpus_tools.salt.common.SDocument;
 import org.corpus_tools.salt.common.SDocumentGraph;
 import org.corpus_tools.salt.common.STextualDS;
-import org.corpus_tools.salt.common.STimeline;
 import org.corpus_tools.salt.core.SNode;
 import org.corpus_tools.salt.core.SRelation;
 import org.corpus_tools.salt.graph.Label;
-import org.corpus_tools.salt.graph.LabelableElement;
 import org.corpus_tools.salt.graph.Node;
 import org.corpus_tools.salt.graph.Relation;
 import org.eclipse.emf.common.util.URI;
@@ -59,125 +60,340 @@ public class GraphMLWriter {
 
 	public final static String NS = "http://graphml.graphdrawing.org/xmlns";
 
+	/** the number of nodes or relations a large graph is split into when it is written in parallel */
+	static final int CHUNK_SIZE = 10000;
+	/** the number of documents per thread that are written in parallel at once */
+	private static final int WINDOW_PER_THREAD = 4;
+	private static final String WOODSTOX_VALIDATE_STRUCTURE = "com.ctc.wstx.outputValidateStructure";
+
+	/**
+	 * The ways the XML can be written.
+	 */
+	public enum Serializer {
+		/** with the StAX implementation of the runtime */
+		STAX,
+		/** directly as UTF-8 bytes, which produces the same output faster */
+		DIRECT
+	}
+
 	public static void convertFromSalt(OutputStream out, SDocument... docs) {
 		writeDocuments(out, Arrays.asList(docs));
 	}
 
-	public static void writeDocuments(OutputStream out, List<SDocument> docs) {
-		XMLOutputFactory factory = XMLOutputFactory.newFactory();
+	/**
+	 * Writes all documents as separate graphs into a single GraphML stream.
+	 * 
+	 * @return the written documents by the ID of the graph element they were
+	 *         written to, in the order of the output. Documents without nodes
+	 *         are not written and thus not part of this map.
+	 */
+	public static Map<String, SDocument> writeDocuments(OutputStream out, List<SDocument> docs) {
+		return writeDocuments(out, docs, null);
+	}
+
+	/**
+	 * Writes all documents as separate graphs into a single GraphML stream.
+	 * 
+	 * @param elementsByID
+	 *            if not null, receives the written graphs, nodes and relations
+	 *            by the ID they were written with
+	 * @return the written documents by the ID of the graph element they were
+	 *         written to, in the order of the output. Documents without nodes
+	 *         are not written and thus not part of this map.
+	 */
+	public static Map<String, SDocument> writeDocuments(OutputStream out, List<SDocument> docs,
+			Map<String, Object> elementsByID) {
+		return writeDocuments(out, docs, elementsByID, GraphProjection.ALL);
+	}
+
+	/**
+	 * Writes the projection of all documents as separate graphs into a single
+	 * GraphML stream.
+	 * 
+	 * @param elementsByID
+	 *            if not null, receives the written graphs, nodes and relations
+	 *            by the ID they were written with
+	 * @param projection
+	 *            selects the nodes, relations and labels that are written
+	 * @return the written documents by the ID of the graph element they were
+	 *         written to, in the order of the output. Documents without nodes
+	 *         are not written and thus not part of this map.
+	 */
+	public static Map<String, SDocument> writeDocuments(OutputStream out, List<SDocument> docs,
+			Map<String, Object> elementsByID, GraphProjection projection) {
+		return writeDocuments(out, docs, elementsByID, projection, new GraphMLKeySchema());
+	}
+
+	/**
+	 * Writes the projection of all documents as separate graphs into a single
+	 * GraphML stream. Each document is traversed only once, so the documents
+	 * can be loaded one after another while they are written.
+	 * 
+	 * All keys precede the first graph, as the GraphML schema requires. Keys
+	 * that are missing in the schema are added to it while the graphs are
+	 * written, so the graphs are buffered until the last one is written and
+	 * all their keys can be declared. Only the graphs of a schema that was
+	 * collected from the documents, which is complete, are written directly.
+	 * 
+	 * @param elementsByID
+	 *            if not null, receives the written graphs, nodes and relations
+	 *            by the ID they were written with
+	 * @param projection
+	 *            selects the nodes, relations and labels that are written
+	 * @param schema
+	 *            the keys for the labels
+	 * @return the written documents by the ID of the graph element they were
+	 *         written to, in the order of the output. Documents without nodes
+	 *         are not written and thus not part of this map.
+	 */
+	public static Map<String, SDocument> writeDocuments(OutputStream out, Iterable<SDocument> docs,
+			Map<String, Object> elementsByID, GraphProjection projection, GraphMLKeySchema schema) {
+		return writeDocuments(out, docs, elementsByID, projection, schema, null);
+	}
+
+	/**
+	 * Writes the projection of all documents as separate graphs into a single
+	 * GraphML stream like
+	 * {@link #writeDocuments(OutputStream, Iterable, Map, GraphProjection, GraphMLKeySchema)}
+	 * does, but serializes the graphs on the given pool.
+	 * 
+	 * The documents are taken in windows of a few documents per thread. The
+	 * IDs and the keys of all graphs of a window are assigned first, in the
+	 * order of the documents. Then every graph is written into its own buffer
+	 * and large graphs are split into chunks of nodes and relations. The
+	 * buffers are finally concatenated in the order of the documents, so the
+	 * output is the same as the one of the sequential writer.
+	 * 
+	 * @param pool
+	 *            serializes the graphs, or null to write them sequentially
+	 */
+	public static Map<String, SDocument> writeDocuments(OutputStream out, Iterable<SDocument> docs,
+			Map<String, Object> elementsByID, GraphProjection projection, GraphMLKeySchema schema,
+			ForkJoinPool pool) {
+		return writeDocuments(out, docs, elementsByID, projection, schema, pool, Serializer.STAX);
+	}
+
+	/**
+	 * Writes the projection of all documents as separate graphs into a single
+	 * GraphML stream like
+	 * {@link #writeDocuments(OutputStream, Iterable, Map, GraphProjection, GraphMLKeySchema, ForkJoinPool)}
+	 * does.
+	 * 
+	 * @param serializer
+	 *            selects how the XML is written
+	 */
+	public static Map<String, SDocument> writeDocuments(OutputStream out, Iterable<SDocument> docs,
+			Map<String, Object> elementsByID, GraphProjection projection, GraphMLKeySchema schema,
+			ForkJoinPool pool, Serializer serializer) {
+		Map<String, SDocument> graphIDs = new LinkedHashMap<>();
 		try {
-			XMLStreamWriter w = factory.createXMLStreamWriter(out);
-			w.setDefaultNamespace(NS);
-
-			w.writeStartDocument();
-
-			w.writeStartElement(NS, "graphml");
-			w.writeDefaultNamespace(NS);
-			w.writeNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
-			w.writeAttribute("http://www.w3.org/2001/XMLSchema-instance", "schemaLocation",
-					NS + " http://graphml.graphdrawing.org/xmlns/1.1/graphml.xsd");
-
-			IDManager ids = new IDManager();
-
-			// we always use the "salt::type" label
-			w.writeStartElement(NS, "key");
-
-			w.writeAttribute("id", ids.getID(new AttributeSignature("salt::type", "string")));
-			w.writeAttribute("attr.name", "salt::type");
-			w.writeAttribute("for", "all");
-			w.writeAttribute("attr.type", "string");
-			w.writeEndElement();
-
-			if (docs != null) {
-				// first get all possible label names and write them as "key"
-				for (SDocument doc : docs) {
-					SDocumentGraph g = doc.getDocumentGraph();
-					if (g != null) {
-						writeKeys(w, g.getNodes(), ids);
-						writeKeys(w, g.getRelations(), ids);
-						writeKeys(w, g.getTextualDSs(), ids);
-						writeKeys(w, g.getMedialDSs(), ids);
-						if (g.getTimeline() != null) {
-							List<STimeline> timeline = new LinkedList<>();
-							timeline.add(g.getTimeline());
-							writeKeys(w, timeline, ids);
-						}
-					}
+			write(out, docs, elementsByID, projection, schema, pool, serializer, graphIDs);
+		} catch (IOException ex) {
+			log.error("Could not write GraphML", ex);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			log.error("Interrupted while writing GraphML", ex);
+		}
+		return graphIDs;
+	}
+
+	/**
+	 * Wraps the stream, so the GraphML is compressed with gzip in blocks in
+	 * parallel on the pool. The returned stream must be closed to complete the
+	 * gzip data, the {@link GraphMLReader} decompresses it transparently.
+	 */
+	public static OutputStream compress(OutputStream out, ForkJoinPool pool) {
+		return new ParallelGzipOutputStream(out, pool);
+	}
+
+	/**
+	 * Writes the documents like
+	 * {@link #writeDocuments(OutputStream, Iterable, Map, GraphProjection, GraphMLKeySchema, ForkJoinPool, Serializer)}
+	 * does, but reports errors to the caller instead of logging them.
+	 * 
+	 * @param graphIDs
+	 *            receives the written documents by the ID of their graph
+	 */
+	static void write(OutputStream out, Iterable<SDocument> docs, Map<String, Object> elementsByID,
+			GraphProjection projection, GraphMLKeySchema schema, ForkJoinPool pool, Serializer serializer,
+			Map<String, SDocument> graphIDs) throws IOException, InterruptedException {
+		EmitterFactory emitters = createEmitterFactory(serializer);
+		GraphMLEmitter w = emitters.create(out, false);
+		w.startDocument();
+
+		// the schema always contains the "salt::type" key
+		int declaredKeys = writeKeys(w, schema, 0, schema.size());
+		w.flush();
+		// the keys must precede the first graph, so unless the schema is
+		// complete the graphs are buffered until all their keys are declared
+		boolean direct = schema.isComplete();
+		BlockBuffer pending = direct ? null : new BlockBuffer();
+
+		if (docs != null && pool != null) {
+			ParallelWriter writer = new ParallelWriter(direct ? out : pending, projection, schema, pool, emitters);
+			List<SDocument> window = new ArrayList<>();
+			for (SDocument d : docs) {
+				window.add(d);
+				if (window.size() >= pool.getParallelism() * WINDOW_PER_THREAD) {
+					writer.write(window, graphIDs, elementsByID);
+					checkComplete(direct, declaredKeys, schema, window);
+					window.clear();
 				}
-				// write the actual graphs
-				for (SDocument d : docs) {
-					writeSDocumentGraph(w, d.getDocumentGraph(), ids, true);
+			}
+			writer.write(window, graphIDs, elementsByID);
+			checkComplete(direct, declaredKeys, schema, window);
+		} else if (docs != null) {
+			GraphMLEmitter graphWriter = direct ? w : emitters.create(pending, true);
+			long nextID = 0;
+			for (SDocument d : docs) {
+				IDManager ids = new IDManager(nextID);
+				String graphID = writeSDocumentGraph(graphWriter, d.getDocumentGraph(), ids, true, projection,
+						schema);
+				checkComplete(direct, declaredKeys, schema, Collections.singletonList(d));
+				if (graphID != null) {
+					nextID += ids.size();
+					graphIDs.put(graphID, d);
+					if (elementsByID != null) {
+						ids.getElements(elementsByID);
+					}
 				}
 			}
-			w.writeEndDocument();
-			w.close();
+			graphWriter.flush();
+		}
+		if (pending != null) {
+			writeKeys(w, schema, declaredKeys, schema.size());
+			w.flush();
+			pending.writeTo(out);
+		}
+		w.endDocument();
 
-			out.flush();
-		} catch (XMLStreamException | IOException ex) {
-			log.error("Could not write GraphML", ex);
+		out.flush();
+	}
+
+	private interface EmitterFactory {
+		/**
+		 * @param fragment
+		 *            true if the emitter writes a part of the document, which
+		 *            may be empty or consist of several elements
+		 */
+		GraphMLEmitter create(OutputStream out, boolean fragment) throws IOException;
+	}
+
+	private static EmitterFactory createEmitterFactory(Serializer serializer) {
+		if (serializer == Serializer.DIRECT) {
+			return (out, fragment) -> new Utf8GraphMLEmitter(out);
 		}
+		XMLOutputFactory factory = XMLOutputFactory.newFactory();
+		XMLOutputFactory fragmentFactory = XMLOutputFactory.newFactory();
+		if (fragmentFactory.isPropertySupported(WOODSTOX_VALIDATE_STRUCTURE)) {
+			fragmentFactory.setProperty(WOODSTOX_VALIDATE_STRUCTURE, false);
+		}
+		return (out, fragment) -> new StaxGraphMLEmitter(fragment ? fragmentFactory : factory, out);
+	}
 
+	/**
+	 * @return the nodes of the graph that are included in the projection
+	 */
+	static List<SNode> getNodes(SDocumentGraph g, GraphProjection projection) {
+		List<SNode> nodes = g.getNodes();
+		if (projection.isAll() || nodes == null) {
+			return nodes;
+		}
+		List<SNode> result = new ArrayList<>();
+		for (SNode n : nodes) {
+			if (projection.includes(n)) {
+				result.add(n);
+			}
+		}
+		return result;
 	}
 
-	private static void writeKeys(XMLStreamWriter w, Collection<? extends LabelableElement> elements, IDManager ids)
-			throws XMLStreamException {
-		if (elements != null && !elements.isEmpty()) {
-			for (LabelableElement e : elements) {
-				Collection<Label> labels = e.getLabels();
-				if (labels != null && !labels.isEmpty()) {
-					for (Label l : labels) {
-
-						Object o = l.getValue();
-						String type = getType(o);
-						if (type != null) {
-							AttributeSignature attSignature = new AttributeSignature(l.getQName(), type);
-							// don't write a signature twice
-							if (!ids.hasID(attSignature)) {
-								String id = ids.getID(attSignature);
-								w.writeStartElement(NS, "key");
-								w.writeAttribute("id", id);
-								w.writeAttribute("attr.name", l.getQName());
-								w.writeAttribute("for", "all");
-								w.writeAttribute("attr.type", type);
-
-								w.writeEndElement();
-							}
-						}
-					}
-				}
+	/**
+	 * @return the relations of the graph that are included in the projection
+	 */
+	static List<SRelation<SNode, SNode>> getRelations(SDocumentGraph g, GraphProjection projection) {
+		List<SRelation<SNode, SNode>> relations = g.getRelations();
+		if (projection.isAll() || relations == null) {
+			return relations;
+		}
+		List<SRelation<SNode, SNode>> result = new ArrayList<>();
+		for (SRelation<SNode, SNode> r : relations) {
+			if (projection.includes(r)) {
+				result.add(r);
 			}
 		}
+		return result;
 	}
 
-	private static String getType(Object o) {
-		String type = null;
-		if (o instanceof Boolean) {
-			type = "boolean";
-		} else if (o instanceof Integer) {
-			type = "int";
-		} else if (o instanceof Long) {
-			type = "long";
-		} else if (o instanceof Float) {
-			type = "float";
-		} else if (o instanceof Double) {
-			type = "double";
-		} else if (o instanceof String) {
-			type = "string";
-		} else if (o instanceof URI) {
-			type = "string";
-		}
-		return type;
+	/**
+	 * Fails if the graphs of the documents were written directly although they
+	 * added keys to the schema, which can not be declared before them anymore.
+	 */
+	private static void checkComplete(boolean direct, int declaredKeys, GraphMLKeySchema schema,
+			List<SDocument> docs) throws IOException {
+		if (direct && declaredKeys != schema.size()) {
+			StringBuilder names = new StringBuilder();
+			for (SDocument d : docs) {
+				names.append(names.length() == 0 ? "" : ", ").append(d.getName());
+			}
+			throw new IOException("The key schema is not complete for the documents " + names);
+		}
+	}
+
+	/**
+	 * Writes the key elements for the keys of the schema with a number from
+	 * the first (inclusive) to the second one (exclusive).
+	 * 
+	 * @return the number of keys that are declared in the output
+	 */
+	private static int writeKeys(GraphMLEmitter w, GraphMLKeySchema schema, int from, int to) throws IOException {
+		for (int key = from; key < to; key++) {
+			w.key(schema.getID(key), schema.getName(key), schema.getType(key));
+		}
+		return Math.max(from, to);
 	}
 
-	private static void writeLabels(XMLStreamWriter w, Collection<Label> labels, IDManager ids)
-			throws XMLStreamException {
+	/** the GraphML attribute type of label values by their class */
+	private static final ClassValue<Optional<String>> LABEL_TYPES = new ClassValue<Optional<String>>() {
+		@Override
+		protected Optional<String> computeValue(Class<?> c) {
+			String type = null;
+			if (Boolean.class.isAssignableFrom(c)) {
+				type = "boolean";
+			} else if (Integer.class.isAssignableFrom(c)) {
+				type = "int";
+			} else if (Long.class.isAssignableFrom(c)) {
+				type = "long";
+			} else if (Float.class.isAssignableFrom(c)) {
+				type = "float";
+			} else if (Double.class.isAssignableFrom(c)) {
+				type = "double";
+			} else if (String.class.isAssignableFrom(c)) {
+				type = "string";
+			} else if (URI.class.isAssignableFrom(c)) {
+				type = "string";
+			}
+			return Optional.ofNullable(type);
+		}
+	};
+
+	/**
+	 * @return the GraphML attribute type of a label value or null if the value
+	 *         can not be represented
+	 */
+	static String getType(Object o) {
+		return o == null ? null : LABEL_TYPES.get(o.getClass()).orElse(null);
+	}
+
+	private static void writeLabels(GraphMLEmitter w, Collection<Label> labels, GraphMLKeySchema schema,
+			GraphProjection projection) throws IOException {
 		if (labels != null && !labels.isEmpty()) {
 			for (Label l : labels) {
-				AttributeSignature key = new AttributeSignature(l.getQName(), getType(l.getValue()));
-				w.writeStartElement(NS, "data");
-				w.writeAttribute("key", ids.getID(key));
-				w.writeCharacters("" + l.getValue());
-				w.writeEndElement();
+				String type = getType(l.getValue());
+				if (type == null || !projection.includes(l)) {
+					continue;
+				}
+				w.data(schema.getID(schema.getKey(l.getQName(), type)), l.getValue());
 			}
 		}
 	}
@@ -187,12 +403,21 @@ public class GraphMLWriter {
 	 * 
 	 * @param w
 	 * @param o
-	 * @throws XMLStreamException
+	 * @throws IOException
 	 */
-	private static void writeType(XMLStreamWriter w, Object o, IDManager ids) throws XMLStreamException {
-		Set<SALT_TYPE> saltTypes = SALT_TYPE.class2SaltType(o.getClass());
+	private static void writeType(GraphMLEmitter w, Object o, GraphMLKeySchema schema) throws IOException {
+		SALT_TYPE mostSpecificType = getSaltType(o.getClass());
+		if (mostSpecificType != null) {
+			w.data(schema.getID(0), mostSpecificType.name());
+		}
+	}
+
+	/** the most specific Salt type by the class of the elements */
+	private static final ClassValue<Optional<SALT_TYPE>> SALT_TYPES = new ClassValue<Optional<SALT_TYPE>>() {
+		@Override
+		protected Optional<SALT_TYPE> computeValue(Class<?> c) {
+			Set<SALT_TYPE> saltTypes = SALT_TYPE.class2SaltType(c);
 
-		if (!saltTypes.isEmpty()) {
 			// find the most specific type
 			SALT_TYPE mostSpecificType = null;
 			for (SALT_TYPE type : saltTypes) {
@@ -211,114 +436,469 @@ public class GraphMLWriter {
 					}
 				}
 			}
-
-			if (mostSpecificType != null) {
-				AttributeSignature attSign = new AttributeSignature("salt::type", "string");
-				w.writeStartElement(NS, "data");
-				w.writeAttribute("key", ids.getID(attSign));
-				w.writeCharacters(mostSpecificType.name());
-				w.writeEndElement();
-			}
+			return Optional.ofNullable(mostSpecificType);
 		}
+	};
+
+	/**
+	 * @return the most specific Salt type of the class or null if the class
+	 *         does not represent a Salt type. The type is only determined once
+	 *         per class.
+	 */
+	static SALT_TYPE getSaltType(Class<?> c) {
+		return SALT_TYPES.get(c).orElse(null);
 	}
 
-	private static void writeNode(XMLStreamWriter w, Node c, IDManager ids) throws XMLStreamException {
-		w.writeStartElement(NS, "node");
-		w.writeAttribute("id", ids.getID(c));
+	private static void writeNode(GraphMLEmitter w, Node c, IDManager ids, GraphProjection projection,
+			GraphMLKeySchema schema) throws IOException {
+		w.startNode(ids.getNumber(c));
 
-		writeType(w, c, ids);
-		writeLabels(w, c.getLabels(), ids);
-		w.writeEndElement();
+		writeType(w, c, schema);
+		writeLabels(w, c.getLabels(), schema, projection);
+		w.endNode();
 	}
 
-	private static void writeEdge(XMLStreamWriter w, Relation r, IDManager ids) throws XMLStreamException {
-		w.writeStartElement(NS, "edge");
-		w.writeAttribute("id", ids.getID(r));
-		w.writeAttribute("source", ids.getID(r.getSource()));
-		w.writeAttribute("target", ids.getID(r.getTarget()));
+	private static void writeEdge(GraphMLEmitter w, Relation r, IDManager ids, GraphProjection projection,
+			GraphMLKeySchema schema) throws IOException {
+		w.startEdge(ids.getNumber(r), ids.getNumber(r.getSource()), ids.getNumber(r.getTarget()));
 
-		writeType(w, r, ids);
-		writeLabels(w, r.getLabels(), ids);
+		writeType(w, r, schema);
+		writeLabels(w, r.getLabels(), schema, projection);
 
-		w.writeEndElement();
+		w.endEdge();
 	}
 
-	private static void writeSDocumentGraph(XMLStreamWriter w, SDocumentGraph g, IDManager ids,
-			boolean includeDocLabels) throws XMLStreamException {
+	private static String writeSDocumentGraph(GraphMLEmitter w, SDocumentGraph g, IDManager ids,
+			boolean includeDocLabels, GraphProjection projection, GraphMLKeySchema schema) throws IOException {
 		if (g == null) {
-			return;
+			return null;
 
 		}
-		List<SNode> nodes = g.getNodes();
-		List<SRelation<SNode, SNode>> relations = g.getRelations();
+		List<SNode> nodes = getNodes(g, projection);
+		List<SRelation<SNode, SNode>> relations = getRelations(g, projection);
 		// graphs without nodes are not allowed
 		if (nodes != null && !nodes.isEmpty()) {
-			w.writeStartElement(NS, "graph");
-			w.writeAttribute("id", ids.getID(g));
-			w.writeAttribute("edgedefault", "directed");
-
-			if (includeDocLabels && g.getDocument() != null) {
-				writeLabels(w, g.getDocument().getLabels(), ids);
-			}
+			String graphID = writeGraphStart(w, g, ids, includeDocLabels, schema);
 
 			for (SNode n : nodes) {
-				writeNode(w, n, ids);
+				writeNode(w, n, ids, projection, schema);
 			}
 
 			if (relations != null) {
 				for (SRelation e : relations) {
-					writeEdge(w, e, ids);
+					writeEdge(w, e, ids, projection, schema);
 				}
 			}
 
-			w.writeEndElement();
+			w.endGraph();
+			return graphID;
 		}
+		return null;
 	}
 
-	private static class AttributeSignature {
-		final String qname;
-		final String type;
+	/**
+	 * Writes the start of the graph element and the labels of the document.
+	 * 
+	 * @return the ID of the graph
+	 */
+	private static String writeGraphStart(GraphMLEmitter w, SDocumentGraph g, IDManager ids,
+			boolean includeDocLabels, GraphMLKeySchema schema) throws IOException {
+		long graphNumber = ids.getNumber(g);
+		w.startGraph(graphNumber);
+
+		if (includeDocLabels && g.getDocument() != null) {
+			writeLabels(w, g.getDocument().getLabels(), schema, GraphProjection.ALL);
+		}
+		return IDManager.toID(graphNumber);
+	}
+
+	/**
+	 * Writes windows of documents with a fork-join pool. The IDs and keys of
+	 * the graphs are assigned sequentially in a cheap first pass, so the
+	 * graphs can then be serialized independently of each other.
+	 */
+	private static class ParallelWriter {
+		private final OutputStream out;
+		private final GraphProjection projection;
+		private final GraphMLKeySchema schema;
+		private final ForkJoinPool pool;
+		private final EmitterFactory emitters;
+
+		private long nextID = 0;
+
+		/**
+		 * @param out
+		 *            receives the graphs, the keys they add to the schema are
+		 *            declared by the caller
+		 */
+		ParallelWriter(OutputStream out, GraphProjection projection, GraphMLKeySchema schema, ForkJoinPool pool,
+				EmitterFactory emitters) {
+			this.out = out;
+			this.projection = projection;
+			this.schema = schema;
+			this.pool = pool;
+			this.emitters = emitters;
+		}
+
+		void write(List<SDocument> docs, Map<String, SDocument> graphIDs, Map<String, Object> elementsByID)
+				throws IOException, InterruptedException {
+			List<GraphFragment> fragments = new ArrayList<>();
+			for (SDocument d : docs) {
+				fragments.add(new GraphFragment(d));
+			}
+			invokeAll(fragments, f -> f.prepare(projection));
+
+			// keys and IDs in the same order as the sequential writer assigns them
+			for (GraphFragment f : fragments) {
+				if (f.ids != null) {
+					for (int key = 1; key < f.keys.size(); key++) {
+						schema.getKey(f.keys.getName(key), f.keys.getType(key));
+					}
+					f.ids.setBase(nextID);
+					nextID += f.ids.size();
+				}
+			}
 
-		public AttributeSignature(String qname, String type) {
-			this.qname = qname;
-			this.type = type;
+			invokeAll(fragments, f -> f.serialize(projection, schema, emitters));
+
+			for (GraphFragment f : fragments) {
+				if (f.ids != null) {
+					for (ByteArrayOutputStream part : f.parts) {
+						part.writeTo(out);
+					}
+					graphIDs.put(f.graphID, f.doc);
+					if (elementsByID != null) {
+						f.ids.getElements(elementsByID);
+					}
+				}
+			}
 		}
 
+		private void invokeAll(List<GraphFragment> fragments, FragmentTask task)
+				throws IOException, InterruptedException {
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for (GraphFragment f : fragments) {
+				tasks.add(() -> {
+					task.run(f);
+					return null;
+				});
+			}
+			for (Future<Void> result : pool.invokeAll(tasks)) {
+				try {
+					result.get();
+				} catch (ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					} else if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					} else if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new IOException(cause);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Buffers the graphs in blocks of a fixed size, so the buffer is not
+	 * copied when it grows.
+	 */
+	private static class BlockBuffer extends OutputStream {
+		private static final int BLOCK_SIZE = 64 * 1024;
+
+		private final List<byte[]> blocks = new ArrayList<>();
+		private byte[] block;
+		private int position = BLOCK_SIZE;
+
 		@Override
-		public int hashCode() {
-			return Objects.hash(qname, type);
+		public void write(int b) {
+			if (position == BLOCK_SIZE) {
+				nextBlock();
+			}
+			block[position++] = (byte) b;
 		}
 
 		@Override
-		public boolean equals(Object obj) {
-			if (obj != null && obj instanceof AttributeSignature) {
-				AttributeSignature other = (AttributeSignature) obj;
-				return Objects.equals(this.qname, other.qname) && Objects.equals(this.type, other.type);
-			} else {
-				return false;
+		public void write(byte[] b, int off, int len) {
+			while (len > 0) {
+				if (position == BLOCK_SIZE) {
+					nextBlock();
+				}
+				int n = Math.min(len, BLOCK_SIZE - position);
+				System.arraycopy(b, off, block, position, n);
+				position += n;
+				off += n;
+				len -= n;
 			}
 		}
+
+		private void nextBlock() {
+			block = new byte[BLOCK_SIZE];
+			blocks.add(block);
+			position = 0;
+		}
+
+		/**
+		 * Writes the content of the buffer to the stream.
+		 */
+		void writeTo(OutputStream out) throws IOException {
+			for (byte[] b : blocks) {
+				out.write(b, 0, b == block ? position : BLOCK_SIZE);
+			}
+		}
+	}
+
+	private interface FragmentTask {
+		void run(GraphFragment f) throws IOException;
 	}
 
+	/**
+	 * The serialization of a single graph, which consists of one or more
+	 * buffers.
+	 */
+	private static class GraphFragment {
+		final SDocument doc;
+		List<SNode> nodes;
+		List<SRelation<SNode, SNode>> relations;
+		/** the keys in the order the graph uses them first */
+		GraphMLKeySchema keys;
+		/** the IDs of the elements, or null if the graph is not written */
+		IDManager ids;
+		String graphID;
+		List<ByteArrayOutputStream> parts;
+
+		GraphFragment(SDocument doc) {
+			this.doc = doc;
+		}
+
+		/**
+		 * Assigns the IDs of the elements in the order in which they are
+		 * written and collects the used keys.
+		 */
+		void prepare(GraphProjection projection) {
+			SDocumentGraph g = doc.getDocumentGraph();
+			if (g == null) {
+				return;
+			}
+			nodes = getNodes(g, projection);
+			relations = getRelations(g, projection);
+			if (nodes == null || nodes.isEmpty()) {
+				return;
+			}
+			ids = new IDManager(0);
+			ids.getNumber(g);
+			keys = new GraphMLKeySchema();
+			if (g.getDocument() != null) {
+				keys.addLabelKeys(g.getDocument().getLabels(), GraphProjection.ALL);
+			}
+			for (SNode n : nodes) {
+				ids.getNumber(n);
+				keys.addLabelKeys(n.getLabels(), projection);
+			}
+			if (relations != null) {
+				for (SRelation<SNode, SNode> r : relations) {
+					ids.getNumber(r);
+					ids.getNumber(r.getSource());
+					ids.getNumber(r.getTarget());
+					keys.addLabelKeys(r.getLabels(), projection);
+				}
+			}
+		}
+
+		/**
+		 * Writes the graph, large graphs are written in several chunks at the
+		 * same time.
+		 */
+		void serialize(GraphProjection projection, GraphMLKeySchema schema, EmitterFactory emitters)
+				throws IOException {
+			if (ids == null) {
+				return;
+			}
+			parts = new ArrayList<>();
+			ByteArrayOutputStream start = new ByteArrayOutputStream();
+			GraphMLEmitter graphWriter = emitters.create(start, true);
+			graphID = writeGraphStart(graphWriter, doc.getDocumentGraph(), ids, true, schema);
+			int relationCount = relations == null ? 0 : relations.size();
+			if (nodes.size() + relationCount <= CHUNK_SIZE) {
+				for (SNode n : nodes) {
+					writeNode(graphWriter, n, ids, projection, schema);
+				}
+				for (int i = 0; i < relationCount; i++) {
+					writeEdge(graphWriter, relations.get(i), ids, projection, schema);
+				}
+				graphWriter.endGraph();
+				graphWriter.flush();
+				parts.add(start);
+				return;
+			}
+
+			graphWriter.closeStartTag();
+			graphWriter.flush();
+			int startLength = start.size();
+			List<ForkJoinTask<ByteArrayOutputStream>> chunks = new ArrayList<>();
+			for (int from = 0; from < nodes.size(); from += CHUNK_SIZE) {
+				List<SNode> chunk = nodes.subList(from, Math.min(from + CHUNK_SIZE, nodes.size()));
+				chunks.add(ForkJoinTask.adapt(() -> writeChunk(emitters, chunk,
+						(cw, n) -> writeNode(cw, n, ids, projection, schema))));
+			}
+			for (int from = 0; from < relationCount; from += CHUNK_SIZE) {
+				List<SRelation<SNode, SNode>> chunk = relations.subList(from,
+						Math.min(from + CHUNK_SIZE, relationCount));
+				chunks.add(ForkJoinTask.adapt(() -> writeChunk(emitters, chunk,
+						(cw, r) -> writeEdge(cw, r, ids, projection, schema))));
+			}
+			ForkJoinTask.invokeAll(chunks);
+
+			// the end tag is written into the buffer of the start tag
+			graphWriter.endGraph();
+			graphWriter.flush();
+			byte[] graphTags = start.toByteArray();
+			ByteArrayOutputStream end = new ByteArrayOutputStream();
+			end.write(graphTags, startLength, graphTags.length - startLength);
+			start.reset();
+			start.write(graphTags, 0, startLength);
+
+			parts.add(start);
+			for (ForkJoinTask<ByteArrayOutputStream> chunk : chunks) {
+				try {
+					parts.add(chunk.join());
+				} catch (RuntimeException ex) {
+					// the checked exceptions of the chunk are wrapped
+					for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+						if (cause instanceof IOException) {
+							throw (IOException) cause;
+						}
+					}
+					throw ex;
+				}
+			}
+			parts.add(end);
+		}
+	}
+
+	private interface ElementWriter<T> {
+		void write(GraphMLEmitter w, T element) throws IOException;
+	}
+
+	/**
+	 * Writes consecutive nodes or relations of a graph into a new buffer.
+	 */
+	private static <T> ByteArrayOutputStream writeChunk(EmitterFactory emitters, List<T> elements,
+			ElementWriter<? super T> elementWriter) throws IOException {
+		ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+		GraphMLEmitter w = emitters.create(chunk, true);
+		for (T e : elements) {
+			elementWriter.write(w, e);
+		}
+		w.flush();
+		return chunk;
+	}
+
+	/**
+	 * Assigns the IDs of the elements of a single graph. The numbers of the
+	 * graph start with a base, which is the number of IDs all graphs before it
+	 * have used, so the IDs are unique in the whole stream.
+	 * 
+	 * The elements are compared by identity and their numbers are kept in an
+	 * open addressing table, so looking up an ID neither boxes the number nor
+	 * creates a map entry. The emitters write the numbers as IDs. Once all
+	 * numbers are assigned, the manager can be read by several threads.
+	 */
 	private static class IDManager {
-		private final AtomicLong counter = new AtomicLong(0);
+		private long base;
 
-		private final Map<Object, String> existing = new HashMap<>();
+		private Object[] elements;
+		private long[] numbers;
+		private int size = 0;
 
-		public boolean hasID(Object e) {
-			String id = existing.get(e);
-			return id != null;
+		public IDManager(long base) {
+			this.base = base;
+			this.elements = new Object[1024];
+			this.numbers = new long[1024];
 		}
 
-		public String getID(Object e) {
+		/**
+		 * Moves all numbers that are or will be assigned to start with the
+		 * given base.
+		 */
+		public void setBase(long base) {
+			this.base = base;
+		}
+
+		/**
+		 * @return the number of assigned IDs
+		 */
+		public int size() {
+			return size;
+		}
 
-			String id = existing.get(e);
-			if (id == null) {
-				id = "_" + counter.getAndIncrement();
-				existing.put(e, id);
+		private static int indexOf(Object e, int mask) {
+			// spread the identity hash, which may have few random low bits
+			int h = System.identityHashCode(e) * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & mask;
+		}
+
+		/**
+		 * @return the number of the element, which is assigned if the element
+		 *         has none yet
+		 */
+		public long getNumber(Object e) {
+			int mask = elements.length - 1;
+			int i = indexOf(e, mask);
+			Object existing;
+			while ((existing = elements[i]) != null) {
+				if (existing == e) {
+					return base + numbers[i];
+				}
+				i = (i + 1) & mask;
+			}
+			long number = size;
+			elements[i] = e;
+			numbers[i] = number;
+			if (++size * 2 > elements.length) {
+				grow();
+			}
+			return base + number;
+		}
+
+		private void grow() {
+			Object[] oldElements = elements;
+			long[] oldNumbers = numbers;
+			elements = new Object[oldElements.length * 2];
+			numbers = new long[oldNumbers.length * 2];
+			int mask = elements.length - 1;
+			for (int j = 0; j < oldElements.length; j++) {
+				Object e = oldElements[j];
+				if (e != null) {
+					int i = indexOf(e, mask);
+					while (elements[i] != null) {
+						i = (i + 1) & mask;
+					}
+					elements[i] = e;
+					numbers[i] = oldNumbers[j];
+				}
+			}
+		}
+
+		/**
+		 * @return the ID as it is written for the given number
+		 */
+		public static String toID(long number) {
+			return "_" + number;
+		}
+
+		/**
+		 * Adds all objects by their ID.
+		 */
+		public void getElements(Map<String, Object> result) {
+			for (int i = 0; i < elements.length; i++) {
+				if (elements[i] != null) {
+					result.put(toID(base + numbers[i]), elements[i]);
+				}
 			}
-			return id;
 		}
 
 	}
-}
\ No newline at end of file
+}
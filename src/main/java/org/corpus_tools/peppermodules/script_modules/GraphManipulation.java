@@ -0,0 +1,49 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.util.function.Consumer;
+
+import org.corpus_tools.salt.common.SDocumentGraph;
+
+/**
+ * A manipulation that the {@link ScriptManipulator} loads from a jar file and
+ * calls directly for each document graph.
+ *
+ * A single instance is created for the module. Unless {@link #isThreadSafe()}
+ * returns true, the calls are serialized. Thread-safe implementations are
+ * called concurrently by all mapper threads, but never concurrently for the
+ * same graph. Plain {@link Consumer} implementations can be used as well, they
+ * are treated as not thread-safe.
+ */
+public interface GraphManipulation extends Consumer<SDocumentGraph> {
+
+	/**
+	 * Manipulates the given document graph in place.
+	 */
+	@Override
+	void accept(SDocumentGraph graph);
+
+	/**
+	 * @return true if the manipulation may be called concurrently for
+	 *         different graphs, e.g. because it is stateless
+	 */
+	default boolean isThreadSafe() {
+		return false;
+	}
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.corpus_tools.salt.SALT_TYPE;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.core.SLayer;
+import org.corpus_tools.salt.core.SNode;
+import org.corpus_tools.salt.core.SRelation;
+import org.corpus_tools.salt.graph.IdentifiableElement;
+import org.corpus_tools.salt.graph.Label;
+
+/**
+ * Selects the part of a document graph that is sent to a script. Nodes are
+ * selected by their Salt type or their layers, relations are selected if both
+ * of their nodes are and, if layers are given, they either belong to no layer
+ * or to one of the given ones. Annotations are selected by their namespace
+ * and name, labels in the "salt" namespace are always included.
+ *
+ * The writers only serialize the selected part and
+ * {@link #merge(SDocumentGraph, SDocumentGraph)} merges the graph returned by
+ * the script back into the complete graph.
+ */
+public class GraphProjection {
+
+	/**
+	 * The projection that includes the complete graph.
+	 */
+	public static final GraphProjection ALL = new GraphProjection(null, null, null);
+
+	private final Set<String> nodeTypes;
+	private final Set<String> layers;
+	private final Set<String> annotations;
+
+	/**
+	 * @param nodeTypes
+	 *            the names of the Salt types of the included nodes, e.g.
+	 *            "STOKEN"
+	 * @param layers
+	 *            the names of the layers whose nodes and relations are
+	 *            included
+	 * @param annotations
+	 *            the included annotations, either as qualified name
+	 *            ("ns::name"), as namespace ("ns::") or as name in any
+	 *            namespace ("name")
+	 */
+	public GraphProjection(Collection<String> nodeTypes, Collection<String> layers, Collection<String> annotations) {
+		this.nodeTypes = nodeTypes == null ? null : new HashSet<>(nodeTypes);
+		this.layers = layers == null ? null : new HashSet<>(layers);
+		this.annotations = annotations == null ? null : new HashSet<>(annotations);
+	}
+
+	/**
+	 * Creates a projection from comma separated lists. Empty or null lists
+	 * don't restrict the projection.
+	 */
+	public static GraphProjection parse(String nodeTypes, String layers, String annotations) {
+		if (split(nodeTypes) == null && split(layers) == null && split(annotations) == null) {
+			return ALL;
+		}
+		return new GraphProjection(split(nodeTypes), split(layers), split(annotations));
+	}
+
+	private static List<String> split(String list) {
+		if (list == null || list.trim().isEmpty()) {
+			return null;
+		}
+		List<String> result = new ArrayList<>();
+		for (String s : list.split(",")) {
+			if (!s.trim().isEmpty()) {
+				result.add(s.trim());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if this projection includes the complete graph
+	 */
+	public boolean isAll() {
+		return nodeTypes == null && layers == null && annotations == null;
+	}
+
+	public boolean includes(SNode node) {
+		if (nodeTypes == null && layers == null) {
+			return true;
+		}
+		if (nodeTypes != null) {
+			SALT_TYPE type = GraphMLWriter.getSaltType(node.getClass());
+			if (type != null && nodeTypes.contains(type.name())) {
+				return true;
+			}
+		}
+		return inLayers(node.getLayers());
+	}
+
+	public boolean includes(SRelation<?, ?> relation) {
+		if (!(relation.getSource() instanceof SNode) || !(relation.getTarget() instanceof SNode)
+				|| !includes((SNode) relation.getSource()) || !includes((SNode) relation.getTarget())) {
+			return false;
+		}
+		Set<SLayer> relationLayers = relation.getLayers();
+		return layers == null || relationLayers == null || relationLayers.isEmpty() || inLayers(relationLayers);
+	}
+
+	private boolean inLayers(Set<SLayer> elementLayers) {
+		if (layers != null && elementLayers != null) {
+			for (SLayer l : elementLayers) {
+				if (layers.contains(l.getName())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public boolean includes(Label label) {
+		if (annotations == null || "salt".equals(label.getNamespace())) {
+			return true;
+		}
+		String ns = label.getNamespace() == null ? "" : label.getNamespace();
+		return annotations.contains(label.getName()) || annotations.contains(ns + "::")
+				|| annotations.contains(ns + "::" + label.getName());
+	}
+
+	/**
+	 * Merges the graph the script returned for the projection of the original
+	 * graph back into the original graph. Nodes and relations are identified
+	 * by their Salt ID. Included nodes, relations and labels that are missing
+	 * in the result are removed, new ones are added and label values are
+	 * updated. Everything not included in the projection stays untouched, but
+	 * a returned node or relation with the ID of one that was left out is
+	 * that element and gets the returned labels.
+	 */
+	public void merge(SDocumentGraph original, SDocumentGraph result) {
+		Map<SNode, SNode> nodeMapping = new IdentityHashMap<>();
+		Set<Object> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		for (SNode n : result.getNodes()) {
+			SNode o = n.getId() == null ? null : original.getNode(n.getId());
+			if (o != null && o.getClass() == n.getClass()) {
+				mergeLabels(o, n, includes(o));
+			} else {
+				o = GraphMLReader.createNode(GraphMLWriter.getSaltType(n.getClass()));
+				if (o == null) {
+					continue;
+				}
+				copyLabels(original, o, n);
+				original.addNode(o);
+			}
+			nodeMapping.put(n, o);
+			kept.add(o);
+		}
+		for (SNode o : new ArrayList<>(original.getNodes())) {
+			if (!kept.contains(o) && includes(o)) {
+				original.removeNode(o);
+			}
+		}
+
+		for (SRelation<SNode, SNode> r : new ArrayList<>(result.getRelations())) {
+			SNode source = nodeMapping.get(r.getSource());
+			SNode target = nodeMapping.get(r.getTarget());
+			if (source == null || target == null) {
+				continue;
+			}
+			SRelation<?, ?> o = r.getId() == null ? null : original.getRelation(r.getId());
+			if (o != null && o.getClass() == r.getClass() && o.getSource() == source && o.getTarget() == target) {
+				mergeLabels(o, r, includes(o));
+			} else {
+				o = addRelation(original, r, source, target);
+				if (o == null) {
+					continue;
+				}
+			}
+			kept.add(o);
+		}
+		for (SRelation<?, ?> o : new ArrayList<>(original.getRelations())) {
+			if (!kept.contains(o) && includes(o)) {
+				original.removeRelation(o);
+			}
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private SRelation<?, ?> addRelation(SDocumentGraph original, SRelation<?, ?> r, SNode source, SNode target) {
+		SRelation o = GraphMLReader.createRelation(GraphMLWriter.getSaltType(r.getClass()));
+		if (o != null) {
+			o.setSource(source);
+			o.setTarget(target);
+			copyLabels(original, o, r);
+			original.addRelation(o);
+		}
+		return o;
+	}
+
+	/**
+	 * @return true if the label was written for an included element
+	 */
+	private boolean isWritten(Label l) {
+		return includes(l) && GraphMLWriter.getType(l.getValue()) != null;
+	}
+
+	private static boolean isIdentity(Label l) {
+		return "salt::id".equals(l.getQName()) || "salt::type".equals(l.getQName());
+	}
+
+	/**
+	 * Updates the labels of the original element.
+	 * 
+	 * @param written
+	 *            true if the element was included in the projection, only
+	 *            then its labels that are missing in the result are removed
+	 */
+	private void mergeLabels(IdentifiableElement original, IdentifiableElement result, boolean written) {
+		for (Label l : new ArrayList<>(original.getLabels())) {
+			if (written && !isIdentity(l) && isWritten(l) && result.getLabel(l.getQName()) == null) {
+				original.removeLabel(l.getQName());
+			}
+		}
+		for (Label l : result.getLabels()) {
+			if (isIdentity(l)) {
+				continue;
+			}
+			Label existing = original.getLabel(l.getQName());
+			if (existing == null) {
+				GraphMLReader.addLabel(original, l.getQName(), l.getValue());
+			} else if (!Objects.equals(existing.getValue(), l.getValue())) {
+				original.removeLabel(l.getQName());
+				GraphMLReader.addLabel(original, l.getQName(), l.getValue());
+			}
+		}
+	}
+
+	private static void copyLabels(SDocumentGraph original, IdentifiableElement copy, IdentifiableElement result) {
+		String id = result.getId();
+		// keep the ID of new elements unless it is already used
+		if (id != null && original.getNode(id) == null && original.getRelation(id) == null) {
+			copy.setId(id);
+		}
+		for (Label l : result.getLabels()) {
+			if (!isIdentity(l)) {
+				GraphMLReader.addLabel(copy, l.getQName(), l.getValue());
+			}
+		}
+	}
+}
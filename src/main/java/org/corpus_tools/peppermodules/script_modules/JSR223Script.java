@@ -0,0 +1,144 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A script that is executed inside the JVM by a javax.script engine. The
+ * document and its graph are bound into the script context, so nothing has to
+ * be serialized. The script is compiled once and reused for all documents.
+ *
+ * Engines that are not thread-safe get a separate engine and compiled script
+ * for each mapper thread, all other engines share one compiled script and
+ * each document is evaluated with its own bindings.
+ */
+class JSR223Script {
+
+	private final File file;
+	private final String source;
+	private final ScriptEngineFactory factory;
+
+	private final Compiled shared;
+	private final ThreadLocal<Compiled> perThread;
+
+	private JSR223Script(File file, String source, ScriptEngine engine) throws ScriptException {
+		this.file = file;
+		this.source = source;
+		this.factory = engine.getFactory();
+
+		// compiling once validates the script before the first document
+		Compiled first = new Compiled(engine);
+		if (factory.getParameter("THREADING") == null) {
+			this.shared = null;
+			this.perThread = ThreadLocal.withInitial(this::compileForThread);
+			this.perThread.set(first);
+		} else {
+			this.shared = first;
+			this.perThread = null;
+		}
+	}
+
+	/**
+	 * Compiles the script with the engine registered for the extension of
+	 * the file.
+	 *
+	 * @return the compiled script or null if no engine supports the file
+	 */
+	public static JSR223Script create(File file) throws IOException, ScriptException {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot < 0) {
+			return null;
+		}
+		ScriptEngineManager manager = new ScriptEngineManager(JSR223Script.class.getClassLoader());
+		ScriptEngine engine = manager.getEngineByExtension(name.substring(dot + 1));
+		if (engine == null) {
+			return null;
+		}
+		String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		return new JSR223Script(file, source, engine);
+	}
+
+	private Compiled compileForThread() {
+		try {
+			return new Compiled(factory.getScriptEngine());
+		} catch (ScriptException ex) {
+			throw new PepperModuleException("Could not compile the manipulator script " + file, ex);
+		}
+	}
+
+	/**
+	 * @return the name of the engine that executes the script
+	 */
+	public String getEngineName() {
+		return factory.getEngineName();
+	}
+
+	/**
+	 * Executes the script for a single document. Besides the bindings
+	 * "document" and "graph", the script gets the additional arguments as
+	 * "args" and a logger as "logger".
+	 *
+	 * @return the graph returned by the script, or the graph of the document
+	 *         if the script did not return a graph
+	 */
+	public SDocumentGraph execute(SDocument document, String args) throws ScriptException {
+		Compiled compiled = shared == null ? perThread.get() : shared;
+		Bindings bindings = compiled.engine.createBindings();
+		bindings.put("document", document);
+		bindings.put("graph", document.getDocumentGraph());
+		bindings.put("args", args == null ? "" : args);
+		bindings.put("logger", LoggerFactory.getLogger(JSR223Script.class.getName() + "." + file.getName()));
+		bindings.put(ScriptEngine.FILENAME, file.getPath());
+
+		Object result = compiled.script == null ? compiled.engine.eval(source, bindings)
+				: compiled.script.eval(bindings);
+		return result instanceof SDocumentGraph ? (SDocumentGraph) result : document.getDocumentGraph();
+	}
+
+	/**
+	 * An engine together with the script compiled by it, if the engine
+	 * supports compilation.
+	 */
+	private class Compiled {
+		private final ScriptEngine engine;
+		private final CompiledScript script;
+
+		private Compiled(ScriptEngine engine) throws ScriptException {
+			this.engine = engine;
+			this.script = engine instanceof Compilable ? ((Compilable) engine).compile(source) : null;
+		}
+	}
+}
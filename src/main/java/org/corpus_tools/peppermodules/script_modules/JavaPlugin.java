@@ -0,0 +1,123 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.salt.common.SDocumentGraph;
+
+/**
+ * A manipulation class loaded from a jar file. The class loader and the
+ * instance are shared by all documents of the module, see
+ * {@link GraphManipulation} for the concurrency contract.
+ */
+class JavaPlugin implements Closeable {
+
+	private final URLClassLoader classLoader;
+	private final Consumer<SDocumentGraph> manipulation;
+	private final boolean threadSafe;
+
+	private JavaPlugin(URLClassLoader classLoader, Consumer<SDocumentGraph> manipulation) {
+		this.classLoader = classLoader;
+		this.manipulation = manipulation;
+		this.threadSafe = manipulation instanceof GraphManipulation
+				&& ((GraphManipulation) manipulation).isThreadSafe();
+	}
+
+	/**
+	 * Loads the class from the jar file and creates its instance with the
+	 * public constructor without arguments.
+	 *
+	 * @param className
+	 *            the name of the class, or null to use the "Main-Class" of
+	 *            the manifest of the jar
+	 */
+	@SuppressWarnings("unchecked")
+	public static JavaPlugin load(File jar, String className) throws IOException {
+		if (className == null || className.isEmpty()) {
+			className = null;
+			try (JarFile jarFile = new JarFile(jar)) {
+				Manifest manifest = jarFile.getManifest();
+				if (manifest != null) {
+					className = manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+				}
+			}
+			if (className == null) {
+				throw new PepperModuleException(
+						"No class given for the manipulator plug-in " + jar + " and its manifest has no Main-Class");
+			}
+		}
+
+		URLClassLoader classLoader = new URLClassLoader(new URL[] { jar.toURI().toURL() },
+				JavaPlugin.class.getClassLoader());
+		try {
+			Class<?> c = Class.forName(className, true, classLoader);
+			if (!Consumer.class.isAssignableFrom(c)) {
+				throw new PepperModuleException("The class " + className + " of the manipulator plug-in " + jar
+						+ " does neither implement " + GraphManipulation.class.getName() + " nor "
+						+ Consumer.class.getName());
+			}
+			return new JavaPlugin(classLoader, (Consumer<SDocumentGraph>) c.newInstance());
+		} catch (ReflectiveOperationException | LinkageError ex) {
+			classLoader.close();
+			throw new PepperModuleException(
+					"Could not create the class " + className + " of the manipulator plug-in " + jar, ex);
+		} catch (RuntimeException ex) {
+			classLoader.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * @return the name of the loaded class
+	 */
+	public String getClassName() {
+		return manipulation.getClass().getName();
+	}
+
+	public boolean isThreadSafe() {
+		return threadSafe;
+	}
+
+	/**
+	 * Calls the manipulation on the current thread.
+	 */
+	public void execute(SDocumentGraph graph) {
+		if (threadSafe) {
+			manipulation.accept(graph);
+		} else {
+			synchronized (manipulation) {
+				manipulation.accept(graph);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		classLoader.close();
+	}
+}
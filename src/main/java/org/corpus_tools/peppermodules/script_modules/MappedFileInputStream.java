@@ -0,0 +1,118 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reads a file through a memory-mapped buffer, so its content is not copied
+ * into the heap in large chunks.
+ */
+class MappedFileInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+
+	private MappedFileInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Opens the file as mapped stream. Files that are too large to be mapped
+	 * as a whole are read with a buffered stream instead.
+	 */
+	public static InputStream open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size <= Integer.MAX_VALUE) {
+				// the mapping stays valid after the channel was closed
+				return new MappedFileInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+			}
+		}
+		return new BufferedInputStream(Files.newInputStream(file.toPath()), 64 * 1024);
+	}
+
+	/**
+	 * Opens the region of the file that starts at the given position as
+	 * mapped stream. Regions that are too large to be mapped as a whole are
+	 * read with a buffered stream instead.
+	 */
+	public static InputStream open(File file, long position, long size) throws IOException {
+		if (size <= Integer.MAX_VALUE) {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				return new MappedFileInputStream(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+			}
+		}
+		InputStream in = Files.newInputStream(file.toPath());
+		ByteStreams.skipFully(in, position);
+		return new BufferedInputStream(ByteStreams.limit(in, size), 64 * 1024);
+	}
+
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		int n = Math.min(len, buffer.remaining());
+		buffer.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public void mark(int readlimit) {
+		buffer.mark();
+	}
+
+	@Override
+	public void reset() {
+		buffer.reset();
+	}
+}
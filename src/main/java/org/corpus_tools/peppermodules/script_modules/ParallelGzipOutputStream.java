@@ -0,0 +1,153 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the data with gzip in blocks, which are compressed in parallel
+ * on a pool and written as independent gzip members in their order, like
+ * pigz does. Every gzip reader reads the concatenated members as one stream.
+ *
+ * Flushing only writes the members that are already compressed, the gzip
+ * data is complete after the stream was closed.
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	private final OutputStream out;
+	private final ForkJoinPool pool;
+	/** the maximal number of blocks that are compressed at the same time */
+	private final int maxPending;
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+	private byte[] block;
+	private int pos = 0;
+	private boolean empty = true;
+	private boolean closed = false;
+
+	public ParallelGzipOutputStream(OutputStream out, ForkJoinPool pool) {
+		this(out, pool, DEFAULT_BLOCK_SIZE);
+	}
+
+	public ParallelGzipOutputStream(OutputStream out, ForkJoinPool pool, int blockSize) {
+		this.out = out;
+		this.pool = pool;
+		this.maxPending = pool.getParallelism() * 2;
+		this.block = new byte[blockSize];
+	}
+
+	private static byte[] compress(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream member = new ByteArrayOutputStream(length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(member, 8192)) {
+			gzip.write(data, 0, length);
+		}
+		return member.toByteArray();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (pos == block.length) {
+			submitBlock();
+		}
+		block[pos++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (pos == block.length) {
+				submitBlock();
+			}
+			int n = Math.min(len, block.length - pos);
+			System.arraycopy(b, off, block, pos, n);
+			pos += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Compresses the current block on the pool and starts a new one.
+	 */
+	private void submitBlock() throws IOException {
+		if (pos == 0) {
+			return;
+		}
+		final byte[] data = block;
+		final int length = pos;
+		while (pending.size() >= maxPending) {
+			writeMember(pending.removeFirst());
+		}
+		pending.addLast(pool.submit(() -> compress(data, length)));
+		block = new byte[data.length];
+		pos = 0;
+		empty = false;
+	}
+
+	private void writeMember(Future<byte[]> member) throws IOException {
+		try {
+			out.write(member.get());
+		} catch (ExecutionException ex) {
+			throw ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing", ex);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+			writeMember(pending.removeFirst());
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			submitBlock();
+			while (!pending.isEmpty()) {
+				writeMember(pending.removeFirst());
+			}
+			if (empty) {
+				// an empty stream still needs a gzip member
+				out.write(compress(block, 0));
+			}
+		} finally {
+			for (Future<byte[]> member : pending) {
+				member.cancel(false);
+			}
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a stream on a thread of its own into a bounded queue of chunks, so
+ * e.g. decompressing the data and parsing it run at the same time.
+ */
+class ReadAheadInputStream extends InputStream {
+
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	public static final int DEFAULT_CHUNKS = 16;
+
+	/** marks the end of the source in the queue */
+	private static final byte[] END = new byte[0];
+
+	private final InputStream source;
+	private final BlockingQueue<byte[]> chunks;
+	private final Thread reader;
+
+	private volatile boolean closed = false;
+	/** the exception the source threw, which is reported after its data */
+	private volatile IOException failure;
+
+	private byte[] chunk = null;
+	private int pos = 0;
+	private boolean finished = false;
+
+	public ReadAheadInputStream(InputStream source) {
+		this(source, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS);
+	}
+
+	public ReadAheadInputStream(InputStream source, int chunkSize, int chunks) {
+		this.source = source;
+		this.chunks = new ArrayBlockingQueue<>(chunks);
+		this.reader = new Thread(() -> readSource(chunkSize), "read-ahead");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void readSource(int chunkSize) {
+		try {
+			while (!closed) {
+				byte[] buffer = new byte[chunkSize];
+				int length = 0;
+				int n = 0;
+				while (length < chunkSize && (n = source.read(buffer, length, chunkSize - length)) >= 0) {
+					length += n;
+				}
+				if (length > 0 && !put(length == chunkSize ? buffer : Arrays.copyOf(buffer, length))) {
+					return;
+				}
+				if (n < 0) {
+					break;
+				}
+			}
+		} catch (IOException ex) {
+			failure = ex;
+		} catch (RuntimeException | Error ex) {
+			failure = new IOException(ex);
+			throw ex;
+		} finally {
+			put(END);
+		}
+	}
+
+	/**
+	 * @return false if the stream was closed before the chunk could be queued
+	 */
+	private boolean put(byte[] buffer) {
+		try {
+			while (!closed) {
+				if (chunks.offer(buffer, 100, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+		} catch (InterruptedException ex) {
+			// closed
+		}
+		return false;
+	}
+
+	/**
+	 * @return false at the end of the source
+	 */
+	private boolean nextChunk() throws IOException {
+		while (!finished && (chunk == null || pos == chunk.length)) {
+			try {
+				chunk = chunks.take();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading ahead");
+			}
+			pos = 0;
+			if (chunk == END) {
+				finished = true;
+			}
+		}
+		if (finished && failure != null) {
+			throw failure;
+		}
+		return !finished;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return nextChunk() ? chunk[pos++] & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+		int n = Math.min(len, chunk.length - pos);
+		System.arraycopy(chunk, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return chunk == null || finished ? 0 : chunk.length - pos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			reader.interrupt();
+			source.close();
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the output of script invocations on disk. The entries are addressed
+ * by a hash of everything that influences the output, so unchanged documents
+ * don't need to be sent to the script again. When the cache exceeds its size,
+ * the least recently used entries are removed. The access time is stored as
+ * modification time of the files, so the order is kept between runs.
+ */
+class ResultCache {
+	private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+	private static final String SUFFIX = ".out";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	/**
+	 * the age after which temporary files of entries are removed, younger
+	 * ones may be written by a concurrent run that shares the directory
+	 */
+	private static final long STALE_TEMPORARY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private final File directory;
+	private final long maxSize;
+
+	/** file sizes by key, in access order */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long size = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSize
+	 *            the maximal size of all entries in bytes
+	 */
+	public ResultCache(File directory, long maxSize) throws IOException {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		Files.createDirectories(directory.toPath());
+		removeStaleTemporaryFiles();
+
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (files != null) {
+			Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+			for (File f : files) {
+				String name = f.getName();
+				entries.put(name.substring(0, name.length() - SUFFIX.length()), f.length());
+				size += f.length();
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * Removes the temporary files of entries that were never completed, e.g.
+	 * because a previous run was killed while it stored them.
+	 */
+	private void removeStaleTemporaryFiles() {
+		long staleBefore = System.currentTimeMillis() - STALE_TEMPORARY_MILLIS;
+		File[] files = directory.listFiles(
+				(dir, name) -> name.endsWith(TEMPORARY_SUFFIX) && new File(dir, name).lastModified() < staleBefore);
+		if (files != null) {
+			for (File f : files) {
+				deleteTemporaryFile(f.toPath());
+			}
+		}
+	}
+
+	private static void deleteTemporaryFile(Path tmp) {
+		try {
+			Files.deleteIfExists(tmp);
+		} catch (IOException ex) {
+			logger.warn("Could not remove temporary cache file {}: {}", tmp, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Creates the key of a script invocation from its input and the
+	 * properties that influence its output.
+	 */
+	public static String createKey(byte[] input, String... properties) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String p : properties) {
+				byte[] utf8 = String.valueOf(p).getBytes(StandardCharsets.UTF_8);
+				updateLength(digest, utf8.length);
+				digest.update(utf8);
+			}
+			updateLength(digest, input.length);
+			digest.update(input);
+			return toHex(digest.digest());
+		} catch (NoSuchAlgorithmException ex) {
+			// every Java platform supports SHA-256
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * @return the SHA-256 hash of the file content or an empty string if the
+	 *         file does not exist
+	 */
+	public static String hashFile(File file) throws IOException {
+		if (!file.isFile()) {
+			return "";
+		}
+		return createKey(Files.readAllBytes(file.toPath()));
+	}
+
+	private static void updateLength(MessageDigest digest, int length) {
+		digest.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8),
+				(byte) length });
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the stored output or null if there is no entry for the key
+	 */
+	public byte[] get(String key) {
+		boolean known;
+		synchronized (this) {
+			known = entries.get(key) != null;
+		}
+		if (known) {
+			Path file = getFile(key);
+			try {
+				byte[] result = Files.readAllBytes(file);
+				Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+				hits.incrementAndGet();
+				return result;
+			} catch (NoSuchFileException ex) {
+				// removed in the meantime
+			} catch (IOException ex) {
+				logger.warn("Could not read cached script output {}: {}", file, ex.getMessage());
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	public void put(String key, byte[] output) {
+		if (output.length > maxSize) {
+			return;
+		}
+		Path file = getFile(key);
+		Path tmp = null;
+		try {
+			// move the complete file into place, so readers never see partial entries
+			tmp = Files.createTempFile(directory.toPath(), key, TEMPORARY_SUFFIX);
+			Files.write(tmp, output);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			tmp = null;
+		} catch (IOException ex) {
+			logger.warn("Could not store script output in cache {}: {}", directory, ex.getMessage());
+			return;
+		} finally {
+			if (tmp != null) {
+				deleteTemporaryFile(tmp);
+			}
+		}
+		synchronized (this) {
+			Long old = entries.put(key, (long) output.length);
+			size += output.length - (old == null ? 0 : old);
+			evict();
+		}
+	}
+
+	private synchronized void evict() {
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			try {
+				Files.deleteIfExists(getFile(eldest.getKey()));
+			} catch (IOException ex) {
+				logger.warn("Could not remove cached script output {}: {}", eldest.getKey(), ex.getMessage());
+			}
+			size -= eldest.getValue();
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	private Path getFile(String key) {
+		return new File(directory, key + SUFFIX).toPath();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the size of all entries in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ", size="
+				+ getSize() + " bytes";
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consumes the standard error of a script. Only the last bytes are kept in a
+ * ring buffer for error messages, so a script that writes a lot of output
+ * neither blocks nor fills the memory. Each line can additionally be
+ * forwarded to the logger.
+ */
+class ScriptErrorOutput {
+	private static final Logger logger = LoggerFactory.getLogger(ScriptErrorOutput.class);
+
+	/** longer lines are logged in parts */
+	private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+	private final byte[] ring;
+	private int position = 0;
+	private long total = 0;
+
+	private final String level;
+	private final String source;
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+	/**
+	 * @param capacity
+	 *            the number of bytes that are kept
+	 * @param level
+	 *            the level on which lines are logged: "trace", "debug",
+	 *            "info", "warn", "error" or "off"
+	 * @param source
+	 *            describes the script in the log messages
+	 */
+	public ScriptErrorOutput(int capacity, String level, String source) {
+		this.ring = new byte[Math.max(1, capacity)];
+		this.level = level == null ? "off" : level.toLowerCase();
+		this.source = source;
+	}
+
+	/**
+	 * Reads the stream until it is closed.
+	 */
+	public void drain(InputStream stderr) throws IOException {
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = stderr.read(buffer)) >= 0) {
+			append(buffer, read);
+			if (!"off".equals(level)) {
+				forwardLines(buffer, read);
+			}
+		}
+		if (line.size() > 0) {
+			log();
+		}
+	}
+
+	private synchronized void append(byte[] buffer, int length) {
+		total += length;
+		int offset = Math.max(0, length - ring.length);
+		int remaining = length - offset;
+		while (remaining > 0) {
+			int n = Math.min(remaining, ring.length - position);
+			System.arraycopy(buffer, offset, ring, position, n);
+			position += n;
+			offset += n;
+			remaining -= n;
+			if (position == ring.length) {
+				position = 0;
+			}
+		}
+	}
+
+	private void forwardLines(byte[] buffer, int length) {
+		for (int i = 0; i < length; i++) {
+			byte b = buffer[i];
+			if (b == '\n') {
+				log();
+			} else if (b != '\r') {
+				line.write(b);
+				if (line.size() >= MAX_LINE_LENGTH) {
+					log();
+				}
+			}
+		}
+	}
+
+	private void log() {
+		String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+		line.reset();
+		switch (level) {
+		case "trace":
+			logger.trace("{}: {}", source, text);
+			break;
+		case "debug":
+			logger.debug("{}: {}", source, text);
+			break;
+		case "info":
+			logger.info("{}: {}", source, text);
+			break;
+		case "warn":
+			logger.warn("{}: {}", source, text);
+			break;
+		case "error":
+			logger.error("{}: {}", source, text);
+			break;
+		default:
+		}
+	}
+
+	/**
+	 * @return the last bytes the script has written to its standard error,
+	 *         starting with "..." if earlier output was dropped
+	 */
+	public synchronized String getTail() {
+		if (total < ring.length) {
+			return new String(ring, 0, position, StandardCharsets.UTF_8);
+		}
+		byte[] tail = new byte[ring.length];
+		System.arraycopy(ring, position, tail, 0, ring.length - position);
+		System.arraycopy(ring, 0, tail, ring.length - position, position);
+		return (total > ring.length ? "..." : "") + new String(tail, StandardCharsets.UTF_8);
+	}
+}
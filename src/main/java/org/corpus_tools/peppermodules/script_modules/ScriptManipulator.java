@@ -17,15 +17,30 @@
  */
 package org.corpus_tools.peppermodules.script_modules;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.script.ScriptException;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -33,13 +48,16 @@ import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
-import com.google.common.io.CharStreams;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecuteResultHandler;
 import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.exec.ExecuteWatchdog;
 import org.apache.commons.exec.environment.EnvironmentUtils;
+import org.apache.commons.exec.util.StringUtils;
 import org.corpus_tools.pepper.common.DOCUMENT_STATUS;
 import org.corpus_tools.pepper.common.PepperConfiguration;
 import org.corpus_tools.pepper.impl.PepperManipulatorImpl;
@@ -83,7 +101,29 @@ public class ScriptManipulator extends PepperManipulatorImpl {
 		private static final long serialVersionUID = 4531683409905022856L;
 		private final static String PROP_PATH = "path";
 		private final static String PROP_ARGS = "args";
+		private final static String PROP_PIPE_TO = "pipe-to";
 		private final static String PROP_FORMAT = "format";
+		private final static String PROP_MODE = "mode";
+		private final static String PROP_JAVA_CLASS = "java-class";
+		private final static String PROP_WORKERS = "workers";
+		private final static String PROP_WORKER_MAX_DOCUMENTS = "worker-max-documents";
+		private final static String PROP_BATCH_SIZE = "batch-size";
+		private final static String PROP_BATCH_TIMEOUT = "batch-timeout";
+		private final static String PROP_MAX_CONCURRENT_SCRIPTS = "max-concurrent-scripts";
+		private final static String PROP_RESULT = "result";
+		private final static String PROP_CACHE_DIR = "cache-dir";
+		private final static String PROP_CACHE_SIZE = "cache-size";
+		private final static String PROP_TIMEOUT = "timeout";
+		private final static String PROP_EXCHANGE = "exchange";
+		private final static String PROP_EXCHANGE_DIR = "exchange-dir";
+		private final static String PROP_PROJECT_NODE_TYPES = "project-node-types";
+		private final static String PROP_PROJECT_LAYERS = "project-layers";
+		private final static String PROP_PROJECT_ANNOTATIONS = "project-annotations";
+		private final static String PROP_STDERR_BUFFER_SIZE = "stderr-buffer-size";
+		private final static String PROP_STDERR_LOG_LEVEL = "stderr-log-level";
+		private final static String PROP_VIRTUAL_THREADS = "virtual-threads";
+		private final static String PROP_PARALLEL_SERIALIZATION = "parallel-serialization";
+		private final static String PROP_GRAPHML_SERIALIZER = "graphml-serializer";
 
 		public ScriptManipulatorProperties() {
 			this.addProperty(new PepperModuleProperty<>(PROP_PATH, String.class,
@@ -92,9 +132,109 @@ public class ScriptManipulator extends PepperManipulatorImpl {
 					null, false));
 			this.addProperty(new PepperModuleProperty<>(PROP_ARGS, String.class,
 					"Additional arguments given to the script file.", "", false));
+			this.addProperty(new PepperModuleProperty<>(PROP_PIPE_TO, String.class,
+					"Further scripts separated by \"|\", each given as path followed by its arguments. The "
+							+ "output of each script is piped directly into the next one and only the output of the "
+							+ "last script is read.",
+					null, false));
 			this.addProperty(new PepperModuleProperty<>(PROP_FORMAT, String.class,
-					"The format used to write and read from the script. Can be either \"graphml\" or \"saltxml\"",
+					"The format used to write and read from the script. Can be either \"graphml\", \"saltxml\" or "
+							+ "\"binary\"",
 					"graphml", false));
+			this.addProperty(new PepperModuleProperty<>(PROP_MODE, String.class,
+					"How the script is executed. Can be either \"process\" for an external process, \"jsr223\" "
+							+ "for a javax.script engine inside the JVM, \"java\" for a class loaded from a jar file "
+							+ "or \"auto\", which uses \"java\" for jar files, a javax.script engine if one "
+							+ "supports the file extension of the script and a process otherwise.",
+					"auto", false));
+			this.addProperty(new PepperModuleProperty<>(PROP_JAVA_CLASS, String.class,
+					"The class in the jar file that is used in the \"java\" mode. It must implement "
+							+ GraphManipulation.class.getName() + " or java.util.function.Consumer<SDocumentGraph>. "
+							+ "If not set, the Main-Class of the manifest of the jar file is used.",
+					null, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_WORKERS, Integer.class,
+					"Number of long-lived script processes that each receive many documents using the framed "
+							+ "protocol. If 0, a new process is started for every document.",
+					0, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_WORKER_MAX_DOCUMENTS, Integer.class,
+					"Number of documents after which a long-lived script process is replaced by a new one. "
+							+ "If 0, processes are only replaced when they crashed.",
+					1000, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_BATCH_SIZE, Integer.class,
+					"Maximal number of documents that are sent to a single script invocation as separate graphs of "
+							+ "one stream. Only supported for the \"graphml\" and \"binary\" formats.",
+					1, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_BATCH_TIMEOUT, Integer.class,
+					"Time in milliseconds a document waits for its batch to fill up, before the incomplete "
+							+ "batch is sent to the script.",
+					1000, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_MAX_CONCURRENT_SCRIPTS, Integer.class,
+					"Maximal number of script invocations that run at the same time. Further documents wait "
+							+ "until a running invocation finished. If 0, the number of available processors is used.",
+					0, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_RESULT, String.class,
+					"What the script returns. Can be either \"graph\" for the complete manipulated graph or "
+							+ "\"delta\" for only the changes, which are applied to the existing graph. Only "
+							+ "supported for the \"graphml\" and \"binary\" formats.",
+					"graph", false));
+			this.addProperty(new PepperModuleProperty<>(PROP_CACHE_DIR, String.class,
+					"Directory in which the output of the script is cached. If the same input is sent to an "
+							+ "unchanged script again, the script is not executed and the cached output is used "
+							+ "instead. If this is a relative path, it must be relative to the workflow file. If "
+							+ "not set, no cache is used.",
+					null, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_CACHE_SIZE, Integer.class,
+					"Maximal size of the cache in megabytes. If the cache is larger, the least recently used "
+							+ "entries are removed.",
+					1024, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_TIMEOUT, Integer.class,
+					"Time in milliseconds the script may need for a single document, before it is killed and "
+							+ "the document is marked as failed. Batches may take this time for each of their "
+							+ "documents. If 0, the script may run forever.",
+					0, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_EXCHANGE, String.class,
+					"How the documents are exchanged with the script. Can be either \"pipe\" for the standard "
+							+ "input and output of the script or \"file\" for temporary files, whose paths are "
+							+ "given in the PEPPER_INPUT and PEPPER_OUTPUT environment variables.",
+					"pipe", false));
+			this.addProperty(new PepperModuleProperty<>(PROP_EXCHANGE_DIR, String.class,
+					"Directory for the temporary files of the \"file\" exchange. If this is a relative path, it "
+							+ "must be relative to the workflow file. If not set, the temporary directory of the "
+							+ "system is used.",
+					null, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_PROJECT_NODE_TYPES, String.class,
+					"Comma separated list of Salt node types (e.g. \"STEXTUAL_DS,STOKEN\"). If set, only nodes "
+							+ "of these types or of the layers given in \"project-layers\" are sent to the script.",
+					null, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_PROJECT_LAYERS, String.class,
+					"Comma separated list of layer names. If set, only nodes of these layers or of the types "
+							+ "given in \"project-node-types\" are sent to the script.",
+					null, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_PROJECT_ANNOTATIONS, String.class,
+					"Comma separated list of annotations, either as qualified name (\"ns::name\"), namespace "
+							+ "(\"ns::\") or name (\"name\"). If set, only these annotations are sent to the script.",
+					null, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_STDERR_BUFFER_SIZE, Integer.class,
+					"Number of kilobytes of the standard error of the script that are kept for error messages. "
+							+ "Older output is dropped.",
+					64, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_STDERR_LOG_LEVEL, String.class,
+					"The level on which each line the script writes to its standard error is logged. Can be "
+							+ "either \"trace\", \"debug\", \"info\", \"warn\", \"error\" or \"off\".",
+					"debug", false));
+			this.addProperty(new PepperModuleProperty<>(PROP_VIRTUAL_THREADS, Boolean.class,
+					"If true and the Java runtime supports virtual threads (Java 21 and newer), the streams of "
+							+ "the scripts are read and written by virtual threads instead of platform threads.",
+					true, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_PARALLEL_SERIALIZATION, Boolean.class,
+					"If true, the documents of a batch and large graphs are written as GraphML in parallel on "
+							+ "the common fork-join pool. The output is the same as without this option.",
+					false, false));
+			this.addProperty(new PepperModuleProperty<>(PROP_GRAPHML_SERIALIZER, String.class,
+					"How the GraphML input of the script is written. Can be either \"stax\" for the StAX "
+							+ "implementation of the Java runtime or \"direct\" for a specialized writer that "
+							+ "produces the same output faster.",
+					"stax", false));
 		}
 
 		public String getPath() {
@@ -105,16 +245,462 @@ public class ScriptManipulator extends PepperManipulatorImpl {
 			return (String) getProperty(PROP_ARGS).getValue();
 		}
 
+		public String getPipeTo() {
+			return (String) getProperty(PROP_PIPE_TO).getValue();
+		}
+
 		public String getFormat() {
 			return (String) getProperty(PROP_FORMAT).getValue();
 		}
 
+		public String getMode() {
+			return (String) getProperty(PROP_MODE).getValue();
+		}
+
+		public String getJavaClass() {
+			return (String) getProperty(PROP_JAVA_CLASS).getValue();
+		}
+
+		public int getWorkers() {
+			return (Integer) getProperty(PROP_WORKERS).getValue();
+		}
+
+		public int getWorkerMaxDocuments() {
+			return (Integer) getProperty(PROP_WORKER_MAX_DOCUMENTS).getValue();
+		}
+
+		public int getBatchSize() {
+			return (Integer) getProperty(PROP_BATCH_SIZE).getValue();
+		}
+
+		public int getBatchTimeout() {
+			return (Integer) getProperty(PROP_BATCH_TIMEOUT).getValue();
+		}
+
+		public int getMaxConcurrentScripts() {
+			int max = (Integer) getProperty(PROP_MAX_CONCURRENT_SCRIPTS).getValue();
+			return max > 0 ? max : Runtime.getRuntime().availableProcessors();
+		}
+
+		public String getResult() {
+			return (String) getProperty(PROP_RESULT).getValue();
+		}
+
+		public String getCacheDir() {
+			return (String) getProperty(PROP_CACHE_DIR).getValue();
+		}
+
+		public int getCacheSize() {
+			return (Integer) getProperty(PROP_CACHE_SIZE).getValue();
+		}
+
+		public int getTimeout() {
+			return (Integer) getProperty(PROP_TIMEOUT).getValue();
+		}
+
+		public String getExchange() {
+			return (String) getProperty(PROP_EXCHANGE).getValue();
+		}
+
+		public String getExchangeDir() {
+			return (String) getProperty(PROP_EXCHANGE_DIR).getValue();
+		}
+
+		public String getProjectNodeTypes() {
+			return (String) getProperty(PROP_PROJECT_NODE_TYPES).getValue();
+		}
+
+		public String getProjectLayers() {
+			return (String) getProperty(PROP_PROJECT_LAYERS).getValue();
+		}
+
+		public String getProjectAnnotations() {
+			return (String) getProperty(PROP_PROJECT_ANNOTATIONS).getValue();
+		}
+
+		public int getStderrBufferSize() {
+			return (Integer) getProperty(PROP_STDERR_BUFFER_SIZE).getValue();
+		}
+
+		public String getStderrLogLevel() {
+			return (String) getProperty(PROP_STDERR_LOG_LEVEL).getValue();
+		}
+
+		public boolean isVirtualThreads() {
+			return (Boolean) getProperty(PROP_VIRTUAL_THREADS).getValue();
+		}
+
+		public boolean isParallelSerialization() {
+			return (Boolean) getProperty(PROP_PARALLEL_SERIALIZATION).getValue();
+		}
+
+		public GraphMLWriter.Serializer getGraphMLSerializer() {
+			String serializer = (String) getProperty(PROP_GRAPHML_SERIALIZER).getValue();
+			return "direct".equalsIgnoreCase(serializer) ? GraphMLWriter.Serializer.DIRECT
+					: GraphMLWriter.Serializer.STAX;
+		}
+
 	}
 
 	protected ScriptManipulatorProperties getProps() {
 		return (ScriptManipulatorProperties) this.getProperties();
 	}
 
+	private ScriptWorkerPool workerPool;
+	private DocumentBatcher batcher;
+	private boolean batcherInitialized = false;
+	private ExecutorService ioExecutor;
+	private ConcurrencyLimiter concurrencyLimiter;
+	private Boolean deltaResult;
+	private ResultCache resultCache;
+	private String scriptHash;
+	private String pipedScriptsHash;
+	private boolean resultCacheInitialized = false;
+	private ScheduledExecutorService timer;
+	private File exchangeDir;
+	private GraphProjection projection;
+	private JSR223Script jsr223Script;
+	private boolean jsr223ScriptInitialized = false;
+	private JavaPlugin javaPlugin;
+	private boolean javaPluginInitialized = false;
+	private List<CommandLine> pipeline;
+	private boolean pipelineInitialized = false;
+	private final ScriptMetrics metrics = new ScriptMetrics(10);
+
+	private File getBaseDir() {
+		return new File(getModuleController().getJob().getBaseDir().toFileString());
+	}
+
+	private File getScriptFile() {
+		File script = new File(getProps().getPath());
+		if (!script.isAbsolute()) {
+			script = new File(getBaseDir(), getProps().getPath());
+		}
+		return script;
+	}
+
+	private CommandLine createCommandLine() {
+		CommandLine cmdLine = new CommandLine(getProps().getPath());
+		if (getProps().getArgs() != null) {
+			cmdLine = cmdLine.addArguments(getProps().getArgs());
+		}
+		return cmdLine;
+	}
+
+	/**
+	 * Returns the command lines of all scripts if the script is followed by
+	 * further ones, or null if a single script is executed.
+	 */
+	private synchronized List<CommandLine> getPipeline() {
+		if (!pipelineInitialized) {
+			pipelineInitialized = true;
+			String pipeTo = getProps().getPipeTo();
+			if (pipeTo != null && !pipeTo.trim().isEmpty()) {
+				if (getProps().getWorkers() > 0 || "file".equals(getProps().getExchange().toLowerCase())) {
+					throw new PepperModuleException("The scripts given in \"pipe-to\" can only be used without "
+							+ "\"workers\" and with the \"pipe\" exchange");
+				}
+				pipeline = new ArrayList<>();
+				pipeline.add(createCommandLine());
+				for (String command : pipeTo.split("\\|")) {
+					if (!command.trim().isEmpty()) {
+						pipeline.add(CommandLine.parse(command.trim()));
+					}
+				}
+				logger.info("Piping the output of manipulator script {} through {} further scripts{}",
+						getProps().getPath(), pipeline.size() - 1,
+						ScriptPipeline.hasNativePipes() ? "" : " (copied by the JVM)");
+			}
+		}
+		return pipeline;
+	}
+
+	/**
+	 * Creates the consumer of the standard error of a script process.
+	 */
+	private ScriptErrorOutput createErrorOutput() {
+		return new ScriptErrorOutput(getProps().getStderrBufferSize() * 1024, getProps().getStderrLogLevel(),
+				getProps().getPath());
+	}
+
+	/**
+	 * Returns the pool of long-lived script processes, which is created when
+	 * the first document is mapped.
+	 */
+	private synchronized ScriptWorkerPool getWorkerPool() throws IOException {
+		if (workerPool == null) {
+			Map<String, String> env = EnvironmentUtils.getProcEnvironment();
+			env.put("PEPPER_FORMAT", getProps().getFormat().toLowerCase());
+			env.put("PEPPER_PROTOCOL", "framed");
+			workerPool = new ScriptWorkerPool(createCommandLine(), env, getBaseDir(), getProps().getWorkers(),
+					getProps().getWorkerMaxDocuments(), getIOExecutor(), getTimer(), this::createErrorOutput);
+		}
+		return workerPool;
+	}
+
+	/**
+	 * Returns the batcher that collects the documents of all mappers, or null
+	 * if documents should be sent to the script one by one.
+	 */
+	private synchronized DocumentBatcher getBatcher() {
+		if (!batcherInitialized) {
+			batcherInitialized = true;
+			if (getProps().getBatchSize() > 1) {
+				String format = getProps().getFormat().toLowerCase();
+				if ("graphml".equals(format) || "binary".equals(format)) {
+					batcher = new DocumentBatcher(getProps().getBatchSize(), getProps().getBatchTimeout());
+				} else {
+					logger.warn("Batches are not supported for the \"{}\" format, sending documents one by one.",
+							format);
+				}
+			}
+		}
+		return batcher;
+	}
+
+	/**
+	 * Returns the executor that runs the stream pumps of all script
+	 * invocations of this module. The pumps mostly block on pipes, so they
+	 * run on virtual threads if the runtime supports them.
+	 */
+	private synchronized ExecutorService getIOExecutor() {
+		if (ioExecutor == null) {
+			if (getProps().isVirtualThreads()) {
+				ioExecutor = VirtualThreads.newExecutor(getName() + "-io-");
+			}
+			if (ioExecutor == null) {
+				ioExecutor = Executors.newCachedThreadPool(
+						new ThreadFactoryBuilder().setNameFormat(getName() + "-io-%d").setDaemon(true).build());
+			}
+		}
+		return ioExecutor;
+	}
+
+	/**
+	 * Returns true if the script returns the changes in the delta format
+	 * instead of the complete graph.
+	 */
+	private synchronized boolean isDeltaResult() {
+		if (deltaResult == null) {
+			deltaResult = "delta".equals(getProps().getResult().toLowerCase());
+			String format = getProps().getFormat().toLowerCase();
+			if (deltaResult && !"graphml".equals(format) && !"binary".equals(format)) {
+				logger.warn("Delta results are not supported for the \"{}\" format, expecting complete graphs.",
+						format);
+				deltaResult = false;
+			}
+		}
+		return deltaResult;
+	}
+
+	/**
+	 * Returns the part of the document graphs that is sent to the script.
+	 */
+	private synchronized GraphProjection getProjection() {
+		if (projection == null) {
+			projection = GraphProjection.parse(getProps().getProjectNodeTypes(), getProps().getProjectLayers(),
+					getProps().getProjectAnnotations());
+			String format = getProps().getFormat().toLowerCase();
+			if (!projection.isAll() && !"graphml".equals(format) && !"binary".equals(format)) {
+				logger.warn("Projections are not supported for the \"{}\" format, sending complete graphs.",
+						format);
+				projection = GraphProjection.ALL;
+			}
+		}
+		return projection;
+	}
+
+	/**
+	 * Returns the cache of script outputs or null if no cache was configured.
+	 */
+	private synchronized ResultCache getResultCache() throws IOException {
+		if (!resultCacheInitialized) {
+			resultCacheInitialized = true;
+			if (getProps().getCacheDir() != null) {
+				File dir = new File(getProps().getCacheDir());
+				if (!dir.isAbsolute()) {
+					dir = new File(getBaseDir(), getProps().getCacheDir());
+				}
+				scriptHash = hashCommandFiles(createCommandLine());
+				pipedScriptsHash = hashPipedScripts();
+				resultCache = new ResultCache(dir, getProps().getCacheSize() * 1024L * 1024L);
+			}
+		}
+		return resultCache;
+	}
+
+	/**
+	 * Hashes the executable of the command and every argument that names an
+	 * existing file, e.g. the script given to an interpreter, so cached
+	 * results are not reused after one of them was changed. Relative paths
+	 * are resolved against the working directory of the scripts. Executables
+	 * that are not files, e.g. ones found on the PATH, are only identified by
+	 * their name.
+	 */
+	private String hashCommandFiles(CommandLine command) throws IOException {
+		StringBuilder hashes = new StringBuilder();
+		File executable = resolveFile(command.getExecutable());
+		hashes.append(executable.isFile() ? ResultCache.hashFile(executable) : command.getExecutable());
+		for (String argument : command.getArguments()) {
+			// arguments with spaces are quoted by the command line
+			File file = resolveFile(
+					StringUtils.isQuoted(argument) ? argument.substring(1, argument.length() - 1) : argument);
+			if (file.isFile()) {
+				hashes.append(',').append(ResultCache.hashFile(file));
+			}
+		}
+		return hashes.toString();
+	}
+
+	private File resolveFile(String path) {
+		File file = new File(path);
+		return file.isAbsolute() ? file : new File(getBaseDir(), path);
+	}
+
+	/**
+	 * Hashes the executables and the file arguments of the scripts given in
+	 * "pipe-to" like the ones of the first script.
+	 */
+	private String hashPipedScripts() throws IOException {
+		StringBuilder hashes = new StringBuilder();
+		List<CommandLine> commands = getPipeline();
+		if (commands != null) {
+			for (CommandLine command : commands.subList(1, commands.size())) {
+				hashes.append(hashCommandFiles(command)).append(';');
+			}
+		}
+		return hashes.toString();
+	}
+
+	/**
+	 * Returns the compiled script if it is executed by a javax.script engine
+	 * inside the JVM, or null if it is executed as process.
+	 */
+	private synchronized JSR223Script getJSR223Script() throws IOException {
+		if (!jsr223ScriptInitialized) {
+			jsr223ScriptInitialized = true;
+			String mode = getProps().getMode().toLowerCase();
+			File script = getScriptFile();
+			if ("jsr223".equals(mode)
+					|| ("auto".equals(mode) && script.isFile() && !script.getName().toLowerCase().endsWith(".jar"))) {
+				try {
+					jsr223Script = JSR223Script.create(script);
+				} catch (ScriptException ex) {
+					throw new PepperModuleException("Could not compile the manipulator script " + script, ex);
+				}
+				if (jsr223Script == null && "jsr223".equals(mode)) {
+					throw new PepperModuleException("No javax.script engine supports the manipulator script " + script);
+				}
+			}
+			if (jsr223Script != null) {
+				logger.info("Executing manipulator script {} inside the JVM with {}", getProps().getPath(),
+						jsr223Script.getEngineName());
+			}
+		}
+		return jsr223Script;
+	}
+
+	/**
+	 * Returns the plug-in if the manipulation is a class loaded from a jar
+	 * file, or null otherwise.
+	 */
+	private synchronized JavaPlugin getJavaPlugin() throws IOException {
+		if (!javaPluginInitialized) {
+			javaPluginInitialized = true;
+			String mode = getProps().getMode().toLowerCase();
+			File jar = getScriptFile();
+			if ("java".equals(mode)
+					|| ("auto".equals(mode) && jar.isFile() && jar.getName().toLowerCase().endsWith(".jar"))) {
+				javaPlugin = JavaPlugin.load(jar, getProps().getJavaClass());
+				logger.info("Executing manipulator plug-in {} from {} inside the JVM{}", javaPlugin.getClassName(),
+						getProps().getPath(), javaPlugin.isThreadSafe() ? " on all mapper threads" : "");
+			}
+		}
+		return javaPlugin;
+	}
+
+	/**
+	 * Returns the directory for the input and output files of the "file"
+	 * exchange, which is created if necessary.
+	 */
+	private synchronized File getExchangeDir() throws IOException {
+		if (exchangeDir == null) {
+			String path = getProps().getExchangeDir();
+			if (path == null) {
+				exchangeDir = new File(System.getProperty("java.io.tmpdir"));
+			} else {
+				exchangeDir = new File(path);
+				if (!exchangeDir.isAbsolute()) {
+					exchangeDir = new File(getBaseDir(), path);
+				}
+			}
+			Files.createDirectories(exchangeDir.toPath());
+		}
+		return exchangeDir;
+	}
+
+	/**
+	 * Returns the executor that kills long-lived script processes whose
+	 * request timed out.
+	 */
+	private synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setNameFormat(getName() + "-timer-%d").setDaemon(true).build());
+		}
+		return timer;
+	}
+
+	/**
+	 * @return the time and data needed by the script invocations so far
+	 */
+	ScriptMetrics getMetrics() {
+		return metrics;
+	}
+
+	private synchronized ConcurrencyLimiter getConcurrencyLimiter() {
+		if (concurrencyLimiter == null) {
+			concurrencyLimiter = new ConcurrencyLimiter(getProps().getMaxConcurrentScripts());
+		}
+		return concurrencyLimiter;
+	}
+
+	@Override
+	public void end() throws PepperModuleException {
+		synchronized (this) {
+			if (workerPool != null) {
+				workerPool.close();
+				workerPool = null;
+			}
+			if (ioExecutor != null) {
+				ioExecutor.shutdown();
+				ioExecutor = null;
+			}
+			if (timer != null) {
+				timer.shutdownNow();
+				timer = null;
+			}
+			if (javaPlugin != null) {
+				try {
+					javaPlugin.close();
+				} catch (IOException ex) {
+					logger.debug("Could not close the class loader of plug-in {}", getProps().getPath(), ex);
+				}
+				javaPlugin = null;
+			}
+			if (metrics.getInvocations() > 0) {
+				logger.info("Invocations of manipulator script {}: {}", getProps().getPath(), metrics);
+			}
+			if (concurrencyLimiter != null) {
+				logger.info("Concurrency of manipulator script {}: {}", getProps().getPath(), concurrencyLimiter);
+			}
+			if (resultCache != null) {
+				logger.info("Result cache of manipulator script {}: {}", getProps().getPath(), resultCache);
+			}
+		}
+		super.end();
+	}
+
 	@Override
 	public PepperMapper createPepperMapper(Identifier sElementId) {
 		PepperMapper mapper = new ScriptMapper();
@@ -130,8 +716,6 @@ public class ScriptManipulator extends PepperManipulatorImpl {
 		public DOCUMENT_STATUS mapSDocument() {
 			final SDocument doc = getDocument();
 
-			// create a process with the requested parameter
-			File baseDir = new File(getModuleController().getJob().getBaseDir().toFileString());
 			try {
 				String path = getProps().getPath();
 				if(path == null) {
@@ -139,105 +723,501 @@ public class ScriptManipulator extends PepperManipulatorImpl {
 					return DOCUMENT_STATUS.COMPLETED;
 				}
 
-				CommandLine cmdLine = new CommandLine(path);
-				if (getProps().getArgs() != null) {
-					cmdLine = cmdLine.addArguments(getProps().getArgs());
+				DocumentBatcher batcher = getBatcher();
+				if (getJavaPlugin() != null || getJSR223Script() != null) {
+					mapInProcess(doc);
+				} else if (batcher != null) {
+					batcher.submit(doc, this::mapBatch);
+				} else if (isDeltaResult()) {
+					Map<String, String> header = new LinkedHashMap<>();
+					header.put("PEPPER_DOCUMENT_NAME", doc.getName());
+					mapDelta(header, Collections.singletonList(doc));
+				} else {
+					Map<String, String> header = new LinkedHashMap<>();
+					header.put("PEPPER_DOCUMENT_NAME", doc.getName());
+					final List<SDocumentGraph> results = new ArrayList<>();
+					execute(header, out -> writeDocument(out, doc), in -> results.add(readDocument(in)));
+					if (!results.isEmpty() && results.get(0) != null) {
+						setResult(doc, results.get(0));
+					}
+				}
+
+			} catch (IOException | InterruptedException ex) {
+				throw new PepperModuleException(
+						"Could not execute the manipulator script " + getProps().getPath(), ex);
+			}
+
+			setProgress(1.0);
+			return (DOCUMENT_STATUS.COMPLETED);
+		}
+
+		/**
+		 * Executes the plug-in or the script with a javax.script engine on the
+		 * mapper thread, both work directly on the document graph.
+		 */
+		private void mapInProcess(SDocument doc) throws IOException {
+			ScriptMetrics.Invocation invocation = new ScriptMetrics.Invocation("document " + doc.getName());
+			long start = System.nanoTime();
+			SDocumentGraph result = doc.getDocumentGraph();
+			try {
+				if (getJavaPlugin() != null) {
+					getJavaPlugin().execute(result);
+				} else {
+					result = getJSR223Script().execute(doc, getProps().getArgs());
+				}
+			} catch (ScriptException | RuntimeException ex) {
+				if (ex instanceof PepperModuleException) {
+					throw (PepperModuleException) ex;
+				}
+				throw new PepperModuleException(
+						"Manipulator script " + getProps().getPath() + " failed for the " + invocation.name, ex);
+			} finally {
+				invocation.processNanos = System.nanoTime() - start;
+			}
+			if (result != doc.getDocumentGraph()) {
+				doc.setDocumentGraph(result);
+			}
+			finish(invocation);
+		}
+
+		/**
+		 * Sends all documents of the batch in one stream to the script and maps
+		 * the returned graphs back to the documents by their graph ID.
+		 */
+		private void mapBatch(List<SDocument> batch) throws IOException, InterruptedException {
+			Map<String, String> header = new LinkedHashMap<>();
+			header.put("PEPPER_BATCH_SIZE", Integer.toString(batch.size()));
+			if (isDeltaResult()) {
+				mapDelta(header, batch);
+				return;
+			}
+
+			final Map<String, SDocument> written = new LinkedHashMap<>();
+			final Map<String, SDocument> results = new LinkedHashMap<>();
+			if ("binary".equals(getProps().getFormat().toLowerCase())) {
+				execute(header,
+						out -> written.putAll(BinaryGraphWriter.writeDocuments(out, batch, null, getProjection())),
+						in -> results.putAll(BinaryGraphReader.convertToSaltByGraphID(in)));
+			} else {
+				execute(header,
+						out -> written.putAll(writeGraphML(out, batch, null)),
+						in -> results.putAll(GraphMLReader.convertToSaltByGraphID(in)));
+			}
+
+			for (Map.Entry<String, SDocument> e : written.entrySet()) {
+				SDocument result = results.get(e.getKey());
+				if (result == null) {
+					logger.warn("Manipulator script {} returned no graph with ID {} for document {}",
+							getProps().getPath(), e.getKey(), e.getValue().getName());
+				} else {
+					setResult(e.getValue(), result.getDocumentGraph());
+				}
+			}
+		}
+
+		/**
+		 * Sends the documents to the script and applies the returned changes
+		 * to their existing graphs. The changes are only applied after the
+		 * script has terminated, so they never overlap with writing the
+		 * documents.
+		 */
+		private void mapDelta(Map<String, String> header, List<SDocument> docs)
+				throws IOException, InterruptedException {
+			Map<String, String> deltaHeader = new LinkedHashMap<>(header);
+			deltaHeader.put("PEPPER_RESULT", "delta");
+
+			final Map<String, Object> elementsByID = new HashMap<>();
+			final GraphDelta[] delta = new GraphDelta[1];
+			if ("binary".equals(getProps().getFormat().toLowerCase())) {
+				execute(deltaHeader,
+						out -> BinaryGraphWriter.writeDocuments(out, docs, elementsByID, getProjection()),
+						in -> delta[0] = GraphDelta.read(in));
+			} else {
+				execute(deltaHeader,
+						out -> writeGraphML(out, docs, elementsByID),
+						in -> delta[0] = GraphDelta.read(in));
+			}
+			if (delta[0] != null) {
+				delta[0].apply(elementsByID);
+			}
+		}
+
+		/**
+		 * Executes the script once, unless its output for the same input is
+		 * already cached. The time needed to write the input, to run the script
+		 * and to read the output as well as the size of input and output are
+		 * recorded in the metrics of the module.
+		 */
+		private void execute(Map<String, String> header, ScriptInputWriter writer, ScriptOutputReader reader)
+				throws IOException, InterruptedException {
+			String batchSize = header.get("PEPPER_BATCH_SIZE");
+			final ScriptMetrics.Invocation invocation = new ScriptMetrics.Invocation(batchSize == null
+					? "document " + header.get("PEPPER_DOCUMENT_NAME") : "batch of " + batchSize + " documents");
+			long timeout = getProps().getTimeout() * (batchSize == null ? 1L : Long.parseLong(batchSize));
+
+			ScriptInputWriter measuredWriter = out -> {
+				long start = System.nanoTime();
+				CountingOutputStream counter = new CountingOutputStream(out);
+				try {
+					writer.write(counter);
+				} finally {
+					invocation.serializeNanos = System.nanoTime() - start;
+					invocation.bytesSent = counter.getCount();
+				}
+			};
+			ScriptOutputReader measuredReader = in -> {
+				long start = System.nanoTime();
+				CountingInputStream counter = new CountingInputStream(in);
+				try {
+					reader.read(counter);
+				} finally {
+					invocation.deserializeNanos = System.nanoTime() - start;
+					invocation.bytesReceived = counter.getCount();
+				}
+			};
+
+			ResultCache cache = getResultCache();
+			if (cache == null) {
+				executeScript(header, measuredWriter, measuredReader, invocation, timeout);
+				finish(invocation);
+				return;
+			}
+
+			final byte[] input = serialize(measuredWriter);
+			List<String> keyProperties = new ArrayList<>();
+			keyProperties.add(getProps().getPath());
+			keyProperties.add(scriptHash);
+			keyProperties.add(getProps().getArgs());
+			keyProperties.add(getProps().getPipeTo());
+			keyProperties.add(pipedScriptsHash);
+			keyProperties.add(getProps().getFormat().toLowerCase());
+			for (Map.Entry<String, String> e : header.entrySet()) {
+				keyProperties.add(e.getKey() + "=" + e.getValue());
+			}
+			String key = ResultCache.createKey(input, keyProperties.toArray(new String[keyProperties.size()]));
+
+			byte[] output = cache.get(key);
+			if (output == null) {
+				final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+				executeScript(header, out -> out.write(input), in -> ByteStreams.copy(in, captured), invocation,
+						timeout);
+				output = captured.toByteArray();
+			} else {
+				invocation.cached = true;
+			}
+			try {
+				measuredReader.read(new ByteArrayInputStream(output));
+			} catch (ParserConfigurationException | SAXException ex) {
+				throw new PepperModuleException(
+						"Could not read from the manipulator script " + getProps().getPath(), ex);
+			}
+			// only output that could be read is cached, a failure is repeated
+			// by the next run instead of being replayed from the cache
+			if (!invocation.cached) {
+				cache.put(key, output);
+			}
+			finish(invocation);
+		}
+
+		private void finish(ScriptMetrics.Invocation invocation) {
+			metrics.add(invocation);
+			logger.debug("Manipulator script {} finished {}", getProps().getPath(), invocation);
+		}
+
+		/**
+		 * Writes the complete input of a script invocation into memory.
+		 */
+		private byte[] serialize(ScriptInputWriter writer) throws IOException {
+			ByteArrayOutputStream input = new ByteArrayOutputStream();
+			try {
+				writer.write(input);
+			} catch (XMLStreamException ex) {
+				throw new PepperModuleException(
+						"Could not write to the manipulator script " + getProps().getPath(), ex);
+			}
+			return input.toByteArray();
+		}
+
+		/**
+		 * Executes the script once and exchanges the data with it over its
+		 * standard streams or over files.
+		 * 
+		 * @param timeout
+		 *            the time in milliseconds after which the script is killed,
+		 *            or 0 for no limit
+		 */
+		private void executeScript(Map<String, String> header, ScriptInputWriter writer,
+				ScriptOutputReader reader, ScriptMetrics.Invocation invocation, long timeout)
+				throws IOException, InterruptedException {
+			if ("file".equals(getProps().getExchange().toLowerCase())) {
+				executeWithFiles(header, writer, reader, invocation, timeout);
+			} else {
+				runScript(header, writer, reader, invocation, timeout);
+			}
+		}
+
+		/**
+		 * Writes the input into a temporary file and reads the output from
+		 * another one through a memory-mapped buffer. The paths of both files
+		 * are passed to the script as PEPPER_INPUT and PEPPER_OUTPUT.
+		 */
+		private void executeWithFiles(Map<String, String> header, ScriptInputWriter writer,
+				ScriptOutputReader reader, ScriptMetrics.Invocation invocation, long timeout)
+				throws IOException, InterruptedException {
+			File input = File.createTempFile("pepper-", ".in", getExchangeDir());
+			File output = File.createTempFile("pepper-", ".out", getExchangeDir());
+			try {
+				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(input), 64 * 1024)) {
+					writer.write(out);
+				} catch (XMLStreamException ex) {
+					throw new PepperModuleException(
+							"Could not write to the manipulator script " + getProps().getPath(), ex);
+				}
+
+				Map<String, String> fileHeader = new LinkedHashMap<>(header);
+				fileHeader.put("PEPPER_INPUT", input.getAbsolutePath());
+				fileHeader.put("PEPPER_OUTPUT", output.getAbsolutePath());
+				// the standard output of the script is not used
+				runScript(fileHeader, out -> {
+				}, in -> ByteStreams.copy(in, ByteStreams.nullOutputStream()), invocation, timeout);
+
+				try (InputStream in = MappedFileInputStream.open(output)) {
+					reader.read(in);
+				} catch (ParserConfigurationException | SAXException ex) {
+					throw new PepperModuleException(
+							"Could not read from the manipulator script " + getProps().getPath(), ex);
+				}
+			} finally {
+				deleteExchangeFile(input);
+				deleteExchangeFile(output);
+			}
+		}
+
+		private void deleteExchangeFile(File file) {
+			try {
+				Files.deleteIfExists(file.toPath());
+			} catch (IOException ex) {
+				// mapped files can't be deleted on some systems
+				logger.debug("Could not delete exchange file {}: {}", file, ex.getMessage());
+				file.deleteOnExit();
+			}
+		}
+
+		/**
+		 * Starts the script, either by starting a new process or by using one
+		 * of the long-lived script processes. The header values are passed as
+		 * environment variables or frame headers. Blocks while the maximal
+		 * number of concurrent script invocations is reached.
+		 */
+		private void runScript(Map<String, String> header, ScriptInputWriter writer, ScriptOutputReader reader,
+				ScriptMetrics.Invocation invocation, long timeout) throws IOException, InterruptedException {
+			ConcurrencyLimiter limiter = getConcurrencyLimiter();
+			limiter.acquire();
+			long start = System.nanoTime();
+			try {
+				if (getProps().getWorkers() > 0) {
+					executeWithWorker(header, writer, reader, timeout);
+				} else if (getPipeline() != null) {
+					executeWithPipeline(header, writer, reader, invocation, timeout);
+				} else {
+					executeWithProcess(header, writer, reader, invocation, timeout);
 				}
+			} finally {
+				invocation.processNanos = System.nanoTime() - start;
+				limiter.release();
+			}
+		}
+
+		/**
+		 * Sends the input to one of the long-lived script processes.
+		 */
+		private void executeWithWorker(Map<String, String> header, ScriptInputWriter writer,
+				ScriptOutputReader reader, long timeout) throws IOException, InterruptedException {
+			byte[] input = serialize(writer);
+			Map<String, String> frameHeader = new LinkedHashMap<>(header);
+			frameHeader.put("PEPPER_FORMAT", getProps().getFormat().toLowerCase());
+			byte[] output = getWorkerPool().process(frameHeader, input, timeout);
+			try {
+				reader.read(new ByteArrayInputStream(output));
+			} catch (ParserConfigurationException | SAXException ex) {
+				throw new PepperModuleException(
+						"Could not read from the manipulator script " + getProps().getPath(), ex);
+			}
+		}
+
+		/**
+		 * Starts a new process for each script of the pipeline and connects
+		 * them, so the intermediate results are never read into Salt. The
+		 * header values are only passed to the last script, the others get
+		 * the format and the document name.
+		 */
+		private void executeWithPipeline(Map<String, String> header, ScriptInputWriter writer,
+				ScriptOutputReader reader, ScriptMetrics.Invocation invocation, long timeout)
+				throws IOException, InterruptedException {
+			List<CommandLine> commands = getPipeline();
+			List<Map<String, String>> environments = new ArrayList<>();
+			List<ScriptErrorOutput> errorOutputs = new ArrayList<>();
+			for (int i = 0; i < commands.size(); i++) {
 				Map<String, String> env = EnvironmentUtils.getProcEnvironment();
-				env.put("PEPPER_DOCUMENT_NAME", doc.getName());
+				if (i == commands.size() - 1) {
+					env.putAll(header);
+				} else if (header.containsKey("PEPPER_DOCUMENT_NAME")) {
+					env.put("PEPPER_DOCUMENT_NAME", header.get("PEPPER_DOCUMENT_NAME"));
+				}
 				env.put("PEPPER_FORMAT", getProps().getFormat().toLowerCase());
+				environments.add(env);
+				errorOutputs.add(new ScriptErrorOutput(getProps().getStderrBufferSize() * 1024,
+						getProps().getStderrLogLevel(), commands.get(i).getExecutable()));
+			}
+			new ScriptPipeline(commands, environments, errorOutputs, getBaseDir()).run(writer, reader,
+					invocation.name, getIOExecutor(), getTimer(), timeout);
+		}
 
-				DefaultExecutor executor = new DefaultExecutor();
-				executor.setWorkingDirectory(baseDir);
-
-				// record the output streams
-				final PipedOutputStream resultStream = new PipedOutputStream();
-				final PipedOutputStream errStream = new PipedOutputStream();
-				final PipedInputStream inStream = new PipedInputStream();
-				executor.setStreamHandler(new PumpStreamHandler(resultStream, errStream, inStream));
-				// create an error handler
-				DefaultExecuteResultHandler resultHandler = new DefaultExecuteResultHandler();
-
-				// execute asynchronously
-				executor.execute(cmdLine, env, resultHandler);
-
-				// create the representation in the requested format and write it to the
-				// standard input of the process
-				Runnable writer = () -> {
-					try {
-						PipedOutputStream stdin = new PipedOutputStream(inStream);
-						switch (getProps().getFormat().toLowerCase()) {
-						case "graphml":
-							GraphMLWriter.convertFromSalt(stdin, doc);
-							break;
-						case "saltxml":
-							XMLStreamWriter xmlWriter;
-
-							xmlWriter = XML_OUT_FACTORY.createXMLStreamWriter(stdin);
-
-							new SaltXML10Writer().writeObjects(xmlWriter, doc.getDocumentGraph());
-							xmlWriter.flush();
-							xmlWriter.close();
-
-							break;
-						default:
-						}
-					} catch (XMLStreamException | IOException ex) {
-						throw new PepperModuleException(
-								"Could not write to the manipulator script " + getProps().getPath(), ex);
-					}
-				};
-				Thread writerThread = new Thread(writer);
-				writerThread.start();
-
-				Runnable reader = () -> {
-					try {
-						PipedInputStream stdout = new PipedInputStream(resultStream);
-
-						switch (getProps().getFormat().toLowerCase()) {
-						case "graphml":
-							List<SDocument> docs = GraphMLReader.convertToSalt(stdout);
-							if (!docs.isEmpty()) {
-								doc.setDocumentGraph(docs.get(0).getDocumentGraph());
-							}
-							break;
-						case "saltxml":
-							SaltXML10Handler saltHandler = new SaltXML10Handler();
-							SAXParser xmlParser = SAX_PARSER_FACTORY.newSAXParser();
-							xmlParser.parse(stdout, saltHandler);
-							getDocument().setDocumentGraph((SDocumentGraph) saltHandler.getSaltObject());
-							break;
-						default:
-							logger.error("Invalid script-exchange format {} configured in properties.",
-									getProps().getFormat());
-						}
-					} catch (IOException | ParserConfigurationException | SAXException ex) {
-						throw new PepperModuleException(
-								"Could not read from the manipulator script " + getProps().getPath(), ex);
-					}
-				};
-				Thread readerThread = new Thread(reader);
-				readerThread.start();
+		/**
+		 * Starts a new script process for this single invocation.
+		 */
+		private void executeWithProcess(Map<String, String> header, ScriptInputWriter writer,
+				ScriptOutputReader reader, ScriptMetrics.Invocation invocation, long timeout)
+				throws IOException, InterruptedException {
+			// create a process with the requested parameter
+			CommandLine cmdLine = createCommandLine();
+			Map<String, String> env = EnvironmentUtils.getProcEnvironment();
+			env.putAll(header);
+			env.put("PEPPER_FORMAT", getProps().getFormat().toLowerCase());
 
-				resultHandler.waitFor();
-				if (resultHandler.getExitValue() != 0) {
-					// get stderr
-					PipedInputStream stderr = new PipedInputStream(errStream);
-					String errorMsg = CharStreams.toString(new InputStreamReader(stderr, StandardCharsets.UTF_8));
+			DefaultExecutor executor = new DefaultExecutor();
+			executor.setWorkingDirectory(getBaseDir());
+			// the exit value is checked below
+			executor.setExitValues(null);
+			// the process is killed by the shared timer instead of a watchdog thread for each process
+			final ExecuteWatchdog watchdog = new ExecuteWatchdog(ExecuteWatchdog.INFINITE_TIMEOUT);
+			executor.setWatchdog(watchdog);
+			final AtomicBoolean killed = new AtomicBoolean(false);
+			ScheduledFuture<?> killer = null;
+			if (timeout > 0) {
+				killer = getTimer().schedule(() -> {
+					killed.set(true);
+					watchdog.destroyProcess();
+				}, timeout, TimeUnit.MILLISECONDS);
+			}
 
-					throw new PepperModuleException("Manipulator script " + getProps().getPath()
-							+ " returned error code " + resultHandler.getExitValue() + ":\n" + errorMsg);
-				}
+			// create the representation in the requested format and write it to the
+			// standard input of the process, while the output is read concurrently
+			ScriptProcessStreams streams = new ScriptProcessStreams(getIOExecutor(), writer, reader,
+					createErrorOutput());
+			executor.setStreamHandler(streams);
 
-				readerThread.join();
+			int exitValue;
+			try {
+				exitValue = executor.execute(cmdLine, env);
+			} finally {
+				if (killer != null) {
+					killer.cancel(false);
+				}
+			}
+			if (killed.get()) {
+				throw new PepperModuleException("Manipulator script " + getProps().getPath()
+						+ " was killed after exceeding the timeout of " + timeout + " ms for the " + invocation.name);
+			}
+			if (exitValue != 0) {
+				throw new PepperModuleException("Manipulator script " + getProps().getPath()
+						+ " returned error code " + exitValue + ":\n" + streams.getErrorOutput());
+			}
 
-			} catch (IOException | InterruptedException ex) {
+			Throwable readerFailure = streams.getReaderFailure();
+			if (readerFailure != null) {
 				throw new PepperModuleException(
-						"Could not execute the manipulator script " + getProps().getPath(), ex);
+						"Could not read from the manipulator script " + getProps().getPath(), readerFailure);
+			}
+			Throwable writerFailure = streams.getWriterFailure();
+			if (writerFailure instanceof IOException) {
+				// the script terminated successfully without consuming all of its input
+				logger.warn("Could not write the complete input to the manipulator script {}: {}",
+						getProps().getPath(), writerFailure.getMessage());
+			} else if (writerFailure != null) {
+				throw new PepperModuleException(
+						"Could not write to the manipulator script " + getProps().getPath(), writerFailure);
 			}
+		}
 
-			setProgress(1.0);
-			return (DOCUMENT_STATUS.COMPLETED);
+		/**
+		 * Replaces the document graph with the one returned by the script or,
+		 * if only a projection was sent, merges the returned graph into it.
+		 */
+		private void setResult(SDocument doc, SDocumentGraph result) {
+			GraphProjection projection = getProjection();
+			if (projection.isAll() || doc.getDocumentGraph() == null) {
+				doc.setDocumentGraph(result);
+			} else {
+				projection.merge(doc.getDocumentGraph(), result);
+			}
+		}
+
+		/**
+		 * Writes the documents as GraphML, in parallel and with the serializer
+		 * if requested.
+		 */
+		private Map<String, SDocument> writeGraphML(OutputStream out, List<SDocument> docs,
+				Map<String, Object> elementsByID) {
+			ForkJoinPool pool = getProps().isParallelSerialization() ? ForkJoinPool.commonPool() : null;
+			// the schema grows while the graphs are written, so the documents
+			// are only traversed once
+			return GraphMLWriter.writeDocuments(out, docs, elementsByID, getProjection(), new GraphMLKeySchema(),
+					pool, getProps().getGraphMLSerializer());
+		}
+
+		/**
+		 * Creates the representation of the document in the requested format.
+		 */
+		private void writeDocument(OutputStream out, SDocument doc) throws XMLStreamException, IOException {
+			switch (getProps().getFormat().toLowerCase()) {
+			case "graphml":
+				writeGraphML(out, Collections.singletonList(doc), null);
+				break;
+			case "saltxml":
+				XMLStreamWriter xmlWriter;
+
+				xmlWriter = XML_OUT_FACTORY.createXMLStreamWriter(out);
+
+				new SaltXML10Writer().writeObjects(xmlWriter, doc.getDocumentGraph());
+				xmlWriter.flush();
+				xmlWriter.close();
+
+				break;
+			case "binary":
+				BinaryGraphWriter.writeDocuments(out, Collections.singletonList(doc), null, getProjection());
+				break;
+			default:
+			}
+		}
+
+		/**
+		 * Parses the output of the script. The document graph is only changed
+		 * after the script has terminated, since the input might still be
+		 * written while the output is read.
+		 * 
+		 * @return the returned document graph or null if the script returned
+		 *         none
+		 */
+		private SDocumentGraph readDocument(InputStream in)
+				throws IOException, ParserConfigurationException, SAXException {
+			switch (getProps().getFormat().toLowerCase()) {
+			case "graphml":
+				List<SDocument> docs = GraphMLReader.convertToSalt(in);
+				return docs.isEmpty() ? null : docs.get(0).getDocumentGraph();
+			case "saltxml":
+				SaltXML10Handler saltHandler = new SaltXML10Handler();
+				SAXParser xmlParser = SAX_PARSER_FACTORY.newSAXParser();
+				xmlParser.parse(in, saltHandler);
+				return (SDocumentGraph) saltHandler.getSaltObject();
+			case "binary":
+				List<SDocument> binaryDocs = BinaryGraphReader.convertToSalt(in);
+				return binaryDocs.isEmpty() ? null : binaryDocs.get(0).getDocumentGraph();
+			default:
+				logger.error("Invalid script-exchange format {} configured in properties.",
+						getProps().getFormat());
+				return null;
+			}
 		}
 	}
 }
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the time and the amount of data each script invocation needed and
+ * summarizes them for all invocations of a module. Only the slowest
+ * invocations are kept individually.
+ */
+class ScriptMetrics {
+
+	/**
+	 * The measurements of a single script invocation, which is either a
+	 * single document or a batch.
+	 */
+	static class Invocation {
+		final String name;
+		long serializeNanos;
+		long processNanos;
+		long deserializeNanos;
+		long bytesSent;
+		long bytesReceived;
+		boolean cached;
+
+		Invocation(String name) {
+			this.name = name;
+		}
+
+		long getTotalNanos() {
+			return serializeNanos + processNanos + deserializeNanos;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": serialize=" + millis(serializeNanos) + " ms, process=" + millis(processNanos)
+					+ " ms, deserialize=" + millis(deserializeNanos) + " ms, sent=" + bytesSent + " bytes, received="
+					+ bytesReceived + " bytes" + (cached ? " (cached)" : "");
+		}
+	}
+
+	private static final Comparator<Invocation> BY_TOTAL_TIME = Comparator.comparingLong(Invocation::getTotalNanos);
+
+	private final int keepSlowest;
+	private final PriorityQueue<Invocation> slowest = new PriorityQueue<>(BY_TOTAL_TIME);
+
+	private long invocations = 0;
+	private long cachedInvocations = 0;
+	private long serializeNanos = 0;
+	private long processNanos = 0;
+	private long deserializeNanos = 0;
+	private long bytesSent = 0;
+	private long bytesReceived = 0;
+
+	/**
+	 * @param keepSlowest
+	 *            the number of slowest invocations that are kept
+	 */
+	public ScriptMetrics(int keepSlowest) {
+		this.keepSlowest = keepSlowest;
+	}
+
+	public synchronized void add(Invocation invocation) {
+		invocations++;
+		if (invocation.cached) {
+			cachedInvocations++;
+		}
+		serializeNanos += invocation.serializeNanos;
+		processNanos += invocation.processNanos;
+		deserializeNanos += invocation.deserializeNanos;
+		bytesSent += invocation.bytesSent;
+		bytesReceived += invocation.bytesReceived;
+
+		slowest.add(invocation);
+		if (slowest.size() > keepSlowest) {
+			slowest.poll();
+		}
+	}
+
+	public synchronized long getInvocations() {
+		return invocations;
+	}
+
+	public synchronized long getCachedInvocations() {
+		return cachedInvocations;
+	}
+
+	public synchronized long getSerializeMillis() {
+		return millis(serializeNanos);
+	}
+
+	public synchronized long getProcessMillis() {
+		return millis(processNanos);
+	}
+
+	public synchronized long getDeserializeMillis() {
+		return millis(deserializeNanos);
+	}
+
+	public synchronized long getBytesSent() {
+		return bytesSent;
+	}
+
+	public synchronized long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * @return the slowest invocations, beginning with the slowest one
+	 */
+	public synchronized List<Invocation> getSlowest() {
+		List<Invocation> result = new ArrayList<>(slowest);
+		result.sort(BY_TOTAL_TIME.reversed());
+		return result;
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("invocations=").append(invocations).append(" (").append(cachedInvocations).append(" cached)");
+		sb.append(", serialize=").append(getSerializeMillis()).append(" ms");
+		sb.append(", process=").append(getProcessMillis()).append(" ms");
+		sb.append(", deserialize=").append(getDeserializeMillis()).append(" ms");
+		sb.append(", sent=").append(bytesSent).append(" bytes");
+		sb.append(", received=").append(bytesReceived).append(" bytes");
+		List<Invocation> list = getSlowest();
+		if (!list.isEmpty()) {
+			sb.append("\nslowest invocations:");
+			for (Invocation i : list) {
+				sb.append("\n  ").append(i);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.exec.CommandLine;
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Runs several scripts as one invocation: the standard output of each script
+ * is the standard input of the next one. Only the first script gets the
+ * input and only the output of the last one is read.
+ *
+ * On Java 9 and newer, the processes are connected directly by operating
+ * system pipes with ProcessBuilder.startPipeline. On older versions, the
+ * output of each process is copied to the next one by a task of the executor,
+ * without interpreting it.
+ */
+class ScriptPipeline {
+	private static final Logger logger = LoggerFactory.getLogger(ScriptPipeline.class);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** ProcessBuilder.startPipeline(List), which is only available since Java 9 */
+	private static final Method START_PIPELINE = findStartPipeline();
+
+	private final List<CommandLine> commands;
+	private final List<Map<String, String>> environments;
+	private final List<ScriptErrorOutput> errorOutputs;
+	private final File workingDirectory;
+
+	/**
+	 * @param commands
+	 *            the scripts in the order in which the data flows through
+	 *            them
+	 * @param environments
+	 *            the environment of each script
+	 * @param errorOutputs
+	 *            the consumers of the standard error of each script
+	 */
+	public ScriptPipeline(List<CommandLine> commands, List<Map<String, String>> environments,
+			List<ScriptErrorOutput> errorOutputs, File workingDirectory) {
+		this.commands = commands;
+		this.environments = environments;
+		this.errorOutputs = errorOutputs;
+		this.workingDirectory = workingDirectory;
+	}
+
+	private static Method findStartPipeline() {
+		try {
+			return ProcessBuilder.class.getMethod("startPipeline", List.class);
+		} catch (NoSuchMethodException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the processes are connected by operating system pipes
+	 */
+	public static boolean hasNativePipes() {
+		return START_PIPELINE != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Process> start() throws IOException {
+		List<ProcessBuilder> builders = new ArrayList<>();
+		for (int i = 0; i < commands.size(); i++) {
+			ProcessBuilder builder = new ProcessBuilder(commands.get(i).toStrings());
+			builder.directory(workingDirectory);
+			builder.environment().clear();
+			builder.environment().putAll(environments.get(i));
+			builders.add(builder);
+		}
+		if (START_PIPELINE != null) {
+			try {
+				return (List<Process>) START_PIPELINE.invoke(null, builders);
+			} catch (InvocationTargetException ex) {
+				if (ex.getCause() instanceof IOException) {
+					throw (IOException) ex.getCause();
+				}
+				throw new PepperModuleException("Could not start the manipulator scripts " + commands, ex.getCause());
+			} catch (IllegalAccessException ex) {
+				throw new PepperModuleException("Could not start the manipulator scripts " + commands, ex);
+			}
+		}
+		List<Process> processes = new ArrayList<>();
+		try {
+			for (ProcessBuilder builder : builders) {
+				processes.add(builder.start());
+			}
+		} catch (IOException ex) {
+			for (Process p : processes) {
+				p.destroyForcibly();
+			}
+			throw ex;
+		}
+		return processes;
+	}
+
+	/**
+	 * Starts all scripts, writes the input to the first one and reads the
+	 * output of the last one while the scripts are running.
+	 *
+	 * @param name
+	 *            describes the invocation in error messages
+	 * @param timeout
+	 *            the time in milliseconds after which all scripts are killed,
+	 *            or 0 for no limit
+	 */
+	public void run(ScriptInputWriter writer, ScriptOutputReader reader, String name, ExecutorService executor,
+			ScheduledExecutorService timer, long timeout) throws IOException, InterruptedException {
+		final List<Process> processes = start();
+		final AtomicBoolean timedOut = new AtomicBoolean(false);
+		ScheduledFuture<?> killer = null;
+		List<Future<?>> streamTasks = new ArrayList<>();
+		try {
+			if (timeout > 0) {
+				killer = timer.schedule(() -> {
+					timedOut.set(true);
+					for (Process p : processes) {
+						p.destroyForcibly();
+					}
+				}, timeout, TimeUnit.MILLISECONDS);
+			}
+
+			for (int i = 0; i < processes.size(); i++) {
+				final InputStream stderr = processes.get(i).getErrorStream();
+				final ScriptErrorOutput errorOutput = errorOutputs.get(i);
+				streamTasks.add(executor.submit(() -> {
+					try (InputStream err = stderr) {
+						errorOutput.drain(err);
+					}
+					return null;
+				}));
+				if (START_PIPELINE == null && i + 1 < processes.size()) {
+					final InputStream from = processes.get(i).getInputStream();
+					final OutputStream to = processes.get(i + 1).getOutputStream();
+					streamTasks.add(executor.submit(() -> {
+						try (InputStream in = from; OutputStream out = to) {
+							ByteStreams.copy(in, out);
+						}
+						return null;
+					}));
+				}
+			}
+
+			final Process first = processes.get(0);
+			final Process last = processes.get(processes.size() - 1);
+			Future<?> writerTask = executor.submit(() -> {
+				try (OutputStream out = new BufferedOutputStream(first.getOutputStream(), BUFFER_SIZE)) {
+					writer.write(out);
+				}
+				return null;
+			});
+			Future<?> readerTask = executor.submit(() -> {
+				try (InputStream in = new BufferedInputStream(last.getInputStream(), BUFFER_SIZE)) {
+					reader.read(in);
+				}
+				return null;
+			});
+
+			int[] exitValues = new int[processes.size()];
+			for (int i = 0; i < processes.size(); i++) {
+				exitValues[i] = processes.get(i).waitFor();
+			}
+			// children of killed scripts may still hold the streams, so they are not awaited
+			if (timedOut.get()) {
+				throw new PepperModuleException("Manipulator scripts " + commands
+						+ " were killed after exceeding the timeout of " + timeout + " ms for the " + name);
+			}
+			for (Future<?> task : streamTasks) {
+				getFailure(task);
+			}
+			Throwable readerFailure = getFailure(readerTask);
+			// a failing script breaks the pipe of the scripts before it, so the last failure is the cause
+			for (int i = exitValues.length - 1; i >= 0; i--) {
+				if (exitValues[i] != 0) {
+					throw new PepperModuleException("Manipulator script " + commands.get(i) + " returned error code "
+							+ exitValues[i] + ":\n" + errorOutputs.get(i).getTail());
+				}
+			}
+			if (readerFailure != null) {
+				throw new PepperModuleException("Could not read from the manipulator script " + last(), readerFailure);
+			}
+			Throwable writerFailure = getFailure(writerTask);
+			if (writerFailure instanceof IOException) {
+				// the scripts terminated successfully without consuming all of the input
+				logger.warn("Could not write the complete input to the manipulator script {}: {}", commands.get(0),
+						writerFailure.getMessage());
+			} else if (writerFailure != null) {
+				throw new PepperModuleException("Could not write to the manipulator script " + commands.get(0),
+						writerFailure);
+			}
+		} finally {
+			if (killer != null) {
+				killer.cancel(false);
+			}
+			for (Process p : processes) {
+				if (p.isAlive()) {
+					p.destroyForcibly();
+				}
+			}
+		}
+	}
+
+	private CommandLine last() {
+		return commands.get(commands.size() - 1);
+	}
+
+	private static Throwable getFailure(Future<?> task) throws InterruptedException {
+		try {
+			task.get();
+			return null;
+		} catch (ExecutionException ex) {
+			return ex.getCause();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.exec.ExecuteStreamHandler;
+
+/**
+ * Connects the input writer and output reader of a script invocation directly
+ * to the standard streams of the process. Instead of dedicated threads and
+ * piped streams, the three stream pumps are tasks of a shared executor.
+ */
+class ScriptProcessStreams implements ExecuteStreamHandler {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final ExecutorService executor;
+	private final ScriptInputWriter writer;
+	private final ScriptOutputReader reader;
+	private final ScriptErrorOutput errorOutput;
+
+	private OutputStream stdin;
+	private InputStream stdout;
+	private InputStream stderr;
+
+	private Future<?> writerTask;
+	private Future<?> readerTask;
+	private Future<?> errorTask;
+
+	public ScriptProcessStreams(ExecutorService executor, ScriptInputWriter writer, ScriptOutputReader reader,
+			ScriptErrorOutput errorOutput) {
+		this.executor = executor;
+		this.writer = writer;
+		this.reader = reader;
+		this.errorOutput = errorOutput;
+	}
+
+	@Override
+	public void setProcessInputStream(OutputStream os) throws IOException {
+		this.stdin = new BufferedOutputStream(os, BUFFER_SIZE);
+	}
+
+	@Override
+	public void setProcessOutputStream(InputStream is) throws IOException {
+		this.stdout = new BufferedInputStream(is, BUFFER_SIZE);
+	}
+
+	@Override
+	public void setProcessErrorStream(InputStream is) throws IOException {
+		this.stderr = is;
+	}
+
+	@Override
+	public void start() throws IOException {
+		writerTask = executor.submit(() -> {
+			try (OutputStream out = stdin) {
+				writer.write(out);
+			}
+			return null;
+		});
+		readerTask = executor.submit(() -> {
+			reader.read(stdout);
+			return null;
+		});
+		errorTask = executor.submit(() -> {
+			errorOutput.drain(stderr);
+			return null;
+		});
+	}
+
+	/**
+	 * Called after the process terminated, waits until the remaining output
+	 * was consumed.
+	 */
+	@Override
+	public void stop() throws IOException {
+		try {
+			if (readerTask != null) {
+				readerTask.get();
+			}
+			if (errorTask != null) {
+				errorTask.get();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			// reported by getReaderFailure()
+		}
+	}
+
+	/**
+	 * @return the exception thrown while writing the input, or null
+	 */
+	public Throwable getWriterFailure() throws InterruptedException {
+		return getFailure(writerTask);
+	}
+
+	/**
+	 * @return the exception thrown while reading the output, or null
+	 */
+	public Throwable getReaderFailure() throws InterruptedException {
+		return getFailure(readerTask);
+	}
+
+	private static Throwable getFailure(Future<?> task) throws InterruptedException {
+		if (task == null) {
+			return null;
+		}
+		try {
+			task.get();
+			return null;
+		} catch (ExecutionException ex) {
+			return ex.getCause();
+		}
+	}
+
+	/**
+	 * @return the last part of what the script has written to its standard
+	 *         error
+	 */
+	public String getErrorOutput() {
+		return errorOutput.getTail();
+	}
+}
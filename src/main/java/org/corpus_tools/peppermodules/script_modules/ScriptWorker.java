@@ -0,0 +1,287 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecuteResultHandler;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteStreamHandler;
+import org.apache.commons.exec.ExecuteWatchdog;
+import org.apache.commons.exec.ProcessDestroyer;
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-lived script process that manipulates many documents, one after
+ * another. Documents are exchanged with the framed protocol described in the
+ * README: each frame consists of "KEY=VALUE" header lines, an empty line and
+ * exactly PEPPER_CONTENT_LENGTH bytes of payload.
+ *
+ * A worker is not thread-safe, it must only be used by one mapper at a time.
+ */
+class ScriptWorker implements ExecuteStreamHandler {
+	private static final Logger logger = LoggerFactory.getLogger(ScriptWorker.class);
+
+	public static final String HEADER_CONTENT_LENGTH = "PEPPER_CONTENT_LENGTH";
+	public static final String HEADER_STATUS = "PEPPER_STATUS";
+
+	private final ExecuteWatchdog watchdog = new ExecuteWatchdog(ExecuteWatchdog.INFINITE_TIMEOUT);
+	private final DefaultExecuteResultHandler resultHandler = new DefaultExecuteResultHandler();
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final ExecutorService ioExecutor;
+	private final ScheduledExecutorService timer;
+	private final ScriptErrorOutput errorOutput;
+
+	private OutputStream stdin;
+	private InputStream stdout;
+	private InputStream stderr;
+
+	private int processedDocuments = 0;
+	private boolean broken = false;
+	private volatile boolean timedOut = false;
+
+	/**
+	 * @param ioExecutor
+	 *            the executor that drains the standard error of the process
+	 * @param timer
+	 *            the executor that kills the process when a request timed out
+	 * @param errorOutput
+	 *            consumes the standard error of the process
+	 */
+	public ScriptWorker(ExecutorService ioExecutor, ScheduledExecutorService timer, ScriptErrorOutput errorOutput) {
+		this.ioExecutor = ioExecutor;
+		this.timer = timer;
+		this.errorOutput = errorOutput;
+	}
+
+	/**
+	 * Starts the script process and waits until its standard streams are
+	 * connected.
+	 */
+	public void start(CommandLine cmdLine, Map<String, String> env, File workingDirectory,
+			ProcessDestroyer processDestroyer) throws IOException, InterruptedException {
+		DefaultExecutor executor = new DefaultExecutor();
+		executor.setWorkingDirectory(workingDirectory);
+		executor.setStreamHandler(this);
+		executor.setWatchdog(watchdog);
+		executor.setProcessDestroyer(processDestroyer);
+
+		executor.execute(cmdLine, env, resultHandler);
+
+		while (!started.await(100, TimeUnit.MILLISECONDS)) {
+			if (resultHandler.hasResult()) {
+				throw new IOException("Script worker " + cmdLine + " terminated before it was ready",
+						resultHandler.getException());
+			}
+		}
+	}
+
+	/**
+	 * Sends a request frame with the given header values to the script and
+	 * returns the payload of the response frame.
+	 *
+	 * @param timeout
+	 *            the time in milliseconds after which the process is killed if
+	 *            it did not answer, or 0 to wait forever
+	 * @throws PepperModuleException
+	 *             if the script reported a non-zero status for this request
+	 *             or did not answer in time. The worker stays usable in the
+	 *             first case.
+	 * @throws IOException
+	 *             if the communication with the process failed. The worker is
+	 *             marked as broken and must not be used anymore.
+	 */
+	public byte[] process(Map<String, String> requestHeader, byte[] input, long timeout) throws IOException {
+		if (broken) {
+			throw new IOException("Script worker is broken");
+		}
+		ScheduledFuture<?> killer = null;
+		if (timeout > 0) {
+			killer = timer.schedule(() -> {
+				timedOut = true;
+				watchdog.destroyProcess();
+			}, timeout, TimeUnit.MILLISECONDS);
+		}
+		try {
+			for (Map.Entry<String, String> e : requestHeader.entrySet()) {
+				writeHeader(e.getKey(), e.getValue());
+			}
+			writeHeader(HEADER_CONTENT_LENGTH, Integer.toString(input.length));
+			stdin.write('\n');
+			stdin.write(input);
+			stdin.flush();
+
+			Map<String, String> header = readHeader();
+			int length = Integer.parseInt(header.getOrDefault(HEADER_CONTENT_LENGTH, "0"));
+			byte[] payload = new byte[length];
+			int offset = 0;
+			while (offset < length) {
+				int read = stdout.read(payload, offset, length - offset);
+				if (read < 0) {
+					throw new EOFException("Script worker closed its output in the middle of a frame");
+				}
+				offset += read;
+			}
+			processedDocuments++;
+
+			int status = Integer.parseInt(header.getOrDefault(HEADER_STATUS, "0"));
+			if (status != 0) {
+				throw new PepperModuleException("Manipulator script returned status " + status + " for request "
+						+ requestHeader + ":\n" + new String(payload, StandardCharsets.UTF_8));
+			}
+			return payload;
+		} catch (IOException | NumberFormatException ex) {
+			broken = true;
+			if (timedOut) {
+				throw new PepperModuleException("Manipulator script did not answer request " + requestHeader
+						+ " within the timeout of " + timeout + " ms and was killed" + getErrorTail());
+			}
+			if (ex instanceof IOException) {
+				throw new IOException(ex.getMessage() + getErrorTail(), ex);
+			}
+			throw new IOException("Invalid frame header received from script worker" + getErrorTail(), ex);
+		} finally {
+			if (killer != null) {
+				killer.cancel(false);
+			}
+			if (timedOut) {
+				broken = true;
+			}
+		}
+	}
+
+	private String getErrorTail() {
+		String tail = errorOutput.getTail();
+		return tail.isEmpty() ? "" : ", its last error output was:\n" + tail;
+	}
+
+	private void writeHeader(String key, String value) throws IOException {
+		stdin.write((key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Map<String, String> readHeader() throws IOException {
+		Map<String, String> header = new HashMap<>();
+		String line;
+		while (!(line = readLine()).isEmpty()) {
+			int sep = line.indexOf('=');
+			if (sep > 0) {
+				header.put(line.substring(0, sep).trim(), line.substring(sep + 1).trim());
+			}
+		}
+		return header;
+	}
+
+	private String readLine() throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = stdout.read()) != '\n') {
+			if (b < 0) {
+				throw new EOFException("Script worker closed its output");
+			} else if (b != '\r') {
+				line.write(b);
+			}
+		}
+		return new String(line.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the number of requests this worker has answered
+	 */
+	public int getProcessedDocuments() {
+		return processedDocuments;
+	}
+
+	/**
+	 * @return true if the process is still running and the protocol state is
+	 *         intact
+	 */
+	public boolean isUsable() {
+		return !broken && !resultHandler.hasResult();
+	}
+
+	/**
+	 * Closes the standard input of the script, which signals it to exit, and
+	 * kills the process if it does not terminate in time.
+	 */
+	public void destroy() {
+		broken = true;
+		try {
+			if (stdin != null) {
+				stdin.close();
+			}
+			resultHandler.waitFor(1000);
+		} catch (IOException ex) {
+			logger.debug("Could not close standard input of script worker", ex);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		if (!resultHandler.hasResult()) {
+			watchdog.destroyProcess();
+		}
+	}
+
+	@Override
+	public void setProcessInputStream(OutputStream os) throws IOException {
+		this.stdin = new BufferedOutputStream(os);
+	}
+
+	@Override
+	public void setProcessOutputStream(InputStream is) throws IOException {
+		this.stdout = new BufferedInputStream(is);
+	}
+
+	@Override
+	public void setProcessErrorStream(InputStream is) throws IOException {
+		this.stderr = is;
+	}
+
+	@Override
+	public void start() throws IOException {
+		ioExecutor.execute(() -> {
+			try (InputStream err = stderr) {
+				errorOutput.drain(err);
+			} catch (IOException ex) {
+				// the process was terminated
+			}
+		});
+		started.countDown();
+	}
+
+	@Override
+	public void stop() throws IOException {
+		broken = true;
+	}
+}
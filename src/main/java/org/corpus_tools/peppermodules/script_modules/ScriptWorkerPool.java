@@ -0,0 +1,141 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.ShutdownHookProcessDestroyer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed number of {@link ScriptWorker}s that are shared by all mappers of a
+ * module. Workers are started lazily and are replaced after they processed a
+ * configurable number of documents or when they crashed.
+ */
+class ScriptWorkerPool implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(ScriptWorkerPool.class);
+
+	private final CommandLine cmdLine;
+	private final Map<String, String> env;
+	private final File workingDirectory;
+	private final int maxDocumentsPerWorker;
+	private final ExecutorService ioExecutor;
+	private final ScheduledExecutorService timer;
+	private final Supplier<ScriptErrorOutput> errorOutputFactory;
+
+	private final Semaphore permits;
+	private final ConcurrentLinkedDeque<ScriptWorker> idle = new ConcurrentLinkedDeque<>();
+	private final ShutdownHookProcessDestroyer processDestroyer = new ShutdownHookProcessDestroyer();
+	private volatile boolean closed = false;
+
+	/**
+	 * @param size
+	 *            the maximal number of concurrently running script processes
+	 * @param maxDocumentsPerWorker
+	 *            the number of documents after which a worker is replaced by a
+	 *            fresh process, or 0 if workers should never be recycled
+	 * @param ioExecutor
+	 *            the executor that drains the standard error of the workers
+	 * @param timer
+	 *            the executor that kills workers whose request timed out
+	 * @param errorOutputFactory
+	 *            creates the consumer of the standard error of each worker
+	 */
+	public ScriptWorkerPool(CommandLine cmdLine, Map<String, String> env, File workingDirectory, int size,
+			int maxDocumentsPerWorker, ExecutorService ioExecutor, ScheduledExecutorService timer,
+			Supplier<ScriptErrorOutput> errorOutputFactory) {
+		this.cmdLine = cmdLine;
+		this.env = new HashMap<>(env);
+		this.workingDirectory = workingDirectory;
+		this.maxDocumentsPerWorker = maxDocumentsPerWorker;
+		this.ioExecutor = ioExecutor;
+		this.timer = timer;
+		this.errorOutputFactory = errorOutputFactory;
+		this.permits = new Semaphore(Math.max(1, size), true);
+	}
+
+	/**
+	 * Sends a single request frame to one of the workers, blocking until a
+	 * worker becomes available.
+	 * 
+	 * @param timeout
+	 *            the time in milliseconds the worker may need for the request,
+	 *            or 0 for no limit
+	 */
+	public byte[] process(Map<String, String> header, byte[] input, long timeout)
+			throws IOException, InterruptedException {
+		permits.acquire();
+		ScriptWorker worker = null;
+		try {
+			if (closed) {
+				throw new IOException("The script worker pool was already closed");
+			}
+			worker = idle.pollFirst();
+			while (worker != null && !worker.isUsable()) {
+				logger.debug("Replacing a terminated script worker");
+				worker.destroy();
+				worker = idle.pollFirst();
+			}
+			if (worker == null) {
+				worker = new ScriptWorker(ioExecutor, timer, errorOutputFactory.get());
+				worker.start(cmdLine, env, workingDirectory, processDestroyer);
+			}
+			return worker.process(header, input, timeout);
+		} finally {
+			if (worker != null) {
+				release(worker);
+			}
+			permits.release();
+		}
+	}
+
+	private void release(ScriptWorker worker) {
+		if (closed || !worker.isUsable()) {
+			worker.destroy();
+		} else if (maxDocumentsPerWorker > 0 && worker.getProcessedDocuments() >= maxDocumentsPerWorker) {
+			logger.debug("Recycling script worker after {} documents", worker.getProcessedDocuments());
+			worker.destroy();
+		} else {
+			idle.offerFirst(worker);
+		}
+	}
+
+	/**
+	 * Terminates all idle workers. Workers that are currently in use are
+	 * terminated as soon as they are released.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		ScriptWorker worker;
+		while ((worker = idle.pollFirst()) != null) {
+			worker.destroy();
+		}
+	}
+}
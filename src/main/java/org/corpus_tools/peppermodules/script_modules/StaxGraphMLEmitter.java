@@ -0,0 +1,184 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.corpus_tools.peppermodules.script_modules.GraphMLWriter.NS;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes GraphML with an {@link XMLStreamWriter}.
+ */
+class StaxGraphMLEmitter implements GraphMLEmitter {
+	private final XMLStreamWriter w;
+
+	private final char[] digits = new char[21];
+
+	public StaxGraphMLEmitter(XMLOutputFactory factory, OutputStream out) throws IOException {
+		try {
+			this.w = factory.createXMLStreamWriter(out, "UTF-8");
+			w.setDefaultNamespace(NS);
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Formats the number as ID without an intermediate builder.
+	 */
+	private String toID(long number) {
+		int pos = digits.length;
+		do {
+			digits[--pos] = (char) ('0' + number % 10);
+			number /= 10;
+		} while (number > 0);
+		digits[--pos] = '_';
+		return new String(digits, pos, digits.length - pos);
+	}
+
+	@Override
+	public void startDocument() throws IOException {
+		try {
+			w.writeStartDocument("UTF-8", "1.0");
+
+			w.writeStartElement(NS, "graphml");
+			w.writeDefaultNamespace(NS);
+			w.writeNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+			w.writeAttribute("http://www.w3.org/2001/XMLSchema-instance", "schemaLocation",
+					NS + " http://graphml.graphdrawing.org/xmlns/1.1/graphml.xsd");
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void endDocument() throws IOException {
+		try {
+			w.writeEndDocument();
+			w.close();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void key(String id, String name, String type) throws IOException {
+		try {
+			w.writeStartElement(NS, "key");
+			w.writeAttribute("id", id);
+			w.writeAttribute("attr.name", name);
+			w.writeAttribute("for", "all");
+			w.writeAttribute("attr.type", type);
+			w.writeEndElement();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void startGraph(long id) throws IOException {
+		try {
+			w.writeStartElement(NS, "graph");
+			w.writeAttribute("id", toID(id));
+			w.writeAttribute("edgedefault", "directed");
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void startNode(long id) throws IOException {
+		try {
+			w.writeStartElement(NS, "node");
+			w.writeAttribute("id", toID(id));
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void startEdge(long id, long source, long target) throws IOException {
+		try {
+			w.writeStartElement(NS, "edge");
+			w.writeAttribute("id", toID(id));
+			w.writeAttribute("source", toID(source));
+			w.writeAttribute("target", toID(target));
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void endGraph() throws IOException {
+		endElement();
+	}
+
+	@Override
+	public void endNode() throws IOException {
+		endElement();
+	}
+
+	@Override
+	public void endEdge() throws IOException {
+		endElement();
+	}
+
+	private void endElement() throws IOException {
+		try {
+			w.writeEndElement();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void data(String key, Object value) throws IOException {
+		try {
+			w.writeStartElement(NS, "data");
+			w.writeAttribute("key", key);
+			w.writeCharacters(String.valueOf(value));
+			w.writeEndElement();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void closeStartTag() throws IOException {
+		try {
+			// writing no characters closes the start tag
+			w.writeCharacters("");
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		try {
+			w.flush();
+		} catch (XMLStreamException ex) {
+			throw new IOException(ex);
+		}
+	}
+}
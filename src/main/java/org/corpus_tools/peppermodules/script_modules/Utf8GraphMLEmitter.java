@@ -0,0 +1,337 @@
+/**
+ * Copyright 2009 Humboldt-Universität zu Berlin, INRIA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ *
+ */
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes GraphML as UTF-8 directly into a byte buffer. The tags are encoded
+ * once, numbers are written as digits without creating strings and values
+ * that only consist of ASCII characters which need no escaping are copied
+ * byte by byte.
+ *
+ * The output is the same as the one of the {@link StaxGraphMLEmitter} with
+ * Woodstox: empty elements are closed with "/>", quotes and line breaks in
+ * attributes and carriage returns in text are written as character
+ * references and control characters which XML 1.0 does not allow are
+ * rejected.
+ */
+class Utf8GraphMLEmitter implements GraphMLEmitter {
+
+	private static final byte[] DECLARATION = ascii("<?xml version='1.0' encoding='UTF-8'?>");
+	private static final byte[] GRAPHML_START = ascii("<graphml xmlns=\"" + GraphMLWriter.NS
+			+ "\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"" + GraphMLWriter.NS
+			+ " http://graphml.graphdrawing.org/xmlns/1.1/graphml.xsd\"");
+	private static final byte[] GRAPHML_END = ascii("</graphml>");
+	private static final byte[] KEY_ID = ascii("<key id=\"");
+	private static final byte[] KEY_NAME = ascii("\" attr.name=\"");
+	private static final byte[] KEY_TYPE = ascii("\" for=\"all\" attr.type=\"");
+	private static final byte[] KEY_END = ascii("\"/>");
+	private static final byte[] GRAPH_ID = ascii("<graph id=\"_");
+	private static final byte[] GRAPH_DIRECTED = ascii("\" edgedefault=\"directed\"");
+	private static final byte[] GRAPH_END = ascii("</graph>");
+	private static final byte[] NODE_ID = ascii("<node id=\"_");
+	private static final byte[] NODE_END = ascii("</node>");
+	private static final byte[] EDGE_ID = ascii("<edge id=\"_");
+	private static final byte[] EDGE_SOURCE = ascii("\" source=\"_");
+	private static final byte[] EDGE_TARGET = ascii("\" target=\"_");
+	private static final byte[] EDGE_END = ascii("</edge>");
+	private static final byte[] DATA_KEY = ascii("<data key=\"");
+	private static final byte[] DATA_END = ascii("</data>");
+	private static final byte[] TRUE = ascii("true");
+	private static final byte[] FALSE = ascii("false");
+	private static final byte[] EMPTY_END = ascii("/>");
+
+	/** the longest encoding of a single character */
+	private static final int MAX_CHAR_BYTES = 6;
+
+	/** true for the ASCII characters that are written as they are in text */
+	private static final boolean[] PLAIN_TEXT = new boolean[128];
+	/** true for the ASCII characters that are written as they are in attributes */
+	private static final boolean[] PLAIN_ATTRIBUTE = new boolean[128];
+
+	static {
+		for (char c = ' '; c < 128; c++) {
+			PLAIN_TEXT[c] = c != '<' && c != '&' && c != '>';
+			PLAIN_ATTRIBUTE[c] = c != '<' && c != '&' && c != '"';
+		}
+		PLAIN_TEXT['\n'] = true;
+		PLAIN_TEXT['\t'] = true;
+	}
+
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int pos = 0;
+	/** true if the start tag of the current element is not closed yet */
+	private boolean startTagOpen = false;
+
+	public Utf8GraphMLEmitter(OutputStream out) {
+		this(out, 16 * 1024);
+	}
+
+	public Utf8GraphMLEmitter(OutputStream out, int bufferSize) {
+		this.out = out;
+		this.buffer = new byte[Math.max(bufferSize, 256)];
+	}
+
+	private static byte[] ascii(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (pos + bytes > buffer.length) {
+			out.write(buffer, 0, pos);
+			pos = 0;
+		}
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		ensure(bytes.length);
+		System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+		pos += bytes.length;
+	}
+
+	private void write(char c) throws IOException {
+		ensure(1);
+		buffer[pos++] = (byte) c;
+	}
+
+	/**
+	 * Writes a number without creating a string.
+	 */
+	private void writeNumber(long n) throws IOException {
+		if (n == Long.MIN_VALUE) {
+			write(ascii(Long.toString(n)));
+			return;
+		}
+		ensure(20);
+		if (n < 0) {
+			buffer[pos++] = '-';
+			n = -n;
+		}
+		int digits = 1;
+		for (long rest = n / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		int end = pos + digits;
+		for (int i = end - 1; i >= pos; i--) {
+			buffer[i] = (byte) ('0' + n % 10);
+			n /= 10;
+		}
+		pos = end;
+	}
+
+	private void closeStartTagIfOpen() throws IOException {
+		if (startTagOpen) {
+			write('>');
+			startTagOpen = false;
+		}
+	}
+
+	private void endElement(byte[] endTag) throws IOException {
+		if (startTagOpen) {
+			write(EMPTY_END);
+			startTagOpen = false;
+		} else {
+			write(endTag);
+		}
+	}
+
+	/**
+	 * Writes the characters escaped for text or attributes. The plain ASCII
+	 * characters are copied in runs that fit into the buffer without further
+	 * checks.
+	 */
+	private void writeEscaped(String s, boolean[] plain, boolean attribute) throws IOException {
+		int length = s.length();
+		int i = 0;
+		while (i < length) {
+			int end = Math.min(length, i + buffer.length / MAX_CHAR_BYTES);
+			ensure((end - i) * MAX_CHAR_BYTES);
+			byte[] b = buffer;
+			int p = pos;
+			for (; i < end; i++) {
+				char c = s.charAt(i);
+				if (c < 128 && plain[c]) {
+					b[p++] = (byte) c;
+				} else if (c < 128) {
+					pos = p;
+					writeEscapedASCII(c, s, i, attribute);
+					p = pos;
+				} else if (c < 0x800) {
+					b[p++] = (byte) (0xC0 | (c >> 6));
+					b[p++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isSurrogate(c)) {
+					if (!Character.isHighSurrogate(c) || i + 1 >= length
+							|| !Character.isLowSurrogate(s.charAt(i + 1))) {
+						throw new IOException("Unpaired surrogate character in " + s);
+					}
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					b[p++] = (byte) (0xF0 | (cp >> 18));
+					b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+					b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+					b[p++] = (byte) (0x80 | (cp & 0x3F));
+				} else {
+					b[p++] = (byte) (0xE0 | (c >> 12));
+					b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					b[p++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			pos = p;
+		}
+	}
+
+	/**
+	 * Writes an ASCII character that can not be copied as it is. The buffer
+	 * has room for it.
+	 */
+	private void writeEscapedASCII(char c, String s, int i, boolean attribute) throws IOException {
+		String escaped;
+		switch (c) {
+		case '<':
+			escaped = "&lt;";
+			break;
+		case '&':
+			escaped = "&amp;";
+			break;
+		case '"':
+			escaped = "&quot;";
+			break;
+		case '>':
+			// only needed to avoid "]]>" in text
+			escaped = i >= 2 && s.charAt(i - 1) == ']' && s.charAt(i - 2) == ']' ? "&gt;" : ">";
+			break;
+		case '\r':
+			escaped = "&#xd;";
+			break;
+		case '\n':
+			escaped = attribute ? "&#xa;" : "\n";
+			break;
+		case '\t':
+			escaped = attribute ? "&#x9;" : "\t";
+			break;
+		default:
+			throw new IOException("Invalid white space character (0x" + Integer.toHexString(c) + ") in " + s);
+		}
+		for (int j = 0; j < escaped.length(); j++) {
+			buffer[pos++] = (byte) escaped.charAt(j);
+		}
+	}
+
+	@Override
+	public void startDocument() throws IOException {
+		write(DECLARATION);
+		write(GRAPHML_START);
+		startTagOpen = true;
+	}
+
+	@Override
+	public void endDocument() throws IOException {
+		endElement(GRAPHML_END);
+		flush();
+	}
+
+	@Override
+	public void key(String id, String name, String type) throws IOException {
+		closeStartTagIfOpen();
+		write(KEY_ID);
+		writeEscaped(id, PLAIN_ATTRIBUTE, true);
+		write(KEY_NAME);
+		writeEscaped(name, PLAIN_ATTRIBUTE, true);
+		write(KEY_TYPE);
+		writeEscaped(type, PLAIN_ATTRIBUTE, true);
+		write(KEY_END);
+	}
+
+	@Override
+	public void startGraph(long id) throws IOException {
+		closeStartTagIfOpen();
+		write(GRAPH_ID);
+		writeNumber(id);
+		write(GRAPH_DIRECTED);
+		startTagOpen = true;
+	}
+
+	@Override
+	public void endGraph() throws IOException {
+		endElement(GRAPH_END);
+	}
+
+	@Override
+	public void startNode(long id) throws IOException {
+		closeStartTagIfOpen();
+		write(NODE_ID);
+		writeNumber(id);
+		write('"');
+		startTagOpen = true;
+	}
+
+	@Override
+	public void endNode() throws IOException {
+		endElement(NODE_END);
+	}
+
+	@Override
+	public void startEdge(long id, long source, long target) throws IOException {
+		closeStartTagIfOpen();
+		write(EDGE_ID);
+		writeNumber(id);
+		write(EDGE_SOURCE);
+		writeNumber(source);
+		write(EDGE_TARGET);
+		writeNumber(target);
+		write('"');
+		startTagOpen = true;
+	}
+
+	@Override
+	public void endEdge() throws IOException {
+		endElement(EDGE_END);
+	}
+
+	@Override
+	public void data(String key, Object value) throws IOException {
+		closeStartTagIfOpen();
+		write(DATA_KEY);
+		writeEscaped(key, PLAIN_ATTRIBUTE, true);
+		write('"');
+		write('>');
+		if (value instanceof Integer || value instanceof Long) {
+			writeNumber(((Number) value).longValue());
+		} else if (value instanceof Boolean) {
+			write((Boolean) value ? TRUE : FALSE);
+		} else {
+			writeEscaped(String.valueOf(value), PLAIN_TEXT, false);
+		}
+		write(DATA_END);
+	}
+
+	@Override
+	public void closeStartTag() throws IOException {
+		closeStartTagIfOpen();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.write(buffer, 0, pos);
+		pos = 0;
+		out.flush();
+	}
+}
@@ -0,0 +1,63 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.corpus_tools.peppermodules.script_modules.TestDocuments.assertSameGraph;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SToken;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryGraphTest {
+	private List<SDocument> documents = null;
+
+	@Before
+	public void setFixture() {
+		documents = TestDocuments.create();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryGraphWriter.convertFromSalt(out, documents.get(0));
+
+		List<SDocument> result = BinaryGraphReader.convertToSalt(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(1, result.size());
+		assertSameGraph(documents.get(0).getDocumentGraph(), result.get(0).getDocumentGraph());
+	}
+
+	@Test
+	public void testTypedValues() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryGraphWriter.convertFromSalt(out, documents.get(1));
+
+		SDocumentGraph result = BinaryGraphReader.convertToSalt(new ByteArrayInputStream(out.toByteArray())).get(0)
+				.getDocumentGraph();
+		List<SToken> tokens = result.getSortedTokenByText();
+		assertEquals(42, tokens.get(0).getAnnotation("test", "int").getValue());
+		assertEquals(-7L, tokens.get(1).getAnnotation("test", "long").getValue());
+		assertEquals(0.5, tokens.get(2).getAnnotation("test", "double").getValue());
+		assertEquals(true, tokens.get(3).getAnnotation("test", "boolean").getValue());
+	}
+
+	@Test
+	public void testMapDocumentsByGraphID() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Map<String, SDocument> written = BinaryGraphWriter.writeDocuments(out, documents);
+		assertEquals(2, written.size());
+
+		Map<String, SDocument> result = BinaryGraphReader
+				.convertToSaltByGraphID(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(written.keySet(), result.keySet());
+		for (Map.Entry<String, SDocument> e : written.entrySet()) {
+			assertSameGraph(e.getValue().getDocumentGraph(), result.get(e.getKey()).getDocumentGraph());
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+
+	@Test
+	public void testLimit() throws Exception {
+		assertEquals(1, new ConcurrencyLimiter(0).getLimit());
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(3);
+		for (int i = 0; i < 3; i++) {
+			limiter.acquire();
+		}
+		assertEquals(3, limiter.getAcquisitions());
+		assertEquals(0, limiter.getWaitedAcquisitions());
+		assertEquals(0, limiter.getMaxQueueDepth());
+	}
+
+	@Test(timeout = 10000)
+	public void testBackpressure() throws Exception {
+		int limit = 2;
+		int waiting = limit + 1;
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(limit);
+		for (int i = 0; i < limit; i++) {
+			limiter.acquire();
+		}
+
+		CountDownLatch acquired = new CountDownLatch(waiting);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < waiting; i++) {
+			Thread t = new Thread(() -> {
+				try {
+					limiter.acquire();
+					acquired.countDown();
+					limiter.release();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			t.start();
+			threads.add(t);
+		}
+
+		// all further acquirers are blocked while the limit is reached
+		while (limiter.getQueueDepth() < waiting) {
+			Thread.sleep(10);
+		}
+		assertEquals(waiting, limiter.getQueueDepth());
+		assertEquals(waiting, limiter.getMaxQueueDepth());
+		assertEquals(0, limiter.getWaitedAcquisitions());
+		assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+		for (int i = 0; i < limit; i++) {
+			limiter.release();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(0, acquired.getCount());
+
+		assertEquals(0, limiter.getQueueDepth());
+		assertEquals(waiting, limiter.getMaxQueueDepth());
+		assertEquals(limit + waiting, limiter.getAcquisitions());
+		assertEquals(waiting, limiter.getWaitedAcquisitions());
+		assertTrue(limiter.toString(), limiter.getMaxWaitMillis() >= 100);
+		assertTrue(limiter.toString(), limiter.getTotalWaitMillis() >= waiting * 100);
+		assertTrue(limiter.toString(), limiter.getTotalWaitMillis() >= limiter.getMaxWaitMillis());
+	}
+
+	@Test(timeout = 10000)
+	public void testFairness() throws Exception {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+		for (int round = 0; round < 10; round++) {
+			limiter.acquire();
+			List<String> order = Collections.synchronizedList(new ArrayList<>());
+			Thread waiter = new Thread(() -> {
+				try {
+					limiter.acquire();
+					order.add("waiter");
+					limiter.release();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			waiter.start();
+			while (limiter.getQueueDepth() < 1) {
+				Thread.sleep(1);
+			}
+			// give the waiter time to be queued by the semaphore
+			Thread.sleep(20);
+
+			// a released permit is not taken again before the waiting mapper
+			limiter.release();
+			limiter.acquire();
+			order.add("barger");
+			limiter.release();
+			waiter.join();
+			assertEquals(Arrays.asList("waiter", "barger"), order);
+		}
+	}
+}
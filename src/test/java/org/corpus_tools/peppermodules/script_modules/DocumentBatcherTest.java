@@ -0,0 +1,159 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DocumentBatcherTest {
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private static SDocument createDocument(String name) {
+		SDocument doc = SaltFactory.createSDocument();
+		doc.setName(name);
+		return doc;
+	}
+
+	/**
+	 * Submits the document on another thread and waits until it is pending.
+	 */
+	private Future<?> submitInBackground(DocumentBatcher batcher, SDocument doc,
+			DocumentBatcher.BatchProcessor processor) throws InterruptedException {
+		int pending = batcher.getPending();
+		Future<?> result = executor.submit(() -> {
+			batcher.submit(doc, processor);
+			return null;
+		});
+		while (batcher.getPending() == pending && !result.isDone()) {
+			Thread.sleep(5);
+		}
+		return result;
+	}
+
+	@Test(timeout = 10000)
+	public void testLeaderProcessesForOthers() throws Exception {
+		DocumentBatcher batcher = new DocumentBatcher(3, 60000);
+		List<List<SDocument>> batches = Collections.synchronizedList(new ArrayList<>());
+		List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+		DocumentBatcher.BatchProcessor processor = batch -> {
+			batches.add(new ArrayList<>(batch));
+			threads.add(Thread.currentThread());
+		};
+
+		SDocument doc1 = createDocument("doc1");
+		SDocument doc2 = createDocument("doc2");
+		SDocument doc3 = createDocument("doc3");
+		Future<?> first = submitInBackground(batcher, doc1, processor);
+		Future<?> second = submitInBackground(batcher, doc2, processor);
+		assertEquals(2, batcher.getPending());
+		assertTrue(batches.isEmpty());
+
+		// the document that completes the batch processes it for the others
+		batcher.submit(doc3, processor);
+		first.get();
+		second.get();
+		assertEquals(1, batches.size());
+		assertEquals(3, batches.get(0).size());
+		assertSame(doc1, batches.get(0).get(0));
+		assertSame(doc2, batches.get(0).get(1));
+		assertSame(doc3, batches.get(0).get(2));
+		assertSame(Thread.currentThread(), threads.get(0));
+		assertEquals(0, batcher.getPending());
+	}
+
+	@Test(timeout = 10000)
+	public void testFlushIncompleteBatch() throws Exception {
+		DocumentBatcher batcher = new DocumentBatcher(10, 200);
+		List<List<SDocument>> batches = Collections.synchronizedList(new ArrayList<>());
+		DocumentBatcher.BatchProcessor processor = batch -> batches.add(new ArrayList<>(batch));
+
+		long start = System.currentTimeMillis();
+		Future<?> first = submitInBackground(batcher, createDocument("doc1"), processor);
+		Future<?> second = submitInBackground(batcher, createDocument("doc2"), processor);
+		first.get();
+		second.get();
+		long elapsed = System.currentTimeMillis() - start;
+
+		// the batch is sent incomplete after the first document waited long
+		// enough
+		assertTrue("flushed after " + elapsed + " ms", elapsed >= 200);
+		assertEquals(1, batches.size());
+		assertEquals(2, batches.get(0).size());
+		assertEquals(0, batcher.getPending());
+	}
+
+	@Test(timeout = 10000)
+	public void testLeaderFailure() throws Exception {
+		DocumentBatcher batcher = new DocumentBatcher(3, 60000);
+		DocumentBatcher.BatchProcessor processor = batch -> {
+			throw new IllegalStateException("broken");
+		};
+		Future<?> first = submitInBackground(batcher, createDocument("doc1"), processor);
+		Future<?> second = submitInBackground(batcher, createDocument("doc2"), processor);
+
+		try {
+			batcher.submit(createDocument("doc3"), processor);
+			fail("the failure of the batch was ignored");
+		} catch (PepperModuleException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("doc3"));
+		}
+		// every waiting document fails as well instead of waiting forever
+		for (Future<?> f : new Future<?>[] { first, second }) {
+			try {
+				f.get();
+				fail("the failure of the batch was ignored");
+			} catch (ExecutionException ex) {
+				assertTrue(ex.getCause() instanceof PepperModuleException);
+				assertTrue(ex.getCause().getCause() instanceof IllegalStateException);
+			}
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testPassPepperModuleException() throws Exception {
+		DocumentBatcher batcher = new DocumentBatcher(2, 60000);
+		PepperModuleException failure = new PepperModuleException("script failed");
+		DocumentBatcher.BatchProcessor processor = batch -> {
+			throw failure;
+		};
+		Future<?> first = submitInBackground(batcher, createDocument("doc1"), processor);
+		try {
+			batcher.submit(createDocument("doc2"), processor);
+			fail("the failure of the batch was ignored");
+		} catch (PepperModuleException ex) {
+			assertSame(failure, ex);
+		}
+		try {
+			first.get();
+			fail("the failure of the batch was ignored");
+		} catch (ExecutionException ex) {
+			assertSame(failure, ex.getCause());
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SSpan;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.util.internal.persistence.SaltXML10Handler;
+import org.corpus_tools.salt.util.internal.persistence.SaltXML10Writer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares writing and reading a document in the exchange formats of the
+ * {@link ScriptManipulator}. This is not a unit test, run it with the test
+ * class path and an optional regular expression for the benchmarks to
+ * include as first argument.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExchangeFormatBenchmark {
+
+	@Param({ "20000" })
+	public int tokens;
+
+	private SDocument document;
+	private byte[] graphml;
+	private byte[] saltxml;
+	private byte[] binary;
+
+	@Setup
+	public void createDocument() throws Exception {
+		document = createDocument(tokens);
+		graphml = writeGraphML();
+		saltxml = writeSaltXML();
+		binary = writeBinary();
+	}
+
+	/**
+	 * Creates a document with a token layer with two annotations per token and
+	 * a span for every five tokens.
+	 */
+	public static SDocument createDocument(int numberOfTokens) {
+		SDocument doc = SaltFactory.createSDocument();
+		doc.setName("benchmark");
+		SDocumentGraph g = doc.createDocumentGraph();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < numberOfTokens; i++) {
+			text.append("tok").append(i % 100).append(' ');
+		}
+		List<SToken> tokens = g.createTextualDS(text.toString()).tokenize();
+		String[] pos = { "NN", "VVFIN", "ART", "ADJA", "APPR", "$." };
+		for (int i = 0; i < tokens.size(); i++) {
+			tokens.get(i).createAnnotation("default_ns", "pos", pos[i % pos.length]);
+			tokens.get(i).createAnnotation("default_ns", "lemma", "lemma" + (i % 500));
+			if (i % 5 == 4) {
+				SSpan span = g.createSpan(tokens.subList(i - 4, i + 1));
+				span.createAnnotation("default_ns", "chunk", "NP");
+			}
+		}
+		return doc;
+	}
+
+	@Benchmark
+	public byte[] writeGraphML() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.convertFromSalt(out, document);
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] writeGraphMLDirect() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.writeDocuments(out, Collections.singletonList(document), null, GraphProjection.ALL,
+				new GraphMLKeySchema(), null, GraphMLWriter.Serializer.DIRECT);
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] writeSaltXML() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+		new SaltXML10Writer().writeObjects(xmlWriter, document.getDocumentGraph());
+		xmlWriter.flush();
+		xmlWriter.close();
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] writeBinary() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryGraphWriter.convertFromSalt(out, document);
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public List<SDocument> readGraphML() {
+		return GraphMLReader.convertToSalt(new ByteArrayInputStream(graphml));
+	}
+
+	@Benchmark
+	public Object readSaltXML() throws Exception {
+		SaltXML10Handler saltHandler = new SaltXML10Handler();
+		SAXParser xmlParser = SAXParserFactory.newInstance().newSAXParser();
+		xmlParser.parse(new ByteArrayInputStream(saltxml), saltHandler);
+		return saltHandler.getSaltObject();
+	}
+
+	@Benchmark
+	public List<SDocument> readBinary() {
+		return BinaryGraphReader.convertToSalt(new ByteArrayInputStream(binary));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : ExchangeFormatBenchmark.class.getSimpleName();
+		new Runner(new OptionsBuilder().include(include).build()).run();
+	}
+}
@@ -0,0 +1,171 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.corpus_tools.pepper.exceptions.PepperException;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SSpan;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.core.SNode;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraphDeltaTest {
+	private SDocument doc = null;
+	private Map<String, Object> elementsByID = null;
+
+	@Before
+	public void setFixture() {
+		doc = SaltFactory.createSDocument();
+		doc.setName("doc1");
+		doc.createDocumentGraph();
+		doc.getDocumentGraph().createTextualDS("This is a test .").tokenize();
+
+		elementsByID = new HashMap<>();
+		GraphMLWriter.writeDocuments(new ByteArrayOutputStream(), Collections.singletonList(doc), elementsByID);
+	}
+
+	private String getID(Object element) {
+		for (Map.Entry<String, Object> e : elementsByID.entrySet()) {
+			if (e.getValue() == element) {
+				return e.getKey();
+			}
+		}
+		return null;
+	}
+
+	private static GraphDelta read(String delta) throws IOException {
+		return GraphDelta.read(new ByteArrayInputStream(delta.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void testApplyInPlace() throws IOException {
+		SDocumentGraph g = doc.getDocumentGraph();
+		SToken tok1 = g.getTokens().get(0);
+		SToken tok2 = g.getTokens().get(1);
+		int nodes = g.getNodes().size();
+		int relations = g.getRelations().size();
+
+		GraphDelta delta = read("# comment\n" //
+				+ "SET_LABEL\t" + getID(tok1) + "\tdefault_ns::pos\tstring\tDT\n" //
+				+ "SET_LABEL\t" + getID(tok1) + "\tdefault_ns::pos\tstring\tPDS\n" //
+				+ "ADD_NODE\tn1\t" + getID(g) + "\tSSPAN\n" //
+				+ "SET_LABEL\tn1\tdefault_ns::cat\tstring\tNP\\twith tab\n" //
+				+ "ADD_RELATION\tr1\tn1\t" + getID(tok1) + "\tSSPANNING_RELATION\n" //
+				+ "ADD_RELATION\tr2\tn1\t" + getID(tok2) + "\tSSPANNING_RELATION\n");
+		assertEquals(6, delta.size());
+		delta.apply(elementsByID);
+
+		assertSame(g, doc.getDocumentGraph());
+		assertSame(tok1, g.getTokens().get(0));
+		assertEquals("PDS", tok1.getAnnotation("default_ns::pos").getValue());
+		assertEquals(nodes + 1, g.getNodes().size());
+		assertEquals(relations + 2, g.getRelations().size());
+
+		SSpan span = g.getSpans().get(0);
+		assertSame(span, elementsByID.get("n1"));
+		assertEquals("NP\twith tab", span.getAnnotation("default_ns::cat").getValue());
+		assertEquals("This is", g.getText(span));
+	}
+
+	@Test
+	public void testRemove() throws IOException {
+		SDocumentGraph g = doc.getDocumentGraph();
+		SToken tok1 = g.getTokens().get(0);
+		tok1.createAnnotation("default_ns", "pos", "DT");
+		int relations = g.getRelations().size();
+
+		read("REMOVE_LABEL\t" + getID(tok1) + "\tdefault_ns::pos\n" //
+				+ "REMOVE_RELATION\t" + getID(g.getTextualRelations().get(1)) + "\n").apply(elementsByID);
+		assertNull(tok1.getAnnotation("default_ns::pos"));
+		assertEquals(relations - 1, g.getRelations().size());
+
+		SNode removed = g.getTokens().get(2);
+		read("REMOVE_NODE\t" + getID(removed) + "\n").apply(elementsByID);
+		assertNull(g.getNode(removed.getId()));
+		assertEquals(relations - 2, g.getRelations().size());
+		assertNotNull(g.getNode(tok1.getId()));
+	}
+
+	@Test(expected = PepperException.class)
+	public void testUnknownID() throws IOException {
+		read("REMOVE_NODE\tunknown\n").apply(elementsByID);
+	}
+
+	@Test
+	public void testInvalidChangeLeavesGraphUntouched() throws IOException {
+		SDocumentGraph g = doc.getDocumentGraph();
+		SToken tok1 = g.getTokens().get(0);
+		int nodes = g.getNodes().size();
+		int relations = g.getRelations().size();
+		int ids = elementsByID.size();
+
+		GraphDelta delta = read("SET_LABEL\t" + getID(tok1) + "\tdefault_ns::pos\tstring\tDT\n" //
+				+ "ADD_NODE\tn1\t" + getID(g) + "\tSSPAN\n" //
+				+ "ADD_RELATION\tr1\tn1\t" + getID(tok1) + "\tSSPANNING_RELATION\n" //
+				+ "REMOVE_NODE\t" + getID(g.getTokens().get(1)) + "\n" //
+				+ "SET_LABEL\tn1\tdefault_ns::cat\tint\tNP\n");
+		try {
+			delta.apply(elementsByID);
+			fail("the invalid value was accepted");
+		} catch (PepperException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("line 5"));
+		}
+		assertNull(tok1.getAnnotation("default_ns::pos"));
+		assertEquals(nodes, g.getNodes().size());
+		assertEquals(relations, g.getRelations().size());
+		assertEquals(ids, elementsByID.size());
+	}
+
+	@Test(expected = PepperException.class)
+	public void testRelationToRemovedNode() throws IOException {
+		SDocumentGraph g = doc.getDocumentGraph();
+		read("REMOVE_NODE\t" + getID(g.getTokens().get(0)) + "\n" //
+				+ "ADD_NODE\tn1\t" + getID(g) + "\tSSPAN\n" //
+				+ "ADD_RELATION\tr1\tn1\t" + getID(g.getTokens().get(0)) + "\tSSPANNING_RELATION\n")
+						.apply(elementsByID);
+	}
+
+	@Test
+	public void testRelationEndpointTypes() throws IOException {
+		SDocumentGraph g = doc.getDocumentGraph();
+		int nodes = g.getNodes().size();
+		int relations = g.getRelations().size();
+
+		// a spanning relation from a token to a span is the wrong way round
+		GraphDelta delta = read("ADD_NODE\tn1\t" + getID(g) + "\tSSPAN\n" //
+				+ "ADD_RELATION\tr1\t" + getID(g.getTokens().get(0)) + "\tn1\tSSPANNING_RELATION\n");
+		try {
+			delta.apply(elementsByID);
+			fail("the relation with the wrong endpoints was accepted");
+		} catch (PepperException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("line 2"));
+			assertTrue(ex.getMessage(), ex.getMessage().contains("source of type SSpan"));
+		}
+		assertEquals(nodes, g.getNodes().size());
+		assertEquals(relations, g.getRelations().size());
+	}
+
+	@Test
+	public void testBinaryIDs() throws IOException {
+		Map<String, Object> binaryIDs = new HashMap<>();
+		BinaryGraphWriter.writeDocuments(new ByteArrayOutputStream(), Collections.singletonList(doc), binaryIDs);
+		assertEquals(elementsByID.size(), binaryIDs.size());
+		assertEquals(1, Collections.frequency(binaryIDs.values(), doc.getDocumentGraph()));
+	}
+}
@@ -0,0 +1,143 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.corpus_tools.pepper.common.DOCUMENT_STATUS;
+import org.corpus_tools.pepper.modules.PepperExporter.EXPORT_MODE;
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.peppermodules.script_modules.GraphMLExporter.GraphMLMapper;
+import org.corpus_tools.peppermodules.script_modules.GraphMLWriter.Serializer;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.samples.SampleGenerator;
+import org.eclipse.emf.common.util.URI;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+public class GraphMLExporterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static SDocument createDocument(String name) {
+		SDocument doc = SaltFactory.createSDocument();
+		doc.setName(name);
+		SampleGenerator.createDocumentStructure(doc);
+		return doc;
+	}
+
+	private static DOCUMENT_STATUS export(SDocument doc, File file, Serializer serializer) {
+		return export(doc, file, serializer, false);
+	}
+
+	private static DOCUMENT_STATUS export(SDocument doc, File file, Serializer serializer, boolean compress) {
+		GraphMLMapper mapper = new GraphMLMapper(serializer, compress);
+		mapper.setDocument(doc);
+		mapper.setResourceURI(URI.createFileURI(file.getAbsolutePath()));
+		return mapper.mapSDocument();
+	}
+
+	private static byte[] writeInMemory(SDocument doc) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.writeDocuments(out, Collections.singletonList(doc), null, GraphProjection.ALL,
+				new GraphMLKeySchema(), null, Serializer.DIRECT);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testModule() {
+		GraphMLExporter exporter = new GraphMLExporter();
+		assertEquals("GraphMLExporter", exporter.getName());
+		assertEquals(EXPORT_MODE.DOCUMENTS_IN_FILES, exporter.getExportMode());
+		assertEquals("graphml", exporter.getDocumentEnding());
+		assertEquals("GraphML", exporter.getSupportedFormats().get(0).getFormatName());
+	}
+
+	@Test
+	public void testExport() throws IOException {
+		SDocument doc = createDocument("doc");
+		File file = new File(folder.getRoot(), "corpus/doc.graphml");
+		for (Serializer serializer : Serializer.values()) {
+			assertEquals(DOCUMENT_STATUS.COMPLETED, export(doc, file, serializer));
+			assertArrayEquals(writeInMemory(doc), Files.readAllBytes(file.toPath()));
+		}
+
+		try (InputStream in = new FileInputStream(file)) {
+			List<SDocument> result = GraphMLReader.convertToSalt(in);
+			assertEquals(1, result.size());
+			assertEquals(doc.getDocumentGraph().getNodes().size(),
+					result.get(0).getDocumentGraph().getNodes().size());
+		}
+	}
+
+	@Test
+	public void testCompressedExport() throws IOException {
+		SDocument doc = createDocument("doc");
+		File file = new File(folder.getRoot(), "doc.graphml.gz");
+		assertEquals(DOCUMENT_STATUS.COMPLETED, export(doc, file, Serializer.DIRECT, true));
+		try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+			assertArrayEquals(writeInMemory(doc), ByteStreams.toByteArray(in));
+		}
+		try (InputStream in = new FileInputStream(file)) {
+			assertEquals(doc.getDocumentGraph().getNodes().size(),
+					GraphMLReader.convertToSalt(in).get(0).getDocumentGraph().getNodes().size());
+		}
+
+		GraphMLExporter exporter = new GraphMLExporter();
+		exporter.getProperties().setPropertyValue("compress", true);
+		assertEquals("graphml.gz", exporter.getDocumentEnding());
+	}
+
+	@Test
+	public void testParallelExport() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<SDocument> docs = new ArrayList<>();
+			List<Future<DOCUMENT_STATUS>> results = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				SDocument doc = createDocument("doc" + i);
+				File file = new File(folder.getRoot(), doc.getName() + ".graphml");
+				docs.add(doc);
+				results.add(executor.submit(() -> export(doc, file, Serializer.DIRECT)));
+			}
+			for (int i = 0; i < docs.size(); i++) {
+				assertEquals(DOCUMENT_STATUS.COMPLETED, results.get(i).get());
+				File file = new File(folder.getRoot(), docs.get(i).getName() + ".graphml");
+				assertArrayEquals(writeInMemory(docs.get(i)), Files.readAllBytes(file.toPath()));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testUnwritableFile() throws IOException {
+		File directory = folder.newFolder("doc.graphml");
+		try {
+			export(createDocument("doc"), directory, Serializer.DIRECT);
+			fail("a directory was overwritten");
+		} catch (PepperModuleException ex) {
+			assertTrue(ex.getCause() instanceof IOException);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.corpus_tools.pepper.common.CorpusDesc;
+import org.corpus_tools.pepper.common.DOCUMENT_STATUS;
+import org.corpus_tools.pepper.modules.PepperMapper;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SCorpusGraph;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.samples.SampleGenerator;
+import org.eclipse.emf.common.util.URI;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GraphMLImporterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static SDocument createDocument(int tokens) {
+		SDocument doc = SaltFactory.createSDocument();
+		doc.createDocumentGraph();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < tokens; i++) {
+			text.append("token").append(i).append(' ');
+		}
+		doc.getDocumentGraph().createTextualDS(text.toString()).tokenize();
+		return doc;
+	}
+
+	private void write(String name, List<SDocument> docs) throws IOException {
+		OutputStream file = Files.newOutputStream(new File(folder.getRoot(), name).toPath());
+		try (OutputStream out = name.endsWith(".gz") ? GraphMLWriter.compress(file, ForkJoinPool.commonPool())
+				: file) {
+			GraphMLWriter.writeDocuments(out, docs, null, GraphProjection.ALL, new GraphMLKeySchema(), null,
+					GraphMLWriter.Serializer.DIRECT);
+		}
+	}
+
+	@Test
+	public void testImport() throws Exception {
+		SDocument single = SaltFactory.createSDocument();
+		SampleGenerator.createDocumentStructure(single);
+		List<SDocument> singleFile = new ArrayList<>();
+		singleFile.add(single);
+		write("single.graphml", singleFile);
+		List<SDocument> multiFile = new ArrayList<>();
+		for (int i = 1; i <= 3; i++) {
+			multiFile.add(createDocument(i * 10));
+		}
+		write("multi.graphml", multiFile);
+		write("compressed.graphml.gz", multiFile);
+		// other compressed files are ignored
+		try (OutputStream out = new GZIPOutputStream(
+				Files.newOutputStream(new File(folder.getRoot(), "notes.txt.gz").toPath()))) {
+			out.write("no GraphML".getBytes(StandardCharsets.UTF_8));
+		}
+
+		GraphMLImporter importer = new GraphMLImporter();
+		importer.setCorpusDesc(
+				new CorpusDesc.Builder().withCorpusPath(URI.createFileURI(folder.getRoot().getAbsolutePath())).build());
+		assertEquals(1.0, importer.isImportable(importer.getCorpusDesc().getCorpusPath()), 0.0);
+		importer.setSaltProject(SaltFactory.createSaltProject());
+		SCorpusGraph corpusGraph = importer.getSaltProject().createCorpusGraph();
+		importer.importCorpusStructure(corpusGraph);
+
+		Map<String, Integer> expectedNodes = new HashMap<>();
+		expectedNodes.put("single", single.getDocumentGraph().getNodes().size());
+		expectedNodes.put("multi", multiFile.get(0).getDocumentGraph().getNodes().size());
+		expectedNodes.put("multi_2", multiFile.get(1).getDocumentGraph().getNodes().size());
+		expectedNodes.put("multi_3", multiFile.get(2).getDocumentGraph().getNodes().size());
+		expectedNodes.put("compressed", multiFile.get(0).getDocumentGraph().getNodes().size());
+		expectedNodes.put("compressed_2", multiFile.get(1).getDocumentGraph().getNodes().size());
+		expectedNodes.put("compressed_3", multiFile.get(2).getDocumentGraph().getNodes().size());
+		assertEquals(expectedNodes.size(), corpusGraph.getDocuments().size());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<DOCUMENT_STATUS>> results = new ArrayList<>();
+			for (SDocument doc : corpusGraph.getDocuments()) {
+				PepperMapper mapper = importer.createPepperMapper(doc.getIdentifier());
+				mapper.setDocument(doc);
+				results.add(executor.submit(mapper::mapSDocument));
+			}
+			for (Future<DOCUMENT_STATUS> result : results) {
+				assertEquals(DOCUMENT_STATUS.COMPLETED, result.get());
+			}
+		} finally {
+			executor.shutdown();
+			importer.end();
+		}
+		for (SDocument doc : corpusGraph.getDocuments()) {
+			assertNotNull(doc.getName(), expectedNodes.get(doc.getName()));
+			assertEquals(expectedNodes.get(doc.getName()).intValue(), doc.getDocumentGraph().getNodes().size());
+			assertSame(doc, doc.getDocumentGraph().getDocument());
+		}
+	}
+
+	@Test
+	public void testImportableCompressed() throws Exception {
+		List<SDocument> docs = new ArrayList<>();
+		docs.add(createDocument(10));
+		write("compressed.graphml.gz", docs);
+
+		// the compressed files are sampled as well
+		GraphMLImporter importer = new GraphMLImporter();
+		URI corpusPath = URI.createFileURI(folder.getRoot().getAbsolutePath());
+		assertEquals(1.0, importer.isImportable(corpusPath), 0.0);
+
+		try (OutputStream out = new GZIPOutputStream(
+				Files.newOutputStream(new File(folder.getRoot(), "other.graphml.gz").toPath()))) {
+			out.write("no GraphML".getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals(0.0, importer.isImportable(corpusPath), 0.0);
+	}
+}
@@ -0,0 +1,75 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.corpus_tools.salt.common.SDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares writing a batch of documents as GraphML with a key schema that is
+ * collected from the documents before they are written, which traverses them
+ * twice, and with a schema that grows while they are written. This is not a
+ * unit test, run it with the test class path like the
+ * {@link ExchangeFormatBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphMLKeySchemaBenchmark {
+
+	@Param({ "1", "20" })
+	public int documents;
+
+	@Param({ "5000" })
+	public int tokens;
+
+	private List<SDocument> batch;
+
+	@Setup
+	public void createDocuments() {
+		batch = new ArrayList<>();
+		for (int i = 0; i < documents; i++) {
+			batch.add(ExchangeFormatBenchmark.createDocument(tokens));
+		}
+	}
+
+	@Benchmark
+	public byte[] writeCollectedSchema() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.writeDocuments(out, batch, null, GraphProjection.ALL,
+				GraphMLKeySchema.collect(batch, GraphProjection.ALL), null, GraphMLWriter.Serializer.DIRECT);
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] writeGrowingSchema() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.writeDocuments(out, batch, null, GraphProjection.ALL, new GraphMLKeySchema(), null,
+				GraphMLWriter.Serializer.DIRECT);
+		return out.toByteArray();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : GraphMLKeySchemaBenchmark.class.getSimpleName();
+		new Runner(new OptionsBuilder().include(include).build()).run();
+	}
+}
@@ -0,0 +1,52 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.corpus_tools.salt.common.SDocument;
+
+/**
+ * Compares the heap that is retained by a document which was read from
+ * GraphML with and without the deduplication of label values. The number of
+ * tokens of the document created by
+ * {@link ExchangeFormatBenchmark#createDocument(int)} can be given as
+ * argument.
+ */
+public class GraphMLMemoryReport {
+
+	private static long usedMemory() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long retainedMemory(byte[] graphml, boolean deduplicate) throws InterruptedException {
+		long before = usedMemory();
+		List<SDocument> docs = GraphMLReader.convertToSalt(new ByteArrayInputStream(graphml), deduplicate);
+		long after = usedMemory();
+		if (docs.isEmpty()) {
+			throw new IllegalStateException("No document was read");
+		}
+		return after - before;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int tokens = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.convertFromSalt(out, ExchangeFormatBenchmark.createDocument(tokens));
+		byte[] graphml = out.toByteArray();
+
+		// the first read loads the classes
+		retainedMemory(graphml, false);
+		long plain = retainedMemory(graphml, false);
+		long deduplicated = retainedMemory(graphml, true);
+		System.out.printf("tokens: %d, GraphML: %.1f MB%n", tokens, graphml.length / 1e6);
+		System.out.printf("retained without deduplication: %.1f MB%n", plain / 1e6);
+		System.out.printf("retained with deduplication:    %.1f MB (%.1f%%)%n", deduplicated / 1e6,
+				100.0 * (deduplicated - plain) / plain);
+	}
+}
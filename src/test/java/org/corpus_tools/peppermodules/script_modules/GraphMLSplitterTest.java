@@ -0,0 +1,97 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.samples.SampleGenerator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GraphMLSplitterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<SDocument> read(GraphMLSplitter splitter, int graph) throws IOException {
+		try (InputStream in = splitter.open(graph)) {
+			return GraphMLReader.convertToSalt(in);
+		}
+	}
+
+	private File write(String content) throws IOException {
+		File file = folder.newFile();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@Test
+	public void testSplitDocuments() throws IOException {
+		List<SDocument> docs = new ArrayList<>();
+		SDocument doc = SaltFactory.createSDocument();
+		SampleGenerator.createDocumentStructure(doc);
+		docs.add(doc);
+		// the annotations of the later documents add keys between the graphs
+		for (int i = 0; i < 3; i++) {
+			SDocument next = SaltFactory.createSDocument();
+			next.createDocumentGraph();
+			next.getDocumentGraph().createTextualDS("Document number " + i).tokenize();
+			next.getDocumentGraph().getTokens().get(0).createAnnotation("test", "key" + i, i);
+			docs.add(next);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.writeDocuments(out, docs, null, GraphProjection.ALL, new GraphMLKeySchema(), null,
+				GraphMLWriter.Serializer.DIRECT);
+		File file = folder.newFile();
+		Files.write(file.toPath(), out.toByteArray());
+
+		GraphMLSplitter splitter = GraphMLSplitter.scan(file);
+		assertEquals(docs.size(), splitter.size());
+		for (int i = 0; i < docs.size(); i++) {
+			List<SDocument> result = read(splitter, i);
+			assertEquals(1, result.size());
+			assertEquals(docs.get(i).getDocumentGraph().getNodes().size(),
+					result.get(0).getDocumentGraph().getNodes().size());
+			if (i > 0) {
+				assertEquals(i - 1, result.get(0).getDocumentGraph().getTokens().get(0)
+						.getAnnotation("test::key" + (i - 1)).getValue());
+			}
+		}
+	}
+
+	@Test
+	public void testMarkup() throws IOException {
+		File file = write("<?xml version='1.0' encoding='UTF-8'?>\n"
+				+ "<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">"
+				+ "<key id=\"k0\" for=\"all\" attr.name=\"salt::type\" attr.type=\"string\"/>"
+				+ "<!-- <graph id=\"commented\"> -->"
+				+ "<graph id=\"a\" edgedefault=\"directed\" label=\"/>\">"
+				+ "<node id=\"n\"><data key=\"k0\"><![CDATA[STOKEN]]></data></node>"
+				+ "<node id=\"nested\"><graph id=\"inner\"></graph></node>"
+				+ "</graph>\n<graph id=\"b\"/>\n</graphml>");
+		GraphMLSplitter splitter = GraphMLSplitter.scan(file);
+		assertEquals(2, splitter.size());
+		assertEquals(1, read(splitter, 0).get(0).getDocumentGraph().getNodes().size());
+		assertEquals(0, read(splitter, 1).get(0).getDocumentGraph().getNodes().size());
+	}
+
+	@Test
+	public void testWithoutGraphs() throws IOException {
+		File file = write("<?xml version='1.0' encoding='UTF-8'?>\n"
+				+ "<g:graphml xmlns:g=\"http://graphml.graphdrawing.org/xmlns\">"
+				+ "<g:graph id=\"a\" edgedefault=\"directed\"></g:graph></g:graphml>");
+		GraphMLSplitter splitter = GraphMLSplitter.scan(file);
+		assertEquals(1, splitter.size());
+		assertEquals(1, read(splitter, 0).size());
+	}
+}
@@ -0,0 +1,339 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.corpus_tools.peppermodules.script_modules.TestDocuments.assertSameGraph;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.corpus_tools.salt.SALT_TYPE;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.samples.SampleGenerator;
+import org.eclipse.emf.common.util.URI;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraphMLTest {
+	private List<SDocument> documents = null;
+
+	@Before
+	public void setFixture() {
+		documents = TestDocuments.create();
+	}
+
+	@Test
+	public void testRoundTrip() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.convertFromSalt(out, documents.get(0));
+
+		List<SDocument> result = GraphMLReader.convertToSalt(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(1, result.size());
+		assertSameGraph(documents.get(0).getDocumentGraph(), result.get(0).getDocumentGraph());
+	}
+
+	@Test
+	public void testMapDocumentsByGraphID() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Map<String, SDocument> written = GraphMLWriter.writeDocuments(out, documents);
+		assertEquals(2, written.size());
+
+		Map<String, SDocument> result = GraphMLReader
+				.convertToSaltByGraphID(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(written.keySet(), result.keySet());
+		for (Map.Entry<String, SDocument> e : written.entrySet()) {
+			assertSameGraph(e.getValue().getDocumentGraph(), result.get(e.getKey()).getDocumentGraph());
+		}
+		assertEquals(Arrays.asList(documents.get(0), documents.get(1)), new ArrayList<>(written.values()));
+	}
+
+	@Test
+	public void testEdgeBeforeNodes() {
+		String graphml = "<?xml version=\"1.0\"?>\n" //
+				+ "<graphml xmlns=\"" + GraphMLWriter.NS + "\">\n" //
+				+ "<key id=\"k0\" attr.name=\"salt::type\" for=\"all\" attr.type=\"string\"/>\n" //
+				+ "<key id=\"k1\" attr.name=\"default_ns::cat\" for=\"all\" attr.type=\"string\"/>\n" //
+				+ "<graph id=\"g\" edgedefault=\"directed\">\n" //
+				+ "<node id=\"n1\"><data key=\"k0\">SSTRUCTURE</data></node>\n" //
+				+ "<edge id=\"e1\" source=\"n1\" target=\"n2\"><data key=\"k0\">SDOMINANCE_RELATION</data>"
+				+ "<data key=\"k1\">x</data></edge>\n" //
+				+ "<edge id=\"e2\" source=\"n1\" target=\"missing\"><data key=\"k0\">SDOMINANCE_RELATION</data></edge>\n" //
+				+ "<node id=\"n2\"><data key=\"k0\">SSTRUCTURE</data></node>\n" //
+				+ "</graph>\n" //
+				+ "</graphml>\n";
+		List<SDocument> result = GraphMLReader
+				.convertToSalt(new ByteArrayInputStream(graphml.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(1, result.size());
+		SDocumentGraph g = result.get(0).getDocumentGraph();
+		assertEquals(2, g.getNodes().size());
+		assertEquals(1, g.getRelations().size());
+		assertEquals("x", g.getRelations().get(0).getAnnotation("default_ns::cat").getValue());
+	}
+
+	@Test
+	public void testKeyTable() {
+		String graphml = "<?xml version=\"1.0\"?>\n" //
+				+ "<graphml xmlns=\"" + GraphMLWriter.NS + "\">\n" //
+				+ "<key id=\"k0\" attr.name=\"salt::type\" for=\"all\" attr.type=\"string\"/>\n" //
+				+ "<key id=\"k1\" attr.name=\"test::int\" for=\"all\" attr.type=\"Int\"/>\n" //
+				+ "<key id=\"k2\" attr.name=\"test::double\" for=\"node\" attr.type=\"double\"/>\n" //
+				+ "<key id=\"k3\" attr.name=\"test::edge\" for=\"edge\" attr.type=\"boolean\"/>\n" //
+				+ "<key id=\"k4\" attr.name=\"salt::SNAME\" for=\"all\" attr.type=\"string\"/>\n" //
+				+ "<key id=\"k5\" attr.name=\"salt::SDATA\" for=\"all\" attr.type=\"int\"/>\n" //
+				+ "<key id=\"k6\" attr.name=\"unknown\" for=\"all\" attr.type=\"date\"/>\n" //
+				+ "<key id=\"k1\" attr.name=\"test::redeclared\" for=\"all\" attr.type=\"string\"/>\n" //
+				+ "<graph id=\"g\" edgedefault=\"directed\">\n" //
+				+ "<node id=\"n1\"><data key=\"k0\">STOKEN</data><data key=\"k1\">-3</data>"
+				+ "<data key=\"k2\">0.5</data><data key=\"k3\">true</data><data key=\"k4\">tok</data>"
+				+ "<data key=\"k5\">7</data><data key=\"k6\">today</data><data key=\"k9\">x</data></node>\n" //
+				+ "<node id=\"n2\"><data key=\"k0\">STIMELINE</data><data key=\"k5\">7</data></node>\n" //
+				+ "<edge id=\"e1\" source=\"n1\" target=\"n1\"><data key=\"k0\">SPOINTING_RELATION</data>"
+				+ "<data key=\"k2\">0.5</data><data key=\"k3\">true</data></edge>\n" //
+				+ "</graph>\n" //
+				+ "</graphml>\n";
+		SDocumentGraph g = GraphMLReader
+				.convertToSalt(new ByteArrayInputStream(graphml.getBytes(StandardCharsets.UTF_8))).get(0)
+				.getDocumentGraph();
+
+		SToken tok = g.getTokens().get(0);
+		assertEquals("tok", tok.getName());
+		assertEquals(-3, tok.getAnnotation("test::int").getValue());
+		assertEquals(0.5, tok.getAnnotation("test::double").getValue());
+		assertNull(tok.getAnnotation("test::edge"));
+		assertNull(tok.getAnnotation("test::redeclared"));
+		// labels in the salt namespace are features
+		assertEquals(7, tok.getFeature("salt::SDATA").getValue());
+		assertNull(tok.getAnnotation("unknown").getValue());
+		assertEquals(7, g.getTimeline().getEnd().intValue());
+
+		assertEquals(Boolean.TRUE, g.getRelations().get(0).getAnnotation("test::edge").getValue());
+		assertNull(g.getRelations().get(0).getAnnotation("test::double"));
+	}
+
+	@Test
+	public void testDeduplication() {
+		SDocument doc = SaltFactory.createSDocument();
+		doc.createDocumentGraph();
+		doc.getDocumentGraph().createTextualDS("a b c d").tokenize();
+		char[] chars = new char[100];
+		Arrays.fill(chars, 'x');
+		String longValue = new String(chars);
+		for (SToken tok : doc.getDocumentGraph().getTokens()) {
+			tok.createAnnotation("test", "pos", "NN");
+			tok.createAnnotation("test", "escaped", "a<b&c");
+			tok.createAnnotation("test", "long", longValue);
+		}
+		byte[] graphml = write(Collections.singletonList(doc), new GraphMLKeySchema())
+				.getBytes(StandardCharsets.UTF_8);
+
+		List<SToken> tokens = GraphMLReader.convertToSalt(new ByteArrayInputStream(graphml)).get(0)
+				.getDocumentGraph().getTokens();
+		assertEquals("NN", tokens.get(0).getAnnotation("test::pos").getValue());
+		assertSame(tokens.get(0).getAnnotation("test::pos").getValue(),
+				tokens.get(3).getAnnotation("test::pos").getValue());
+		assertEquals("a<b&c", tokens.get(0).getAnnotation("test::escaped").getValue());
+		assertSame(tokens.get(0).getAnnotation("test::escaped").getValue(),
+				tokens.get(3).getAnnotation("test::escaped").getValue());
+		assertEquals(longValue, tokens.get(0).getAnnotation("test::long").getValue());
+		assertNotSame(tokens.get(0).getAnnotation("test::long").getValue(),
+				tokens.get(3).getAnnotation("test::long").getValue());
+
+		tokens = GraphMLReader.convertToSalt(new ByteArrayInputStream(graphml), false).get(0).getDocumentGraph()
+				.getTokens();
+		assertEquals("NN", tokens.get(3).getAnnotation("test::pos").getValue());
+		assertNotSame(tokens.get(0).getAnnotation("test::pos").getValue(),
+				tokens.get(3).getAnnotation("test::pos").getValue());
+	}
+
+	private static String write(List<SDocument> docs, GraphMLKeySchema schema) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.writeDocuments(out, docs, null, GraphProjection.ALL, schema);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testGrowingKeySchema() {
+		// the second document has labels the first one does not use, which
+		// are still declared before the first graph when the schema grows
+		// while the documents are written
+		List<SDocument> docs = Arrays.asList(documents.get(1), documents.get(0));
+		String growing = write(docs, new GraphMLKeySchema());
+		String collected = write(docs, GraphMLKeySchema.collect(docs, GraphProjection.ALL));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.writeDocuments(out, docs, null);
+		String list = new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+		assertTrue(growing.lastIndexOf("<key ") < growing.indexOf("<graph "));
+		assertTrue(collected.lastIndexOf("<key ") < collected.indexOf("<graph "));
+		assertEquals(collected, growing);
+		assertEquals(growing, list);
+
+		for (String graphml : Arrays.asList(growing, collected)) {
+			List<SDocument> result = GraphMLReader
+					.convertToSalt(new ByteArrayInputStream(graphml.getBytes(StandardCharsets.UTF_8)));
+			assertEquals(2, result.size());
+			assertSameGraph(docs.get(0).getDocumentGraph(), result.get(0).getDocumentGraph());
+			assertSameGraph(docs.get(1).getDocumentGraph(), result.get(1).getDocumentGraph());
+		}
+	}
+
+	@Test
+	public void testCompleteKeySchema() {
+		GraphMLKeySchema schema = GraphMLKeySchema.collect(documents, GraphProjection.ALL);
+		int keys = schema.size();
+		assertEquals(GraphMLKeySchema.SALT_TYPE, schema.getName(0));
+
+		// a schema that is complete is not extended and yields the same output
+		String first = write(documents, schema);
+		assertEquals(keys, schema.size());
+		assertEquals(first, write(documents, schema));
+		assertEquals(first, write(documents, GraphMLKeySchema.collect(documents, GraphProjection.ALL)));
+		assertTrue(schema.isComplete());
+		assertTrue(first.lastIndexOf("<key ") < first.indexOf("<graph "));
+	}
+
+	@Test
+	public void testIncompleteKeySchema() throws Exception {
+		// the graphs of a complete schema are written directly, so a key that
+		// is missing could not be declared before its graph anymore
+		GraphMLKeySchema schema = GraphMLKeySchema.collect(Collections.singletonList(documents.get(1)),
+				GraphProjection.ALL);
+		assertTrue(schema.isComplete());
+		try {
+			GraphMLWriter.write(new ByteArrayOutputStream(), Arrays.asList(documents.get(1), documents.get(0)), null,
+					GraphProjection.ALL, schema, null, GraphMLWriter.Serializer.STAX, new HashMap<>());
+			fail("the key schema was not complete");
+		} catch (IOException ex) {
+			assertFalse(schema.isComplete());
+		}
+	}
+
+	@Test
+	public void testStreamDocuments() {
+		// every document is only created when it is requested
+		Iterable<SDocument> docs = () -> Collections.nCopies(3, "doc").stream().map(name -> {
+			SDocument doc = SaltFactory.createSDocument();
+			doc.setName(name);
+			SampleGenerator.createDocumentStructure(doc);
+			return doc;
+		}).iterator();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Map<String, SDocument> written = GraphMLWriter.writeDocuments(out, docs, null, GraphProjection.ALL,
+				new GraphMLKeySchema());
+		assertEquals(3, written.size());
+
+		List<SDocument> result = GraphMLReader.convertToSalt(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(3, result.size());
+		for (SDocument doc : result) {
+			assertSameGraph(documents.get(0).getDocumentGraph(), doc.getDocumentGraph());
+		}
+	}
+
+	private static SDocument createLargeDocument(int tokens) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < tokens; i++) {
+			text.append("token").append(i).append(' ');
+		}
+		SDocument doc = SaltFactory.createSDocument();
+		doc.setName("large");
+		doc.createDocumentGraph();
+		doc.getDocumentGraph().createTextualDS(text.toString()).tokenize();
+		return doc;
+	}
+
+	@Test
+	public void testElementIDs() {
+		// enough elements to grow the ID table several times
+		SDocument doc = createLargeDocument(5000);
+		SDocumentGraph g = doc.getDocumentGraph();
+
+		Map<String, Object> elementsByID = new HashMap<>();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Map<String, SDocument> written = GraphMLWriter.writeDocuments(out, Arrays.asList(doc), elementsByID);
+		assertEquals(1 + g.getNodes().size() + g.getRelations().size(), elementsByID.size());
+		String graphID = written.keySet().iterator().next();
+		assertSame(g, elementsByID.get(graphID));
+		for (Map.Entry<String, Object> e : elementsByID.entrySet()) {
+			assertTrue(e.getKey(), e.getKey().matches("_[0-9]+"));
+			assertTrue(e.getValue() == g || g.getNodes().contains(e.getValue())
+					|| g.getRelations().contains(e.getValue()));
+		}
+
+		List<SDocument> result = GraphMLReader.convertToSalt(new ByteArrayInputStream(out.toByteArray()));
+		assertSameGraph(g, result.get(0).getDocumentGraph());
+	}
+
+	@Test
+	public void testTypeResolution() {
+		SDocumentGraph g = documents.get(0).getDocumentGraph();
+		assertEquals(SALT_TYPE.STOKEN, GraphMLWriter.getSaltType(g.getTokens().get(0).getClass()));
+		assertEquals(SALT_TYPE.STEXTUAL_RELATION, GraphMLWriter.getSaltType(g.getTextualRelations().get(0).getClass()));
+		// the cached result is the same
+		assertEquals(SALT_TYPE.STOKEN, GraphMLWriter.getSaltType(g.getTokens().get(1).getClass()));
+		assertNull(GraphMLWriter.getSaltType(String.class));
+
+		assertEquals("int", GraphMLWriter.getType(1));
+		assertEquals("string", GraphMLWriter.getType("a"));
+		assertEquals("string", GraphMLWriter.getType(URI.createURI("a:b")));
+		assertNull(GraphMLWriter.getType(new Object()));
+		assertNull(GraphMLWriter.getType(null));
+	}
+
+	@Test
+	public void testParallelWriter() {
+		List<SDocument> docs = new ArrayList<>();
+		docs.add(documents.get(1));
+		for (int i = 0; i < 20; i++) {
+			SDocument doc = SaltFactory.createSDocument();
+			doc.setName("doc" + i);
+			SampleGenerator.createDocumentStructure(doc);
+			// a label that only this document uses
+			doc.getDocumentGraph().getTokens().get(0).createAnnotation("test", "only" + i, i);
+			docs.add(doc);
+		}
+		// no nodes, so it is not written
+		SDocument empty = SaltFactory.createSDocument();
+		empty.createDocumentGraph();
+		docs.add(empty);
+		// large enough to be written in several chunks
+		docs.add(createLargeDocument(GraphMLWriter.CHUNK_SIZE));
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Map<String, Object> sequentialElements = new HashMap<>();
+			ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+			Map<String, SDocument> sequentialGraphs = GraphMLWriter.writeDocuments(sequential, docs,
+					sequentialElements, GraphProjection.ALL, new GraphMLKeySchema(), null);
+
+			Map<String, Object> parallelElements = new HashMap<>();
+			ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+			Map<String, SDocument> parallelGraphs = GraphMLWriter.writeDocuments(parallel, docs, parallelElements,
+					GraphProjection.ALL, new GraphMLKeySchema(), pool);
+
+			assertEquals(new String(sequential.toByteArray(), StandardCharsets.UTF_8),
+					new String(parallel.toByteArray(), StandardCharsets.UTF_8));
+			assertEquals(docs.size() - 1, parallelGraphs.size());
+			assertEquals(new ArrayList<>(sequentialGraphs.entrySet()), new ArrayList<>(parallelGraphs.entrySet()));
+			assertEquals(sequentialElements, parallelElements);
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SSpan;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.core.SNode;
+import org.corpus_tools.salt.samples.SampleGenerator;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraphProjectionTest {
+	private SDocument doc = null;
+	private GraphProjection projection = GraphProjection.parse("STEXTUAL_DS, STOKEN", null, "pos");
+
+	@Before
+	public void setFixture() {
+		doc = SaltFactory.createSDocument();
+		doc.setName("doc1");
+		SampleGenerator.createDocumentStructure(doc);
+		for (SToken t : doc.getDocumentGraph().getTokens()) {
+			t.createAnnotation("default_ns", "pos", "NN");
+			t.createAnnotation("default_ns", "lemma", "lemma");
+		}
+	}
+
+	private SDocumentGraph sendProjection() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.writeDocuments(out, Collections.singletonList(doc), null, projection);
+		List<SDocument> result = GraphMLReader.convertToSalt(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(1, result.size());
+		return result.get(0).getDocumentGraph();
+	}
+
+	@Test
+	public void testProjection() {
+		SDocumentGraph g = doc.getDocumentGraph();
+		SDocumentGraph sent = sendProjection();
+		assertEquals(g.getTokens().size() + g.getTextualDSs().size(), sent.getNodes().size());
+		assertEquals(g.getTextualRelations().size(), sent.getRelations().size());
+		SToken tok = sent.getTokens().get(0);
+		assertEquals("NN", tok.getAnnotation("default_ns::pos").getValue());
+		assertNull(tok.getAnnotation("default_ns::lemma"));
+		assertEquals(g.getTokens().get(0).getId(), tok.getId());
+	}
+
+	@Test
+	public void testMerge() {
+		SDocumentGraph g = doc.getDocumentGraph();
+		int nodes = g.getNodes().size();
+		int relations = g.getRelations().size();
+		int spans = g.getSpans().size();
+
+		// what a script might do with the projection
+		SDocumentGraph result = sendProjection();
+		List<SToken> tokens = result.getSortedTokenByText();
+		tokens.get(0).getAnnotation("default_ns::pos").setValue("PDS");
+		tokens.get(0).createAnnotation("x", "new", "value");
+		tokens.get(1).removeLabel("default_ns::pos");
+		SSpan span = result.createSpan(tokens.get(0));
+		span.createAnnotation("x", "cat", "NP");
+
+		projection.merge(g, result);
+
+		List<SToken> originalTokens = g.getSortedTokenByText();
+		assertEquals("PDS", originalTokens.get(0).getAnnotation("default_ns::pos").getValue());
+		assertEquals("value", originalTokens.get(0).getAnnotation("x::new").getValue());
+		assertEquals("lemma", originalTokens.get(0).getAnnotation("default_ns::lemma").getValue());
+		assertNull(originalTokens.get(1).getAnnotation("default_ns::pos"));
+		assertEquals("lemma", originalTokens.get(1).getAnnotation("default_ns::lemma").getValue());
+
+		assertEquals(nodes + 1, g.getNodes().size());
+		assertEquals(relations + 1, g.getRelations().size());
+		assertEquals(spans + 1, g.getSpans().size());
+		boolean found = false;
+		for (SSpan s : g.getSpans()) {
+			if (s.getAnnotation("x::cat") != null) {
+				found = true;
+				assertEquals(Collections.singletonList(originalTokens.get(0)), g.getOverlappedTokens(s));
+			}
+		}
+		assertTrue(found);
+	}
+
+	@Test
+	public void testMergeRemovesOnlyProjectedNodes() {
+		SDocumentGraph g = doc.getDocumentGraph();
+		int nodes = g.getNodes().size();
+
+		SDocumentGraph result = sendProjection();
+		SToken removed = result.getSortedTokenByText().get(0);
+		String removedID = removed.getId();
+		result.removeNode(removed);
+
+		projection.merge(g, result);
+		assertNull(g.getNode(removedID));
+		assertEquals(nodes - 1, g.getNodes().size());
+		for (SNode n : g.getNodes()) {
+			assertFalse(removedID.equals(n.getId()));
+		}
+	}
+
+	@Test
+	public void testMergeReusesLeftOutNodes() {
+		SDocumentGraph g = doc.getDocumentGraph();
+		int nodes = g.getNodes().size();
+		SSpan original = g.getSpans().get(0);
+		int labels = original.getLabels().size();
+
+		// the script returns a span with the ID of one it did not get
+		SDocumentGraph result = sendProjection();
+		SSpan span = result.createSpan(result.getSortedTokenByText().get(0));
+		span.setId(original.getId());
+		span.createAnnotation("x", "cat", "NP");
+
+		projection.merge(g, result);
+		assertEquals(nodes, g.getNodes().size());
+		assertEquals("NP", original.getAnnotation("x::cat").getValue());
+		// the labels the script did not see are kept
+		assertEquals(labels + 1, original.getLabels().size());
+	}
+
+	@Test
+	public void testBinaryProjection() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryGraphWriter.writeDocuments(out, Collections.singletonList(doc), null, projection);
+		SDocumentGraph sent = BinaryGraphReader.convertToSalt(new ByteArrayInputStream(out.toByteArray())).get(0)
+				.getDocumentGraph();
+		assertEquals(sendProjection().getNodes().size(), sent.getNodes().size());
+		assertNull(sent.getTokens().get(0).getAnnotation("default_ns::lemma"));
+	}
+}
@@ -0,0 +1,101 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.samples.SampleGenerator;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JSR223ScriptTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void checkEngine() {
+		Assume.assumeNotNull(new ScriptEngineManager().getEngineByExtension("js"));
+	}
+
+	private File createScript(String source) throws IOException {
+		File file = folder.newFile("script.js");
+		Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static SDocument createDocument() {
+		SDocument doc = SaltFactory.createSDocument();
+		doc.setName("doc1");
+		SampleGenerator.createDocumentStructure(doc);
+		return doc;
+	}
+
+	@Test
+	public void testManipulateGraph() throws Exception {
+		JSR223Script script = JSR223Script.create(createScript(
+				"var tokens = graph.getTokens();\n" + "for (var i = 0; i < tokens.size(); i++) {\n"
+						+ "  tokens.get(i).createAnnotation('test', 'arg', args);\n" + "}\n"));
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<SDocument>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(() -> {
+				SDocument doc = createDocument();
+				SDocumentGraph graph = doc.getDocumentGraph();
+				assertSame(graph, script.execute(doc, "value"));
+				return doc;
+			}));
+		}
+		for (Future<SDocument> result : results) {
+			for (SToken tok : result.get().getDocumentGraph().getTokens()) {
+				assertEquals("value", tok.getAnnotation("test::arg").getValue());
+			}
+		}
+		executor.shutdown();
+	}
+
+	@Test
+	public void testReturnGraph() throws Exception {
+		JSR223Script script = JSR223Script.create(createScript(
+				"var factory = Java.type('org.corpus_tools.salt.SaltFactory');\n"
+						+ "var result = factory.createSDocumentGraph();\n" + "result.createTextualDS('new text');\n"
+						+ "result;\n"));
+		SDocument doc = createDocument();
+		SDocumentGraph result = script.execute(doc, null);
+		assertNotSame(doc.getDocumentGraph(), result);
+		assertEquals("new text", result.getTextualDSs().get(0).getText());
+	}
+
+	@Test(expected = ScriptException.class)
+	public void testInvalidScript() throws Exception {
+		JSR223Script.create(createScript("this is not javascript"));
+	}
+
+	@Test
+	public void testUnsupportedExtension() throws Exception {
+		File file = folder.newFile("script.unknown");
+		assertNull(JSR223Script.create(file));
+	}
+}
@@ -0,0 +1,133 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.samples.SampleGenerator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+public class JavaPluginTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	public static class Annotator implements GraphManipulation {
+		@Override
+		public void accept(SDocumentGraph graph) {
+			for (SToken tok : graph.getTokens()) {
+				tok.createAnnotation("plugin", "pos", "NN");
+			}
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+	}
+
+	public static class Counter implements Consumer<SDocumentGraph> {
+		private static final AtomicInteger running = new AtomicInteger();
+		private static volatile boolean overlapped = false;
+
+		@Override
+		public void accept(SDocumentGraph graph) {
+			if (running.incrementAndGet() > 1) {
+				overlapped = true;
+			}
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			running.decrementAndGet();
+		}
+	}
+
+	private File createJar(String mainClass, Class<?>... classes) throws IOException {
+		File jar = new File(folder.getRoot(), "plugin.jar");
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		if (mainClass != null) {
+			manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+		}
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+			for (Class<?> c : classes) {
+				String name = c.getName().replace('.', '/') + ".class";
+				out.putNextEntry(new JarEntry(name));
+				try (InputStream in = c.getClassLoader().getResourceAsStream(name)) {
+					ByteStreams.copy(in, out);
+				}
+			}
+		}
+		return jar;
+	}
+
+	private static SDocumentGraph createGraph() {
+		SDocument doc = SaltFactory.createSDocument();
+		SampleGenerator.createDocumentStructure(doc);
+		return doc.getDocumentGraph();
+	}
+
+	@Test
+	public void testManifestClass() throws Exception {
+		try (JavaPlugin plugin = JavaPlugin.load(createJar(Annotator.class.getName(), Annotator.class), null)) {
+			assertTrue(plugin.isThreadSafe());
+			SDocumentGraph graph = createGraph();
+			plugin.execute(graph);
+			assertEquals("NN", graph.getTokens().get(0).getAnnotation("plugin::pos").getValue());
+		}
+	}
+
+	@Test
+	public void testConsumerIsSerialized() throws Exception {
+		try (JavaPlugin plugin = JavaPlugin.load(createJar(null, Counter.class), Counter.class.getName())) {
+			assertFalse(plugin.isThreadSafe());
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			List<Future<?>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> plugin.execute(createGraph())));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+			executor.shutdown();
+			assertFalse(Counter.overlapped);
+		}
+	}
+
+	@Test(expected = PepperModuleException.class)
+	public void testMissingClass() throws Exception {
+		JavaPlugin.load(createJar(null), null);
+	}
+
+	@Test(expected = PepperModuleException.class)
+	public void testWrongType() throws Exception {
+		JavaPlugin.load(createJar(null), String.class.getName());
+	}
+}
@@ -0,0 +1,73 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.corpus_tools.salt.common.SDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+public class MappedFileInputStreamTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRead() throws IOException {
+		byte[] content = new byte[100000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		File file = folder.newFile();
+		Files.write(file.toPath(), content);
+
+		try (InputStream in = MappedFileInputStream.open(file)) {
+			assertEquals(content.length, in.available());
+			assertEquals(0, in.read());
+			assertEquals(10, in.skip(10));
+			byte[] rest = ByteStreams.toByteArray(in);
+			assertEquals(content.length - 11, rest.length);
+			assertEquals(content[11], rest[0]);
+			assertEquals(-1, in.read());
+		}
+	}
+
+	@Test
+	public void testReadRegion() throws IOException {
+		byte[] content = new byte[1000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		File file = folder.newFile();
+		Files.write(file.toPath(), content);
+
+		try (InputStream in = MappedFileInputStream.open(file, 100, 50)) {
+			assertArrayEquals(Arrays.copyOfRange(content, 100, 150), ByteStreams.toByteArray(in));
+		}
+	}
+
+	@Test
+	public void testReadGraph() throws IOException {
+		SDocument doc = ExchangeFormatBenchmark.createDocument(100);
+		File file = folder.newFile();
+		GraphMLWriter.convertFromSalt(Files.newOutputStream(file.toPath()), doc);
+
+		try (InputStream in = MappedFileInputStream.open(file)) {
+			List<SDocument> result = GraphMLReader.convertToSalt(in);
+			assertEquals(1, result.size());
+			assertEquals(doc.getDocumentGraph().getNodes().size(),
+					result.get(0).getDocumentGraph().getNodes().size());
+		}
+		assertArrayEquals(new byte[0], ByteStreams.toByteArray(MappedFileInputStream.open(folder.newFile())));
+	}
+}
@@ -0,0 +1,56 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class ParallelGzipOutputStreamTest {
+
+	private static byte[] decompress(byte[] compressed) throws IOException {
+		return ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+	}
+
+	@Test
+	public void testCompress() throws IOException {
+		// repetitive data like GraphML, which spans many blocks
+		byte[] data = new byte[100000];
+		Random random = new Random(1);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + random.nextInt(4));
+		}
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (OutputStream out = new ParallelGzipOutputStream(compressed, pool, 4096)) {
+				out.write(data, 0, 10);
+				out.write(data[10]);
+				out.flush();
+				out.write(data, 11, data.length - 11);
+			}
+			assertTrue(compressed.size() < data.length / 2);
+			assertArrayEquals(data, decompress(compressed.toByteArray()));
+			assertArrayEquals(data,
+					ByteStreams.toByteArray(GraphMLReader.decompress(new ByteArrayInputStream(compressed.toByteArray()))));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new ParallelGzipOutputStream(compressed, ForkJoinPool.commonPool()).close();
+		assertArrayEquals(new byte[0], decompress(compressed.toByteArray()));
+	}
+}
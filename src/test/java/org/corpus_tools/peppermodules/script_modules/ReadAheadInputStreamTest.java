@@ -0,0 +1,71 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class ReadAheadInputStreamTest {
+
+	@Test
+	public void testRead() throws IOException {
+		byte[] data = new byte[10000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 100, 2)) {
+			assertEquals(0, in.read());
+			byte[] rest = ByteStreams.toByteArray(in);
+			assertEquals(data.length - 1, rest.length);
+			assertEquals(data[1], rest[0]);
+			assertEquals(-1, in.read());
+		}
+		assertArrayEquals(new byte[0],
+				ByteStreams.toByteArray(new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]))));
+	}
+
+	@Test
+	public void testFailure() throws IOException {
+		InputStream failing = new InputStream() {
+			private int left = 10;
+
+			@Override
+			public int read() throws IOException {
+				if (left == 0) {
+					throw new IOException("broken");
+				}
+				left--;
+				return 'x';
+			}
+		};
+		try (InputStream in = new ReadAheadInputStream(failing, 4, 2)) {
+			for (int i = 0; i < 8; i++) {
+				assertEquals('x', in.read());
+			}
+			ByteStreams.toByteArray(in);
+			fail("the failure was not reported");
+		} catch (IOException ex) {
+			assertEquals("broken", ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testCloseEarly() throws IOException {
+		InputStream endless = new InputStream() {
+			@Override
+			public int read() {
+				return 'x';
+			}
+		};
+		InputStream in = new ReadAheadInputStream(endless, 16, 2);
+		assertEquals('x', in.read());
+		in.close();
+	}
+}
@@ -0,0 +1,96 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResultCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testKey() {
+		String key = ResultCache.createKey(bytes("input"), "script.py", "", "graphml");
+		assertEquals(key, ResultCache.createKey(bytes("input"), "script.py", "", "graphml"));
+		assertNotEquals(key, ResultCache.createKey(bytes("input2"), "script.py", "", "graphml"));
+		assertNotEquals(key, ResultCache.createKey(bytes("input"), "script.py", "", "binary"));
+		// the properties are separated
+		assertNotEquals(ResultCache.createKey(bytes(""), "ab", "c"), ResultCache.createKey(bytes(""), "a", "bc"));
+	}
+
+	@Test
+	public void testHitAndMiss() throws IOException {
+		ResultCache cache = new ResultCache(folder.getRoot(), 1024);
+		assertNull(cache.get("a"));
+		cache.put("a", bytes("output"));
+		assertArrayEquals(bytes("output"), cache.get("a"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// entries are kept between runs
+		ResultCache reopened = new ResultCache(folder.getRoot(), 1024);
+		assertEquals(6, reopened.getSize());
+		assertArrayEquals(bytes("output"), reopened.get("a"));
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() throws IOException {
+		File dir = folder.newFolder();
+		ResultCache cache = new ResultCache(dir, 10);
+		cache.put("a", bytes("1234"));
+		cache.put("b", bytes("1234"));
+		assertNotNull(cache.get("a"));
+		cache.put("c", bytes("1234"));
+
+		assertEquals(1, cache.getEvictions());
+		assertEquals(8, cache.getSize());
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertEquals(2, dir.listFiles().length);
+	}
+
+	@Test
+	public void testRemoveTemporaryFiles() throws IOException {
+		File dir = folder.newFolder();
+		File stale = new File(dir, "a123.tmp");
+		File recent = new File(dir, "b456.tmp");
+		Files.write(stale.toPath(), bytes("partial"));
+		Files.write(recent.toPath(), bytes("partial"));
+		assertTrue(stale.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+
+		// only temporary files that are not written by a concurrent run anymore
+		// are removed
+		ResultCache cache = new ResultCache(dir, 1024);
+		assertFalse(stale.exists());
+		assertTrue(recent.exists());
+		assertEquals(0, cache.getSize());
+
+		// the entry cannot replace a directory, its temporary file is removed
+		assertTrue(new File(new File(dir, "c.out"), "file").mkdirs());
+		cache.put("c", bytes("output"));
+		assertNull(cache.get("c"));
+		File[] temporary = dir.listFiles((d, name) -> name.endsWith(".tmp"));
+		assertEquals(1, temporary.length);
+		assertEquals(recent, temporary[0]);
+	}
+}
@@ -0,0 +1,36 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ScriptErrorOutputTest {
+
+	private static ScriptErrorOutput drain(int capacity, String text) throws IOException {
+		ScriptErrorOutput output = new ScriptErrorOutput(capacity, "debug", "test");
+		output.drain(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+		return output;
+	}
+
+	@Test
+	public void testShortOutput() throws IOException {
+		assertEquals("", drain(16, "").getTail());
+		assertEquals("error\nline", drain(16, "error\nline").getTail());
+		assertEquals("0123456789abcdef", drain(16, "0123456789abcdef").getTail());
+	}
+
+	@Test
+	public void testKeepsLastBytes() throws IOException {
+		assertEquals("...abcdefghij", drain(10, "0123456789abcdefghij").getTail());
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			text.append("line ").append(i).append('\n');
+		}
+		assertEquals("...line 9999\n", drain(10, text.toString()).getTail());
+	}
+}
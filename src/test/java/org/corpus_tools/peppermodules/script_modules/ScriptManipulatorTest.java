@@ -0,0 +1,228 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.corpus_tools.pepper.common.DOCUMENT_STATUS;
+import org.corpus_tools.pepper.core.ModuleControllerImpl;
+import org.corpus_tools.pepper.core.PepperJobImpl;
+import org.corpus_tools.pepper.exceptions.PepperException;
+import org.corpus_tools.pepper.modules.PepperMapper;
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.samples.SampleGenerator;
+import org.eclipse.emf.common.util.URI;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScriptManipulatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ScriptManipulator manipulator;
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(new File("/bin/sh").canExecute());
+		manipulator = createManipulator();
+	}
+
+	/**
+	 * Creates a manipulator of a job in the temporary folder.
+	 */
+	private ScriptManipulator createManipulator() {
+		ScriptManipulator manipulator = new ScriptManipulator();
+		manipulator.setSaltProject(SaltFactory.createSaltProject());
+		PepperJobImpl job = new PepperJobImpl("job");
+		job.setBaseDir(URI.createFileURI(folder.getRoot().getAbsolutePath()));
+		ModuleControllerImpl controller = new ModuleControllerImpl("controller");
+		controller.setJob(job);
+		manipulator.setPepperModuleController(controller);
+		return manipulator;
+	}
+
+	@After
+	public void tearDown() {
+		if (manipulator != null) {
+			manipulator.end();
+		}
+	}
+
+	private void setScript(String script) throws IOException {
+		File file = folder.newFile("script.sh");
+		Files.write(file.toPath(), ("#!/bin/sh\n" + script + "\n").getBytes(StandardCharsets.UTF_8));
+		assertTrue(file.setExecutable(true));
+		manipulator.getProperties().setPropertyValue("path", file.getAbsolutePath());
+	}
+
+	private DOCUMENT_STATUS map(SDocument doc) {
+		PepperMapper mapper = manipulator.createPepperMapper(doc.getIdentifier());
+		mapper.setDocument(doc);
+		return mapper.mapSDocument();
+	}
+
+	private static SDocument createDocument(String name) {
+		SDocument doc = SaltFactory.createSDocument();
+		doc.setName(name);
+		SampleGenerator.createDocumentStructure(doc);
+		return doc;
+	}
+
+	@Test(timeout = 10000)
+	public void testTimeout() throws Exception {
+		setScript("exec sleep 10");
+		manipulator.getProperties().setPropertyValue("timeout", 200);
+
+		long start = System.currentTimeMillis();
+		try {
+			map(createDocument("doc1"));
+			fail("the hanging script was not killed");
+		} catch (PepperModuleException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("timeout of 200 ms"));
+			assertTrue(ex.getMessage(), ex.getMessage().contains("document doc1"));
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue("killed after " + elapsed + " ms", elapsed >= 200 && elapsed < 5000);
+		// failed invocations are not recorded
+		assertEquals(0, manipulator.getMetrics().getInvocations());
+	}
+
+	@Test(timeout = 10000)
+	public void testBatch() throws Exception {
+		// the script returns the graphs of the batch in reverse order
+		setScript("sed -e 's#<graph #\\n<graph #g' -e 's#</graph>#</graph>\\n#g' | "
+				+ "awk '/^<graph /{g[++n]=$0; next} n==0{print; next} {s=s $0 \"\\n\"} "
+				+ "END{for(i=n;i>0;i--) print g[i]; printf \"%s\", s}'");
+		manipulator.getProperties().setPropertyValue("batch-size", 2);
+		manipulator.getProperties().setPropertyValue("batch-timeout", 60000);
+		SDocument doc1 = createDocument("doc1");
+		SDocument doc2 = SaltFactory.createSDocument();
+		doc2.setName("doc2");
+		doc2.createDocumentGraph().createTextualDS("A second document .").tokenize();
+		String text1 = doc1.getDocumentGraph().getTextualDSs().get(0).getText();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<DOCUMENT_STATUS> first = executor.submit(() -> map(doc1));
+			assertEquals(DOCUMENT_STATUS.COMPLETED, map(doc2));
+			assertEquals(DOCUMENT_STATUS.COMPLETED, first.get());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// the returned graphs replaced the ones of their documents
+		assertEquals(1, manipulator.getMetrics().getInvocations());
+		assertEquals("batch of 2 documents", manipulator.getMetrics().getSlowest().get(0).name);
+		assertEquals(text1, doc1.getDocumentGraph().getTextualDSs().get(0).getText());
+		assertEquals("A second document .", doc2.getDocumentGraph().getTextualDSs().get(0).getText());
+		assertEquals(4, doc2.getDocumentGraph().getTokens().size());
+	}
+
+	@Test(timeout = 10000)
+	public void testMetrics() throws Exception {
+		// the script returns its input unchanged
+		setScript("exec cat");
+		SDocument doc1 = createDocument("doc1");
+		SDocument doc2 = createDocument("doc2");
+		doc2.getDocumentGraph().createTextualDS("A longer text for the second document .").tokenize();
+		assertEquals(DOCUMENT_STATUS.COMPLETED, map(doc1));
+		assertEquals(DOCUMENT_STATUS.COMPLETED, map(doc2));
+
+		ScriptMetrics metrics = manipulator.getMetrics();
+		assertEquals(2, metrics.getInvocations());
+		assertEquals(0, metrics.getCachedInvocations());
+		long sent = 0;
+		for (ScriptMetrics.Invocation invocation : metrics.getSlowest()) {
+			assertTrue(invocation.toString(), invocation.bytesSent > 0);
+			assertEquals(invocation.toString(), invocation.bytesSent, invocation.bytesReceived);
+			assertTrue(invocation.toString(), invocation.processNanos > 0);
+			sent += invocation.bytesSent;
+		}
+		assertEquals(sent, metrics.getBytesSent());
+		assertEquals(sent, metrics.getBytesReceived());
+	}
+
+	@Test(timeout = 10000)
+	public void testCacheReadableOutput() throws Exception {
+		// the script only returns its input once the marker file exists
+		File marker = new File(folder.getRoot(), "marker");
+		setScript("if [ -f '" + marker.getAbsolutePath() + "' ]; then exec cat; fi; echo broken");
+		manipulator.getProperties().setPropertyValue("cache-dir", folder.newFolder("cache").getAbsolutePath());
+
+		try {
+			map(createDocument("doc1"));
+			fail("the broken output was read");
+		} catch (PepperException ex) {
+			// the output is not GraphML
+		}
+		// the broken output was not cached, so the script runs again
+		assertTrue(marker.createNewFile());
+		assertEquals(DOCUMENT_STATUS.COMPLETED, map(createDocument("doc1")));
+		assertEquals(DOCUMENT_STATUS.COMPLETED, map(createDocument("doc1")));
+		assertEquals(2, manipulator.getMetrics().getInvocations());
+		assertEquals(1, manipulator.getMetrics().getCachedInvocations());
+	}
+
+	@Test(timeout = 10000)
+	public void testCacheKeyArguments() throws Exception {
+		// the script is given to the interpreter as argument
+		assertArrayEquals(new long[] { 0, 1, 0 }, runCachedScript("/bin/sh", "filter.sh", null));
+	}
+
+	@Test(timeout = 10000)
+	public void testCacheKeyPipedArguments() throws Exception {
+		// the piped script is given to the interpreter as argument
+		Assume.assumeTrue(new File("/bin/cat").canExecute());
+		assertArrayEquals(new long[] { 0, 1, 0 }, runCachedScript("/bin/cat", null, "/bin/sh filter.sh"));
+	}
+
+	/**
+	 * Maps the same document with a cache in three runs of the module, the
+	 * script file "filter.sh" is changed before the last one.
+	 * 
+	 * @return the number of cached invocations of each run
+	 */
+	private long[] runCachedScript(String path, String args, String pipeTo) throws IOException {
+		File script = folder.newFile("filter.sh");
+		Files.write(script.toPath(), "exec cat\n".getBytes(StandardCharsets.UTF_8));
+		String cacheDir = folder.newFolder("cache").getAbsolutePath();
+
+		long[] cached = new long[3];
+		for (int run = 0; run < cached.length; run++) {
+			if (run == 2) {
+				Files.write(script.toPath(), "# changed\nexec cat\n".getBytes(StandardCharsets.UTF_8));
+			}
+			if (run > 0) {
+				manipulator.end();
+				manipulator = createManipulator();
+			}
+			manipulator.getProperties().setPropertyValue("path", path);
+			if (args != null) {
+				manipulator.getProperties().setPropertyValue("args", args);
+			}
+			if (pipeTo != null) {
+				manipulator.getProperties().setPropertyValue("pipe-to", pipeTo);
+			}
+			manipulator.getProperties().setPropertyValue("cache-dir", cacheDir);
+			assertEquals(DOCUMENT_STATUS.COMPLETED, map(createDocument("doc1")));
+			cached[run] = manipulator.getMetrics().getCachedInvocations();
+		}
+		return cached;
+	}
+}
@@ -0,0 +1,63 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ScriptMetricsTest {
+
+	private static ScriptMetrics.Invocation createInvocation(String name, long millis, long bytes) {
+		ScriptMetrics.Invocation invocation = new ScriptMetrics.Invocation(name);
+		invocation.serializeNanos = TimeUnit.MILLISECONDS.toNanos(1);
+		invocation.processNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+		invocation.deserializeNanos = TimeUnit.MILLISECONDS.toNanos(2);
+		invocation.bytesSent = bytes;
+		invocation.bytesReceived = 2 * bytes;
+		return invocation;
+	}
+
+	@Test
+	public void testSlowest() {
+		ScriptMetrics metrics = new ScriptMetrics(3);
+		long[] millis = { 30, 10, 50, 20, 40 };
+		for (int i = 0; i < millis.length; i++) {
+			metrics.add(createInvocation("document " + i, millis[i], 100));
+		}
+
+		// only the three slowest ones are kept, beginning with the slowest
+		List<ScriptMetrics.Invocation> slowest = metrics.getSlowest();
+		assertEquals(3, slowest.size());
+		assertEquals("document 2", slowest.get(0).name);
+		assertEquals("document 4", slowest.get(1).name);
+		assertEquals("document 0", slowest.get(2).name);
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(53), slowest.get(0).getTotalNanos());
+
+		String summary = metrics.toString();
+		assertTrue(summary, summary.indexOf("document 2") < summary.indexOf("document 4"));
+		assertFalse(summary.contains("document 1"));
+	}
+
+	@Test
+	public void testTotals() {
+		ScriptMetrics metrics = new ScriptMetrics(1);
+		metrics.add(createInvocation("document 1", 10, 100));
+		ScriptMetrics.Invocation cached = createInvocation("document 2", 0, 1000);
+		cached.cached = true;
+		metrics.add(cached);
+
+		assertEquals(2, metrics.getInvocations());
+		assertEquals(1, metrics.getCachedInvocations());
+		assertEquals(2, metrics.getSerializeMillis());
+		assertEquals(10, metrics.getProcessMillis());
+		assertEquals(4, metrics.getDeserializeMillis());
+		assertEquals(1100, metrics.getBytesSent());
+		assertEquals(2200, metrics.getBytesReceived());
+		assertEquals(1, metrics.getSlowest().size());
+		assertTrue(cached.toString(), cached.toString().endsWith("sent=1000 bytes, received=2000 bytes (cached)"));
+	}
+}
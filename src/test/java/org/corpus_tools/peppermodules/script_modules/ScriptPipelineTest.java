@@ -0,0 +1,112 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.commons.exec.CommandLine;
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class ScriptPipelineTest {
+
+	private ExecutorService executor;
+	private ScheduledExecutorService timer;
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(new File("/bin/sh").canExecute());
+		executor = Executors.newCachedThreadPool();
+		timer = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			timer.shutdownNow();
+		}
+	}
+
+	private static ScriptPipeline createPipeline(String... commands) {
+		List<CommandLine> commandLines = new ArrayList<>();
+		List<Map<String, String>> environments = new ArrayList<>();
+		List<ScriptErrorOutput> errorOutputs = new ArrayList<>();
+		for (String command : commands) {
+			commandLines.add(new CommandLine("/bin/sh").addArgument("-c").addArgument(command, false));
+			environments.add(new HashMap<>(System.getenv()));
+			errorOutputs.add(new ScriptErrorOutput(1024, "off", command));
+		}
+		return new ScriptPipeline(commandLines, environments, errorOutputs, new File("."));
+	}
+
+	@Test
+	public void testPipeline() throws Exception {
+		byte[] input = new byte[1024 * 1024];
+		Arrays.fill(input, (byte) 'a');
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		createPipeline("cat", "cat", "tr a b").run(out -> out.write(input), in -> ByteStreams.copy(in, output),
+				"test", executor, timer, 0);
+
+		byte[] expected = new byte[input.length];
+		Arrays.fill(expected, (byte) 'b');
+		assertArrayEquals(expected, output.toByteArray());
+	}
+
+	@Test
+	public void testFailingScript() throws Exception {
+		try {
+			createPipeline("cat", "echo broken >&2; exit 3", "cat").run(out -> out.write(1),
+					in -> ByteStreams.copy(in, ByteStreams.nullOutputStream()), "test", executor, timer, 0);
+			fail("the error code was ignored");
+		} catch (PepperModuleException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("error code 3"));
+			assertTrue(ex.getMessage(), ex.getMessage().contains("broken"));
+		}
+	}
+
+	@Test
+	public void testFailingScriptBreaksPipe() throws Exception {
+		// the failing script closes its input, so the script before it dies
+		// from the broken pipe
+		try {
+			createPipeline("yes", "head -c1 >/dev/null; exit 3", "cat").run(out -> out.write(1),
+					in -> ByteStreams.copy(in, ByteStreams.nullOutputStream()), "test", executor, timer, 0);
+			fail("the error code was ignored");
+		} catch (PepperModuleException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("head -c1"));
+			assertTrue(ex.getMessage(), ex.getMessage().contains("error code 3"));
+			assertFalse(ex.getMessage(), ex.getMessage().contains("error code 141"));
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		long start = System.currentTimeMillis();
+		try {
+			createPipeline("cat", "sleep 10").run(out -> out.write(1),
+					in -> ByteStreams.copy(in, ByteStreams.nullOutputStream()), "test", executor, timer, 200);
+			fail("the timeout was ignored");
+		} catch (PepperModuleException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("timeout"));
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+}
@@ -0,0 +1,181 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.ShutdownHookProcessDestroyer;
+import org.corpus_tools.pepper.modules.exceptions.PepperModuleException;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptWorkerPoolTest {
+
+	/**
+	 * Answers every frame with "PID:DOCUMENT:PAYLOAD", a request with the
+	 * header CRASH makes it exit in the middle of the response frame and
+	 * FAIL makes it report a non-zero status.
+	 */
+	private static final String WORKER = "while IFS= read -r line; do\n" //
+			+ "  case \"$line\" in\n" //
+			+ "    PEPPER_CONTENT_LENGTH=*) length=${line#*=} ;;\n" //
+			+ "    PEPPER_DOCUMENT=*) doc=${line#*=} ;;\n" //
+			+ "    CRASH=*) crash=1 ;;\n" //
+			+ "    FAIL=*) status=1 ;;\n" //
+			+ "    '') payload=\"$$:$doc:$(head -c \"$length\")\"\n" //
+			+ "      if [ -n \"$crash\" ]; then printf 'PEPPER_CONTENT_LENGTH=100\\n\\n%s' \"$payload\"; exit 1; fi\n" //
+			+ "      printf 'PEPPER_STATUS=%s\\nPEPPER_CONTENT_LENGTH=%s\\n\\n%s' \"${status:-0}\" \"${#payload}\" \"$payload\"\n" //
+			+ "      status= ;;\n" //
+			+ "  esac\n" //
+			+ "done\n";
+
+	private ExecutorService executor;
+	private ScheduledExecutorService timer;
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(new File("/bin/sh").canExecute());
+		executor = Executors.newCachedThreadPool();
+		timer = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			timer.shutdownNow();
+		}
+	}
+
+	private static CommandLine createCommandLine() {
+		return new CommandLine("/bin/sh").addArgument("-c").addArgument(WORKER, false);
+	}
+
+	private ScriptWorkerPool createPool(int size, int maxDocumentsPerWorker) {
+		return new ScriptWorkerPool(createCommandLine(), System.getenv(), new File("."), size, maxDocumentsPerWorker,
+				executor, timer, () -> new ScriptErrorOutput(1024, "off", "worker"));
+	}
+
+	private static String[] process(ScriptWorkerPool pool, String doc, String input, String... flags)
+			throws IOException, InterruptedException {
+		Map<String, String> header = new HashMap<>();
+		header.put("PEPPER_DOCUMENT", doc);
+		for (String flag : flags) {
+			header.put(flag, "1");
+		}
+		byte[] output = pool.process(header, input.getBytes(StandardCharsets.UTF_8), 0);
+		return new String(output, StandardCharsets.UTF_8).split(":", 3);
+	}
+
+	@Test(timeout = 10000)
+	public void testFrameRoundTrip() throws Exception {
+		ScriptWorker worker = new ScriptWorker(executor, timer, new ScriptErrorOutput(1024, "off", "worker"));
+		worker.start(createCommandLine(), System.getenv(), new File("."), new ShutdownHookProcessDestroyer());
+		try {
+			byte[] first = worker.process(Collections.singletonMap("PEPPER_DOCUMENT", "doc1"),
+					"first payload".getBytes(StandardCharsets.UTF_8), 0);
+			byte[] second = worker.process(Collections.singletonMap("PEPPER_DOCUMENT", "doc2"), new byte[0], 0);
+
+			String[] firstFrame = new String(first, StandardCharsets.UTF_8).split(":", 3);
+			String[] secondFrame = new String(second, StandardCharsets.UTF_8).split(":", 3);
+			assertEquals("doc1", firstFrame[1]);
+			assertEquals("first payload", firstFrame[2]);
+			assertEquals("doc2", secondFrame[1]);
+			assertEquals("", secondFrame[2]);
+			// both frames were answered by the same process
+			assertEquals(firstFrame[0], secondFrame[0]);
+			assertEquals(2, worker.getProcessedDocuments());
+			assertTrue(worker.isUsable());
+		} finally {
+			worker.destroy();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testFailingStatus() throws Exception {
+		try (ScriptWorkerPool pool = createPool(1, 0)) {
+			String pid = process(pool, "doc1", "a")[0];
+			try {
+				process(pool, "doc2", "b", "FAIL");
+				fail("the status was ignored");
+			} catch (PepperModuleException ex) {
+				assertTrue(ex.getMessage(), ex.getMessage().contains("status 1"));
+			}
+			// the worker stays usable after a failed request
+			assertEquals(pid, process(pool, "doc3", "c")[0]);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testRecycleWorker() throws Exception {
+		try (ScriptWorkerPool pool = createPool(1, 2)) {
+			String first = process(pool, "doc1", "a")[0];
+			assertEquals(first, process(pool, "doc2", "b")[0]);
+			// the worker is replaced after two documents
+			String second = process(pool, "doc3", "c")[0];
+			assertNotEquals(first, second);
+			assertEquals(second, process(pool, "doc4", "d")[0]);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testReplaceCrashedWorker() throws Exception {
+		// a single permit, which would block the next request forever if it
+		// was not released after the crash
+		try (ScriptWorkerPool pool = createPool(1, 0)) {
+			String first = process(pool, "doc1", "a")[0];
+			try {
+				process(pool, "doc2", "b", "CRASH");
+				fail("the crash was not detected");
+			} catch (IOException ex) {
+				// the frame is either cut off or the stream is already closed
+				// when the process has terminated
+			}
+			String[] frame = process(pool, "doc3", "c");
+			assertNotEquals(first, frame[0]);
+			assertEquals("doc3", frame[1]);
+			assertEquals("c", frame[2]);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testReleasePermitOnFailure() throws Exception {
+		// every worker exits before it answers, the single permit must be
+		// released each time
+		try (ScriptWorkerPool pool = new ScriptWorkerPool(
+				new CommandLine("/bin/sh").addArgument("-c").addArgument("exit 1", false), System.getenv(),
+				new File("."), 1, 0, executor, timer, () -> new ScriptErrorOutput(1024, "off", "worker"))) {
+			for (int i = 0; i < 3; i++) {
+				try {
+					process(pool, "doc", "a");
+					fail("the terminated worker was not detected");
+				} catch (IOException ex) {
+					assertFalse(ex.getMessage().isEmpty());
+				}
+			}
+		}
+		ScriptWorkerPool pool = createPool(1, 0);
+		pool.close();
+		try {
+			process(pool, "doc", "a");
+			fail("the pool was closed");
+		} catch (IOException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("closed"));
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SDocumentGraph;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.samples.SampleGenerator;
+
+/**
+ * The documents and graph comparisons shared by the tests of the exchange
+ * formats.
+ */
+final class TestDocuments {
+
+	private TestDocuments() {
+	}
+
+	/**
+	 * @return the sample document "doc1" and the small document "doc2", whose
+	 *         tokens have annotations with typed values the first one does not
+	 *         use
+	 */
+	static List<SDocument> create() {
+		List<SDocument> documents = new ArrayList<>();
+		SDocument doc1 = SaltFactory.createSDocument();
+		doc1.setName("doc1");
+		SampleGenerator.createDocumentStructure(doc1);
+		documents.add(doc1);
+
+		SDocument doc2 = SaltFactory.createSDocument();
+		doc2.setName("doc2");
+		doc2.createDocumentGraph();
+		List<SToken> tokens = doc2.getDocumentGraph().createTextualDS("A second document .").tokenize();
+		tokens.get(0).createAnnotation("test", "int", 42);
+		tokens.get(1).createAnnotation("test", "long", -7L);
+		tokens.get(2).createAnnotation("test", "double", 0.5);
+		tokens.get(3).createAnnotation("test", "boolean", true);
+		documents.add(doc2);
+		return documents;
+	}
+
+	static List<String> getTokenTexts(SDocumentGraph g) {
+		List<String> result = new ArrayList<>();
+		for (SToken t : g.getSortedTokenByText()) {
+			result.add(g.getText(t));
+		}
+		return result;
+	}
+
+	static void assertSameGraph(SDocumentGraph expected, SDocumentGraph actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getNodes().size(), actual.getNodes().size());
+		assertEquals(expected.getRelations().size(), actual.getRelations().size());
+		assertEquals(expected.getAnnotations().size(), actual.getAnnotations().size());
+		assertEquals(getTokenTexts(expected), getTokenTexts(actual));
+	}
+}
@@ -0,0 +1,122 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.stream.XMLOutputFactory;
+
+import org.corpus_tools.peppermodules.script_modules.GraphMLWriter.Serializer;
+import org.corpus_tools.salt.SaltFactory;
+import org.corpus_tools.salt.common.SDocument;
+import org.corpus_tools.salt.common.SToken;
+import org.corpus_tools.salt.samples.SampleGenerator;
+import org.eclipse.emf.common.util.URI;
+import org.junit.Test;
+
+public class Utf8GraphMLEmitterTest {
+
+	private static final String SPECIAL = "a<b>c&d\"e'f]]>g\r\nh\ti\u00e4\u20ac\ud83d\ude00";
+
+	private static String write(List<SDocument> docs, Serializer serializer, ForkJoinPool pool) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GraphMLWriter.writeDocuments(out, docs, null, GraphProjection.ALL, new GraphMLKeySchema(), pool, serializer);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static List<SDocument> createDocuments() {
+		List<SDocument> docs = new ArrayList<>();
+		SDocument doc = SaltFactory.createSDocument();
+		doc.setName("doc");
+		SampleGenerator.createDocumentStructure(doc);
+		List<SToken> tokens = doc.getDocumentGraph().getTokens();
+		tokens.get(0).createAnnotation("test", "boolean", true);
+		tokens.get(0).createAnnotation("test", "int", -42);
+		tokens.get(1).createAnnotation("test", "long", Long.MIN_VALUE);
+		tokens.get(1).createAnnotation("test", "float", 1.5f);
+		tokens.get(2).createAnnotation("test", "double", 1e-300);
+		tokens.get(2).createAnnotation("test", "uri", URI.createURI("salt:/a/b#c"));
+		tokens.get(3).createAnnotation("test", "special", SPECIAL);
+		tokens.get(3).createAnnotation("test", "empty", "");
+		tokens.get(4).createAnnotation("te\"st", "na<me&", "quoted name");
+		docs.add(doc);
+
+		SDocument second = SaltFactory.createSDocument();
+		second.setName("second");
+		second.createDocumentGraph();
+		second.getDocumentGraph().createTextualDS("A second document .").tokenize();
+		docs.add(second);
+		return docs;
+	}
+
+	@Test
+	public void testSameAsStax() {
+		List<SDocument> docs = createDocuments();
+		String stax = write(docs, Serializer.STAX, null);
+		assertEquals(stax, write(docs, Serializer.DIRECT, null));
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			assertEquals(stax, write(docs, Serializer.DIRECT, pool));
+		} finally {
+			pool.shutdown();
+		}
+
+		List<SDocument> result = GraphMLReader
+				.convertToSalt(new ByteArrayInputStream(stax.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(SPECIAL, result.get(0).getDocumentGraph().getTokens().get(3).getAnnotation("test::special")
+				.getValue());
+	}
+
+	@Test
+	public void testSmallBuffer() throws IOException {
+		char[] chars = new char[1000];
+		Arrays.fill(chars, 'x');
+		String longValue = new String(chars) + SPECIAL + new String(chars);
+
+		ByteArrayOutputStream direct = new ByteArrayOutputStream();
+		ByteArrayOutputStream stax = new ByteArrayOutputStream();
+		for (GraphMLEmitter emitter : Arrays.asList(new Utf8GraphMLEmitter(direct, 256),
+				new StaxGraphMLEmitter(XMLOutputFactory.newFactory(), stax))) {
+			emitter.startDocument();
+			emitter.key("k0", "salt::type", "string");
+			emitter.startGraph(0);
+			for (long i = 1; i < 100; i++) {
+				emitter.startNode(i);
+				emitter.data("k0", longValue);
+				emitter.data("k0", i * 1000000007L);
+				emitter.endNode();
+			}
+			emitter.startNode(100);
+			emitter.endNode();
+			emitter.startEdge(101, 1, 100);
+			emitter.endEdge();
+			emitter.endGraph();
+			emitter.endDocument();
+		}
+		assertEquals(new String(stax.toByteArray(), StandardCharsets.UTF_8),
+				new String(direct.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testInvalidCharacters() throws IOException {
+		for (String invalid : Arrays.asList("a\u0001b", "a\ud800b")) {
+			Utf8GraphMLEmitter emitter = new Utf8GraphMLEmitter(new ByteArrayOutputStream());
+			emitter.startNode(0);
+			try {
+				emitter.data("k0", invalid);
+				fail("invalid character was written");
+			} catch (IOException ex) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package org.corpus_tools.peppermodules.script_modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+
+	private static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException ex) {
+			return false;
+		}
+	}
+
+	@Test
+	public void testExecutor() throws Exception {
+		ExecutorService executor = VirtualThreads.newExecutor("test-io-");
+		assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+		if (!isSupported()) {
+			assertNull(executor);
+			return;
+		}
+
+		// many tasks that block at the same time
+		int tasks = 2000;
+		CountDownLatch blocked = new CountDownLatch(tasks);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Future<Thread>> results = new ArrayList<>();
+		for (int i = 0; i < tasks; i++) {
+			results.add(executor.submit(() -> {
+				blocked.countDown();
+				release.await();
+				return Thread.currentThread();
+			}));
+		}
+		blocked.await();
+		release.countDown();
+		for (Future<Thread> result : results) {
+			Thread thread = result.get();
+			assertTrue(VirtualThreads.isVirtual(thread));
+			assertTrue(thread.getName().startsWith("test-io-"));
+		}
+		executor.shutdown();
+		assertEquals(tasks, results.size());
+	}
+}